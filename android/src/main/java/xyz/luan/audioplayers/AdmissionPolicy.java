@@ -0,0 +1,21 @@
+package xyz.luan.audioplayers;
+
+/**
+ * What happens to a new player when the player limit is reached, see {@link WrappedMediaPlayer#configureLimit}.
+ */
+public enum AdmissionPolicy {
+    /**
+     * Its commands fail with a {@link PlayerLimitException}.
+     */
+    REJECT,
+    /**
+     * The least recently used player (preferring the ones not playing) is released and removed to make room; its views
+     * get an error.
+     */
+    STEAL_LRU,
+    /**
+     * Its commands wait until another player is disposed, or reclaimed while idle: the least recently used reclaimed
+     * player is then removed to make room, like with {@link #STEAL_LRU}.
+     */
+    QUEUE
+}
@@ -0,0 +1,180 @@
+package xyz.luan.audioplayers;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.media.MediaExtractor;
+import android.media.MediaMetadataRetriever;
+import android.media.MediaPlayer;
+import android.media.SoundPool;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.flutter.plugin.common.PluginRegistry.Registrar;
+
+/**
+ * Flutter assets played straight from the APK, through their {@link AssetFileDescriptor}, without copying them.
+ *
+ * Assets are addressed as {@code asset:///<path>}, the path being the one declared in the pubspec (for example
+ * {@code asset:///assets/audio/hit.mp3}). They must be stored uncompressed in the APK, like the Flutter assets are.
+ *
+ * Opened descriptors are kept (up to {@link #MAX_OPEN_DESCRIPTORS}) so playing the same asset again skips the lookup;
+ * {@link #preload} opens many of them in parallel. Descriptors are only used holding the cache lock, so an evicted one
+ * is never closed while being read.
+ */
+final class AssetSource {
+    private static final String TAG = AssetSource.class.getSimpleName();
+    private static final String SCHEME = "asset:///";
+    private static final int MAX_OPEN_DESCRIPTORS = 128;
+    private static final int PRELOAD_THREADS = 4;
+
+    private static volatile Registrar sRegistrar;
+    private static ExecutorService sExecutor;
+    // ordered by access, so the first one is the least recently used
+    private static final LinkedHashMap<String, AssetFileDescriptor> sDescriptors =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    private AssetSource() {
+    }
+
+    static void init(Registrar registrar) {
+        sRegistrar = registrar;
+    }
+
+    static boolean isAsset(String url) {
+        return url != null && url.startsWith(SCHEME);
+    }
+
+    static void setDataSource(MediaPlayer player, String url) throws IOException {
+        synchronized (sDescriptors) {
+            final AssetFileDescriptor descriptor = descriptor(url);
+            player.setDataSource(descriptor.getFileDescriptor(), descriptor.getStartOffset(), descriptor.getLength());
+        }
+    }
+
+    static int load(SoundPool soundPool, String url) throws IOException {
+        synchronized (sDescriptors) {
+            return soundPool.load(descriptor(url), 1);
+        }
+    }
+
+    static void setDataSource(MediaMetadataRetriever retriever, String url) throws IOException {
+        synchronized (sDescriptors) {
+            final AssetFileDescriptor descriptor = descriptor(url);
+            retriever.setDataSource(descriptor.getFileDescriptor(), descriptor.getStartOffset(),
+                    descriptor.getLength());
+        }
+    }
+
+    static void setDataSource(MediaExtractor extractor, String url) throws IOException {
+        synchronized (sDescriptors) {
+            final AssetFileDescriptor descriptor = descriptor(url);
+            extractor.setDataSource(descriptor.getFileDescriptor(), descriptor.getStartOffset(),
+                    descriptor.getLength());
+        }
+    }
+
+    /**
+     * Opens the descriptors of the given assets in parallel, in background.
+     *
+     * @param callback called with the number of assets successfully opened, on a background thread
+     */
+    static void preload(final List<String> urls, final PreloadCallback callback) {
+        if (urls.isEmpty()) {
+            callback.onPreloaded(0);
+            return;
+        }
+        final AtomicInteger remaining = new AtomicInteger(urls.size());
+        final AtomicInteger opened = new AtomicInteger(0);
+        final ExecutorService executor = executor();
+        for (final String url : urls) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final AssetFileDescriptor descriptor = open(url);
+                        synchronized (sDescriptors) {
+                            if (!sDescriptors.containsKey(url)) {
+                                sDescriptors.put(url, descriptor);
+                                trim();
+                            } else {
+                                close(descriptor);
+                            }
+                        }
+                        opened.incrementAndGet();
+                    } catch (IOException e) {
+                        Log.w(TAG, "Unable to preload " + url, e);
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        callback.onPreloaded(opened.get());
+                    }
+                }
+            });
+        }
+    }
+
+    // must be called holding the sDescriptors lock
+    private static AssetFileDescriptor descriptor(String url) throws IOException {
+        AssetFileDescriptor descriptor = sDescriptors.get(url);
+        if (descriptor == null) {
+            descriptor = open(url);
+            sDescriptors.put(url, descriptor);
+            trim();
+        }
+        return descriptor;
+    }
+
+    private static AssetFileDescriptor open(String url) throws IOException {
+        final Registrar registrar = sRegistrar;
+        if (registrar == null) {
+            throw new IOException("Plugin not registered, cannot open " + url);
+        }
+        final AssetManager assets = registrar.context().getAssets();
+        return assets.openFd(registrar.lookupKeyForAsset(url.substring(SCHEME.length())));
+    }
+
+    // must be called holding the sDescriptors lock
+    private static void trim() {
+        final Iterator<Map.Entry<String, AssetFileDescriptor>> it = sDescriptors.entrySet().iterator();
+        while (sDescriptors.size() > MAX_OPEN_DESCRIPTORS && it.hasNext()) {
+            close(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    private static void close(AssetFileDescriptor descriptor) {
+        try {
+            descriptor.close();
+        } catch (IOException e) {
+            // ignored
+        }
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(PRELOAD_THREADS, new ThreadFactory() {
+                private int count = 0;
+
+                @Override
+                public synchronized Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "audioplayers-assets-" + count++);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+
+    interface PreloadCallback {
+        void onPreloaded(int count);
+    }
+}
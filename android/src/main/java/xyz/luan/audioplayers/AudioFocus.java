@@ -0,0 +1,294 @@
+package xyz.luan.audioplayers;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFocusRequest;
+import android.media.AudioManager;
+import android.os.Build;
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the audio focus for all the players at once: it is requested when a first player starts, with the attributes
+ * of the players playing, and abandoned once none plays (nor waits to resume after a transient loss).
+ *
+ * When another app takes the focus for a while, the playing players are paused together and resumed when it comes
+ * back, unless the app paused or stopped them in the meantime; when it only needs the players to be quieter, their
+ * volume is ramped down to {@link #DEFAULT_DUCK_VOLUME} and back up. A permanent loss pauses them for good. Apps may
+ * also {@link #pauseAll} and {@link #resumeAll} players.
+ *
+ * Everything runs on the main thread; the players are driven on their own audio threads.
+ */
+final class AudioFocus implements AudioManager.OnAudioFocusChangeListener {
+    static final float DEFAULT_DUCK_VOLUME = 0.2f;
+    static final int RAMP_DURATION = 300;
+
+    private final AudioManager audioManager;
+    private final Handler handler = AudioThreads.main();
+    private final Runnable updateCallback = new Runnable() {
+        @Override
+        public void run() {
+            update();
+        }
+    };
+    // the request of the focus held, built again when the attributes of the playing players change
+    private AudioFocusRequest request;
+    private int requestUsage;
+    private int requestContentType;
+
+    private boolean enabled = true;
+    private float duckVolume = DEFAULT_DUCK_VOLUME;
+    private boolean held = false;
+    private boolean ducked = false;
+    // paused together, to be resumed together
+    private final List<WrappedMediaPlayer> paused = new ArrayList<>();
+    // pauses posted to the audio threads and not done yet, during which the playing players are not looked at; their
+    // pause is not the app's
+    private final List<WrappedMediaPlayer> pausing = new ArrayList<>();
+
+    AudioFocus(Context context) {
+        this.audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+    }
+
+    /**
+     * Requests or abandons the focus after a player started, paused or stopped; may be called from any thread.
+     */
+    void onPlaybackChanged() {
+        handler.post(updateCallback);
+    }
+
+    /**
+     * Called after a player paused or stopped, from any thread. Unless paused by {@link #pauseAll()}, the app paused
+     * it, so it is not resumed with the others when the focus comes back.
+     */
+    void onPlayerStopped(final WrappedMediaPlayer player) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!pausing.contains(player)) {
+                    paused.remove(player);
+                }
+                update();
+            }
+        });
+    }
+
+    /**
+     * @param enabled    whether the focus is handled at all
+     * @param duckVolume the fraction of their volume the players keep while ducked
+     */
+    void configure(boolean enabled, float duckVolume) {
+        this.duckVolume = duckVolume;
+        if (this.enabled != enabled) {
+            this.enabled = enabled;
+            if (!enabled) {
+                abandon();
+                setDucked(false);
+                paused.clear();
+            }
+        }
+        if (ducked) {
+            rampAll(duckVolume);
+        }
+        update();
+    }
+
+    /**
+     * Pauses every playing player, remembering them for {@link #resumeAll()}.
+     *
+     * @return how many players were paused
+     */
+    int pauseAll() {
+        int count = 0;
+        for (final WrappedMediaPlayer player : WrappedMediaPlayer.players()) {
+            if (player.isActuallyPlaying()) {
+                if (!paused.contains(player)) {
+                    paused.add(player);
+                }
+                pausing.add(player);
+                player.getHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        player.pause();
+                        // after the pause notification, which was posted first
+                        handler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                pausing.remove(player);
+                                update();
+                            }
+                        });
+                    }
+                });
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Resumes the players paused by {@link #pauseAll()} (or by a transient focus loss) that still exist.
+     *
+     * @return how many players were resumed
+     */
+    int resumeAll() {
+        int count = 0;
+        for (final WrappedMediaPlayer player : paused) {
+            if (WrappedMediaPlayer.sMediaPlayers.get(player.getPlayerId()) == player) {
+                player.getHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        player.play();
+                    }
+                });
+                count++;
+            }
+        }
+        paused.clear();
+        return count;
+    }
+
+    @Override
+    public void onAudioFocusChange(int focusChange) {
+        switch (focusChange) {
+            case AudioManager.AUDIOFOCUS_GAIN:
+                held = true;
+                setDucked(false);
+                resumeAll();
+                break;
+            case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK:
+                setDucked(true);
+                break;
+            case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT:
+                // kept until the focus comes back, so the paused players resume
+                pauseAll();
+                break;
+            case AudioManager.AUDIOFOCUS_LOSS:
+                pauseAll();
+                paused.clear();
+                abandon();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void update() {
+        if (!enabled || !pausing.isEmpty()) {
+            return;
+        }
+        boolean playing = false;
+        for (WrappedMediaPlayer player : WrappedMediaPlayer.players()) {
+            if (player.isActuallyPlaying()) {
+                playing = true;
+                // resumed by the app in the meantime
+                paused.remove(player);
+                if (ducked) {
+                    rampGain(player, duckVolume);
+                }
+            }
+        }
+        if (playing && !held) {
+            held = requestFocus() == AudioManager.AUDIOFOCUS_REQUEST_GRANTED;
+            if (!held) {
+                // e.g. during a phone call
+                pauseAll();
+                paused.clear();
+            }
+        } else if (!playing && held && !hasPausedPlayers()) {
+            abandon();
+        }
+    }
+
+    // whether players paused by a transient loss still exist, to be resumed when the focus comes back
+    private boolean hasPausedPlayers() {
+        for (WrappedMediaPlayer player : paused) {
+            if (WrappedMediaPlayer.sMediaPlayers.get(player.getPlayerId()) == player) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void setDucked(boolean ducked) {
+        if (this.ducked != ducked) {
+            this.ducked = ducked;
+            rampAll(ducked ? duckVolume : 1.0f);
+        }
+    }
+
+    private static void rampAll(float gain) {
+        for (WrappedMediaPlayer player : WrappedMediaPlayer.players()) {
+            rampGain(player, gain);
+        }
+    }
+
+    private static void rampGain(final WrappedMediaPlayer player, final float gain) {
+        player.getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                player.rampGain(gain, RAMP_DURATION);
+            }
+        });
+    }
+
+    @SuppressWarnings("deprecation")
+    private int requestFocus() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return audioManager.requestAudioFocus(focusRequest());
+        }
+        // This method is deprecated but must be used on older devices
+        return audioManager.requestAudioFocus(this, AudioManager.STREAM_MUSIC, AudioManager.AUDIOFOCUS_GAIN);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void abandon() {
+        if (!held) {
+            return;
+        }
+        held = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            // the request the focus was granted for
+            audioManager.abandonAudioFocusRequest(request);
+        } else {
+            // This method is deprecated but must be used on older devices
+            audioManager.abandonAudioFocus(this);
+        }
+    }
+
+    /**
+     * A request with the attributes of the players playing: media if any of them plays media, else those of the
+     * first one.
+     */
+    @TargetApi(26)
+    private AudioFocusRequest focusRequest() {
+        int usage = -1;
+        int contentType = AudioAttributes.CONTENT_TYPE_MUSIC;
+        for (WrappedMediaPlayer player : WrappedMediaPlayer.players()) {
+            if (player.isActuallyPlaying() && (usage < 0 || player.getUsage() == AudioAttributes.USAGE_MEDIA)) {
+                usage = player.getUsage();
+                contentType = player.getContentType();
+            }
+        }
+        if (usage < 0) {
+            usage = AudioAttributes.USAGE_MEDIA;
+        }
+        if (request == null || requestUsage != usage || requestContentType != contentType) {
+            requestUsage = usage;
+            requestContentType = contentType;
+            request = new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN)
+                    .setAudioAttributes(new AudioAttributes.Builder()
+                            .setUsage(usage)
+                            .setContentType(contentType)
+                            .build())
+                    // ducking is done here, with a ramp
+                    .setWillPauseWhenDucked(false)
+                    .setOnAudioFocusChangeListener(this, handler)
+                    .build();
+        }
+        return request;
+    }
+}
@@ -0,0 +1,205 @@
+package xyz.luan.audioplayers;
+
+import android.annotation.TargetApi;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.os.IBinder;
+import android.os.PowerManager;
+
+import static xyz.luan.audioplayers.WrappedMediaPlayer.AUDIO_SERVICE_ACTION;
+import static xyz.luan.audioplayers.WrappedMediaPlayer.EXTRA_COMMAND;
+
+/**
+ * Foreground service keeping the app alive while audio plays in background. The plugin starts it with
+ * {@link WrappedMediaPlayer#AUDIO_SERVICE_ACTION} whenever a player starts.
+ *
+ * The players keep running on their audio threads; the service only holds what background playback needs, and only
+ * while a player actually plays: a partial wake lock, plus a Wi-Fi lock when one of them plays a remote source. Once
+ * every player is paused or stopped, the locks are released and the notification can be dismissed, which stops the
+ * service (as does {@code deleteNotification} from Dart).
+ *
+ * Everything runs on the main thread.
+ */
+public class AudioService extends Service {
+    static final String COMMAND_DELETE_NOTIFICATION = "deleteNotification";
+
+    private static final int NOTIFICATION_ID = 1024;
+    private static final String CHANNEL_ID = "xyz.luan.audioplayers.playback";
+    private static final String LOCK_TAG = "audioplayers:playback";
+
+    private static AudioService sInstance;
+    private static final Runnable sUpdate = new Runnable() {
+        @Override
+        public void run() {
+            if (sInstance != null) {
+                sInstance.update();
+            }
+        }
+    };
+    private static final Runnable sDismiss = new Runnable() {
+        @Override
+        public void run() {
+            if (sInstance != null) {
+                sInstance.dismiss();
+            }
+        }
+    };
+
+    private PowerManager.WakeLock wakeLock;
+    private WifiManager.WifiLock wifiLock;
+    private final ServiceLifecycle lifecycle = new ServiceLifecycle(new ServiceLifecycle.Host() {
+        @Override
+        public void setWakeLockHeld(boolean held) {
+            if (held) {
+                wakeLock.acquire();
+            } else {
+                wakeLock.release();
+            }
+        }
+
+        @Override
+        public void setWifiLockHeld(boolean held) {
+            if (held) {
+                wifiLock.acquire();
+            } else {
+                wifiLock.release();
+            }
+        }
+
+        @Override
+        public void startForeground() {
+            AudioService.this.startForeground(NOTIFICATION_ID, buildNotification(true));
+        }
+
+        @Override
+        public void stopForeground() {
+            AudioService.this.stopForeground(false);
+            final NotificationManager notificationManager =
+                    (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            notificationManager.notify(NOTIFICATION_ID, buildNotification(false));
+        }
+
+        @Override
+        public void stop() {
+            AudioService.this.stopForeground(true);
+            stopSelf();
+        }
+    });
+
+    /**
+     * Updates the locks and the notification after a player paused, stopped or completed; may be called from any
+     * thread.
+     */
+    static void onPlaybackChanged() {
+        AudioThreads.main().post(sUpdate);
+    }
+
+    /**
+     * Removes the notification and stops the service; may be called from any thread.
+     */
+    static void onDeleteNotification() {
+        AudioThreads.main().post(sDismiss);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        sInstance = this;
+        final PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, LOCK_TAG);
+        wakeLock.setReferenceCounted(false);
+        // the Wi-Fi manager must come from the application context, or it leaks on older devices
+        final WifiManager wifiManager = (WifiManager) getApplicationContext().getSystemService(Context.WIFI_SERVICE);
+        wifiLock = wifiManager.createWifiLock(WifiManager.WIFI_MODE_FULL, LOCK_TAG);
+        wifiLock.setReferenceCounted(false);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && COMMAND_DELETE_NOTIFICATION.equals(intent.getStringExtra(EXTRA_COMMAND))) {
+            // the notification was swiped away
+            lifecycle.onDeleteNotification();
+            return START_NOT_STICKY;
+        }
+        lifecycle.onStart(isPlaying(false), isPlaying(true));
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public void onDestroy() {
+        lifecycle.onDestroy();
+        sInstance = null;
+        super.onDestroy();
+    }
+
+    private void update() {
+        lifecycle.onPlaybackChanged(isPlaying(false), isPlaying(true));
+    }
+
+    private void dismiss() {
+        lifecycle.onDeleteNotification();
+    }
+
+    /**
+     * @param remote whether only the players of remote sources count
+     */
+    private static boolean isPlaying(boolean remote) {
+        for (WrappedMediaPlayer player : WrappedMediaPlayer.players()) {
+            if (player.isActuallyPlaying() && (!remote || WrappedMediaPlayer.isRemote(player.getUrl()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("deprecation")
+    private Notification buildNotification(boolean playing) {
+        final PackageManager packageManager = getPackageManager();
+        final CharSequence label = packageManager.getApplicationLabel(getApplicationInfo());
+        final Notification.Builder builder;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            createChannel(label);
+            builder = new Notification.Builder(this, CHANNEL_ID);
+        } else {
+            // This constructor is deprecated but must be used on older devices
+            builder = new Notification.Builder(this).setPriority(Notification.PRIORITY_LOW);
+        }
+        builder.setSmallIcon(getApplicationInfo().icon)
+                .setContentTitle(label)
+                .setShowWhen(false)
+                .setOngoing(playing)
+                .setDeleteIntent(PendingIntent.getService(this, 0, new Intent(AUDIO_SERVICE_ACTION)
+                        .setPackage(getPackageName())
+                        .putExtra(EXTRA_COMMAND, COMMAND_DELETE_NOTIFICATION), PendingIntent.FLAG_UPDATE_CURRENT));
+        final Intent launchIntent = packageManager.getLaunchIntentForPackage(getPackageName());
+        if (launchIntent != null) {
+            builder.setContentIntent(PendingIntent.getActivity(this, 0, launchIntent,
+                    PendingIntent.FLAG_UPDATE_CURRENT));
+        }
+        return builder.build();
+    }
+
+    @TargetApi(26)
+    private void createChannel(CharSequence label) {
+        // creating an existing channel does nothing
+        final NotificationChannel channel =
+                new NotificationChannel(CHANNEL_ID, label, NotificationManager.IMPORTANCE_LOW);
+        channel.setShowBadge(false);
+        final NotificationManager notificationManager =
+                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        notificationManager.createNotificationChannel(channel);
+    }
+}
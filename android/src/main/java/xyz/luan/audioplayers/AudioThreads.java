@@ -0,0 +1,98 @@
+package xyz.luan.audioplayers;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+/**
+ * The threads the players run on.
+ *
+ * Every player operation and {@link android.media.MediaPlayer} callback runs on an audio thread, never on the main
+ * thread. Players are striped over a small number of audio threads (one unless {@link #configure configured}) by their
+ * id, so a given player always runs on the same one; the first thread also runs the work shared by all players (pool
+ * eviction, progress updates).
+ * Only the notifications to Flutter are sent from the main thread.
+ */
+final class AudioThreads {
+    static final int DEFAULT_STRIPES = 1;
+
+    private static final Object sLock = new Object();
+    // the first thread exists as soon as the shared work needs it, the others once the first player is created
+    private static Handler sShared;
+    private static Handler[] sHandlers;
+    private static int sStripes = DEFAULT_STRIPES;
+    private static Handler sMainHandler;
+
+    private AudioThreads() {
+    }
+
+    /**
+     * Sets how many audio threads are used. Only effective before the first player is created.
+     *
+     * @return whether it was applied
+     */
+    static boolean configure(int stripes) {
+        synchronized (sLock) {
+            if (sHandlers != null) {
+                return false;
+            }
+            sStripes = Math.max(1, stripes);
+            return true;
+        }
+    }
+
+    static Handler main() {
+        synchronized (sLock) {
+            if (sMainHandler == null) {
+                sMainHandler = new Handler(Looper.getMainLooper());
+            }
+            return sMainHandler;
+        }
+    }
+
+    static Handler shared() {
+        synchronized (sLock) {
+            if (sShared == null) {
+                sShared = start(0);
+            }
+            return sShared;
+        }
+    }
+
+    static Handler forPlayer(String playerId) {
+        final Handler[] handlers = handlers();
+        return handlers[stripeOf(playerId, handlers.length)];
+    }
+
+    /**
+     * @return the index of the thread of the player, always the same for a given id
+     */
+    static int stripeOf(String playerId, int stripes) {
+        final int hash = playerId == null ? 0 : playerId.hashCode();
+        return (hash & Integer.MAX_VALUE) % stripes;
+    }
+
+    static boolean isCurrent(Handler handler) {
+        return Looper.myLooper() == handler.getLooper();
+    }
+
+    private static Handler[] handlers() {
+        synchronized (sLock) {
+            if (sHandlers == null) {
+                sHandlers = new Handler[sStripes];
+                sHandlers[0] = shared();
+                for (int i = 1; i < sStripes; i++) {
+                    sHandlers[i] = start(i);
+                }
+            }
+            return sHandlers;
+        }
+    }
+
+    private static Handler start(int index) {
+        final HandlerThread thread = new HandlerThread("audioplayers-" + index, Process.THREAD_PRIORITY_AUDIO);
+        thread.start();
+        return new Handler(thread.getLooper());
+    }
+}
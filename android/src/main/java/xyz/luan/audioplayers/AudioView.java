@@ -4,6 +4,8 @@ import android.content.Context;
 
 /**
  * Created by Woody Guo on 2019/2/26.
+ *
+ * All the callbacks are invoked on the audio thread of the player, see {@link AudioThreads}.
  */
 public interface AudioView {
     Context getApplicationContext();
@@ -13,11 +15,55 @@ public interface AudioView {
     void onStop(WrappedMediaPlayer player);
     void onSourceSet(WrappedMediaPlayer player, String source);
 
+    /**
+     * Called when the source is ready to start, or could not be prepared.
+     */
+    void onPrepared(WrappedMediaPlayer player, boolean success);
+
     void onComplete(WrappedMediaPlayer player);
 
-    void onProgressUpdate(WrappedMediaPlayer player, int duration, int position);
+    /**
+     * @param durationChanged whether the duration differs from the one given in the previous update of this source
+     */
+    void onProgressUpdate(WrappedMediaPlayer player, int duration, boolean durationChanged, int position);
+
+    /**
+     * Called once all the progress updates due at the same time were delivered, so they can be sent together.
+     */
+    void onProgressUpdatesDone();
 
     void onSeekComplete(WrappedMediaPlayer player);
 
+    /**
+     * Called when playback stalls waiting for data, and when it goes on.
+     */
+    void onBuffering(WrappedMediaPlayer player, boolean buffering);
+
+    /**
+     * @param percent how much of a remote source is buffered, when it changed
+     */
+    void onBufferingUpdate(WrappedMediaPlayer player, int percent);
+
+    /**
+     * Called when the source failed for good (after the retries of remote sources), or the player was released to
+     * make room for another one; the player is released.
+     */
+    void onError(WrappedMediaPlayer player, String message);
+
+    /**
+     * Called whenever the playback clock changes (start, pause, stop, seek, speed change), so the position can be
+     * extrapolated until the next anchor instead of being polled.
+     *
+     * @param timestamp when the position was read, in {@link android.os.SystemClock#uptimeMillis()} time
+     * @param speed     the rate at which the position moves, 0 when not playing
+     */
+    void onAnchor(WrappedMediaPlayer player, int position, long timestamp, float speed);
+
     void onDeleteNotification(WrappedMediaPlayer player);
+
+    /**
+     * Called when the native resources of an idle player were released. It is prepared again on its next play or
+     * seek, unless a new player takes its slot first (see {@link AdmissionPolicy#QUEUE}).
+     */
+    void onReclaimed(WrappedMediaPlayer player);
 }
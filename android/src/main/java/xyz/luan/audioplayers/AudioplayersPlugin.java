@@ -1,14 +1,27 @@
 package xyz.luan.audioplayers;
 
+import android.app.Activity;
+import android.app.Application;
 import android.content.Context;
 import android.content.Intent;
+import android.media.AudioAttributes;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,19 +40,100 @@ public class AudioplayersPlugin implements MethodCallHandler, AudioView {
     private static final int STATE_PLAY = -2;
     private static final int STATE_STOP = -3;
 
+    private static final int EVENT_STATE = 1;
+    private static final int EVENT_COMPLETE = 2;
+    private static final int EVENT_SEEK_COMPLETE = 3;
+    private static final int EVENT_POSITIONS = 4;
+    private static final int EVENT_ANCHOR = 5;
+    private static final int EVENT_PREPARED = 6;
+    // buffering events are coalesced: one still waiting for the main thread is replaced by the newer one
+    private static final int EVENT_BUFFERING = 7;
+    private static final int EVENT_BUFFERED = 8;
+    private static final int EVENT_ERROR = 9;
+
     private final MethodChannel channel;
     private final Context context;
+    private final AudioFocus audioFocus;
+
+    // events are sent to the main thread as pooled messages, and encoded there with reused arguments
+    private final Handler events = new Handler(Looper.getMainLooper(), new Handler.Callback() {
+        @Override
+        public boolean handleMessage(Message message) {
+            dispatchEvent(message);
+            return true;
+        }
+    });
+    private final Map<String, Object> eventArguments = new HashMap<>(4);
+
+    // progress updates of the current scheduler tick, sent together in a single message
+    private final ProgressBatcher progress = new ProgressBatcher();
+
+    // commands of new players waiting for a free slot (AdmissionPolicy.QUEUE), only touched on the main thread
+    private final ArrayDeque<WaitingCall> waitingCalls = new ArrayDeque<>();
+    private final Runnable admitWaiting = new Runnable() {
+        @Override
+        public void run() {
+            admitWaitingCalls();
+        }
+    };
 
     public static void registerWith(final Registrar registrar) {
         final MethodChannel channel =
                 new MethodChannel(registrar.messenger(), "xyz.luan/audioplayers");
-        channel.setMethodCallHandler(new AudioplayersPlugin(registrar.activeContext(), channel));
+        final AudioplayersPlugin plugin = new AudioplayersPlugin(registrar.activeContext(), channel);
+        channel.setMethodCallHandler(plugin);
+        AssetSource.init(registrar);
+        plugin.trackAppVisibility(registrar.activity() != null ? 1 : 0);
     }
 
     private AudioplayersPlugin(final Context context, final MethodChannel channel) {
         this.context = context.getApplicationContext();
         this.channel = channel;
         this.channel.setMethodCallHandler(this);
+        this.context.registerComponentCallbacks(WrappedMediaPlayer.sReclaimer);
+        this.audioFocus = new AudioFocus(this.context);
+    }
+
+    /**
+     * Slows the progress updates down while none of the app activities is visible.
+     */
+    private void trackAppVisibility(final int startedActivities) {
+        if (!(context instanceof Application)) {
+            return;
+        }
+        ((Application) context).registerActivityLifecycleCallbacks(
+                new Application.ActivityLifecycleCallbacks() {
+                    private int started = startedActivities;
+
+                    @Override
+                    public void onActivityStarted(Activity activity) {
+                        if (started++ == 0) {
+                            ProgressScheduler.setBackgrounded(false);
+                        }
+                    }
+
+                    @Override
+                    public void onActivityStopped(Activity activity) {
+                        if (started > 0 && --started == 0) {
+                            ProgressScheduler.setBackgrounded(true);
+                        }
+                    }
+
+                    @Override
+                    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {}
+
+                    @Override
+                    public void onActivityResumed(Activity activity) {}
+
+                    @Override
+                    public void onActivityPaused(Activity activity) {}
+
+                    @Override
+                    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {}
+
+                    @Override
+                    public void onActivityDestroyed(Activity activity) {}
+                });
     }
 
     @Override
@@ -48,54 +142,273 @@ public class AudioplayersPlugin implements MethodCallHandler, AudioView {
             handleMethodCall(call, response);
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Unexpected error!", e);
+            Metrics.ERRORS.incrementAndGet();
             response.error("Unexpected error!", e.getMessage(), e);
         }
     }
 
     private void handleMethodCall(final MethodCall call, final MethodChannel.Result response) {
         switch (call.method) {
-            case "fetchExistPlayer":
-                String existPlayId = null;
-                for (Map.Entry<String, WrappedMediaPlayer> entry :
-                        WrappedMediaPlayer.sMediaPlayers.entrySet()) {
-                    existPlayId = entry.getKey();
-
-                    final WrappedMediaPlayer player = WrappedMediaPlayer.get(existPlayId, this);
+            case "fetchExistPlayer": {
+                final List<String> existPlayerIds = new ArrayList<>();
+                for (WrappedMediaPlayer existing : WrappedMediaPlayer.players()) {
+                    final WrappedMediaPlayer player = WrappedMediaPlayer.get(existing.getPlayerId(), this);
+                    existPlayerIds.add(player.getPlayerId());
                     if (player.isPlaying()) {
-                        new Handler().postDelayed(new Runnable() {
-                            @Override
-                            public void run() {
-                                channel.invokeMethod("audio.onDuration",
-                                        buildArguments(player.getPlayerId(), STATE_PLAY));
-                            }
-                        }, 300);
+                        events.sendMessageDelayed(
+                                events.obtainMessage(EVENT_STATE, STATE_PLAY, 0, player), 300);
                     }
-                    break;
                 }
-                response.success(existPlayId);
+                response.success(existPlayerIds);
+                return;
+            }
+            case "dispose": {
+                final String playerId = call.argument("playerId");
+                response.success(WrappedMediaPlayer.remove(playerId) ? 1 : 0);
+                admitWaitingCalls();
+                return;
+            }
+            case "configurePlayerLimit": {
+                final int maxPlayers = call.argument("maxPlayers");
+                final String policyName = call.argument("policy");
+                WrappedMediaPlayer.configureLimit(maxPlayers,
+                        AdmissionPolicy.valueOf(policyName.substring("AdmissionPolicy.".length())));
+                response.success(1);
+                admitWaitingCalls();
+                return;
+            }
+            case "getPlayerResources": {
+                final List<Map<String, Object>> players = new ArrayList<>();
+                for (WrappedMediaPlayer player : WrappedMediaPlayer.players()) {
+                    players.add(player.describeResources());
+                }
+                final Map<String, Object> resources = new HashMap<>();
+                resources.put("maxPlayers", WrappedMediaPlayer.getMaxPlayers());
+                resources.put("policy", WrappedMediaPlayer.getAdmissionPolicy().name());
+                resources.put("waitingCalls", waitingCalls.size());
+                resources.put("preparing", PrepareScheduler.getRunningCount());
+                resources.put("waitingPrepares", PrepareScheduler.getWaitingCount());
+                resources.put("players", players);
+                response.success(resources);
+                return;
+            }
+            case "batch": {
+                final List<Map<String, Object>> commands = call.argument("commands");
+                final Boolean syncStart = call.argument("syncStart");
+                runBatch(commands, syncStart != null && syncStart, new MainThreadResult(response));
+                return;
+            }
+            case "prewarm": {
+                final int count = call.argument("count");
+                final MethodChannel.Result result = new MainThreadResult(response);
+                AudioThreads.shared().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        result.success(WrappedMediaPlayer.sPlayerPool.prewarm(count));
+                    }
+                });
+                return;
+            }
+            case "configurePool": {
+                final int maxSize = call.argument("maxSize");
+                final int idleTimeout = call.argument("idleTimeout");
+                final MethodChannel.Result result = new MainThreadResult(response);
+                AudioThreads.shared().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        WrappedMediaPlayer.sPlayerPool.configure(maxSize, idleTimeout);
+                        result.success(1);
+                    }
+                });
+                return;
+            }
+            case "preloadAssets": {
+                final List<String> urls = call.argument("urls");
+                final MethodChannel.Result result = new MainThreadResult(response);
+                AssetSource.preload(urls, new AssetSource.PreloadCallback() {
+                    @Override
+                    public void onPreloaded(int count) {
+                        result.success(count);
+                    }
+                });
+                return;
+            }
+            case "configureCache": {
+                final Number maxBytes = call.argument("maxBytes");
+                final File dir = new File(context.getCacheDir(), "audioplayers");
+                final MethodChannel.Result result = new MainThreadResult(response);
+                // binds a socket and touches the disk, keep it off the main thread
+                AudioThreads.shared().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            CacheProxy.configure(dir, maxBytes.longValue());
+                            result.success(1);
+                        } catch (IOException e) {
+                            result.error("Unable to start the cache", e.getMessage(), null);
+                        }
+                    }
+                });
+                return;
+            }
+            case "preCache": {
+                final String url = call.argument("url");
+                final Number bytes = call.argument("bytes");
+                final CacheProxy cache = CacheProxy.get();
+                if (cache == null) {
+                    response.error("Cache disabled", "Call configureCache before preCache", null);
+                    return;
+                }
+                cache.preCache(url, bytes == null ? -1 : bytes.longValue());
+                response.success(1);
+                return;
+            }
+            case "configurePcmCache": {
+                final Number maxBytes = call.argument("maxBytes");
+                PcmLoader.sCache.setMaxBytes(maxBytes.longValue());
+                response.success(1);
+                return;
+            }
+            case "getPcmCacheStats":
+                response.success(PcmLoader.sCache.stats());
+                return;
+            case "configureMixer": {
+                final int maxVoices = call.argument("maxVoices");
+                Mixer.get().setMaxVoices(maxVoices);
+                response.success(1);
+                return;
+            }
+            case "configureReclaim": {
+                final Number idleTimeout = call.argument("idleTimeout");
+                WrappedMediaPlayer.sReclaimer.configure(idleTimeout.longValue());
+                response.success(1);
+                return;
+            }
+            case "configureAudioFocus": {
+                final boolean enabled = call.argument("enabled");
+                final double duckVolume = call.argument("duckVolume");
+                audioFocus.configure(enabled, (float) duckVolume);
+                response.success(1);
+                return;
+            }
+            case "crossfade": {
+                final String fromPlayerId = call.argument("fromPlayerId");
+                final String toPlayerId = call.argument("toPlayerId");
+                final WrappedMediaPlayer from = WrappedMediaPlayer.sMediaPlayers.get(fromPlayerId);
+                final WrappedMediaPlayer to = WrappedMediaPlayer.sMediaPlayers.get(toPlayerId);
+                if (from == null || to == null) {
+                    response.error("Unknown player", "Both players must exist to crossfade", null);
+                    return;
+                }
+                final int duration = call.argument("duration");
+                crossfade(from, to, duration, new MainThreadResult(response));
+                return;
+            }
+            case "getMetrics": {
+                final Boolean reset = call.argument("reset");
+                response.success(Metrics.snapshot(reset != null && reset));
+                return;
+            }
+            case "configureMetrics": {
+                final boolean trace = call.argument("trace");
+                Metrics.setTracing(trace);
+                response.success(1);
+                return;
+            }
+            case "configureAudioThreads": {
+                final int threads = call.argument("threads");
+                response.success(AudioThreads.configure(threads) ? 1 : 0);
+                return;
+            }
+            case "configurePrepare": {
+                final int maxConcurrent = call.argument("maxConcurrent");
+                PrepareScheduler.configure(maxConcurrent);
+                response.success(1);
+                return;
+            }
+            case "pauseAll":
+                response.success(audioFocus.pauseAll());
+                return;
+            case "resumeAll":
+                response.success(audioFocus.resumeAll());
                 return;
-            case "isSupportChangeSpeed":
-                response.success(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+            case "setBackgroundProgressInterval": {
+                final int interval = call.argument("interval");
+                ProgressScheduler.setBackgroundInterval(interval);
+                response.success(1);
+                return;
+            }
+            case "isSupportChangeSpeed": {
+                // the time-stretch engine does not depend on the playback params of the system
+                final String playerId = call.argument("playerId");
+                final WrappedMediaPlayer player = WrappedMediaPlayer.sMediaPlayers.get(playerId);
+                response.success(player != null && player.getMode() == PlayerMode.TIME_STRETCH
+                        || Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
                         && !TextUtils.equals(Build.VERSION.RELEASE, "6.0.1"));
                 return;
+            }
             default:
                 break;
         }
         final String playerId = call.argument("playerId");
-        final WrappedMediaPlayer player = WrappedMediaPlayer.get(playerId, this);
+        final WrappedMediaPlayer player;
+        try {
+            player = WrappedMediaPlayer.get(playerId, this);
+        } catch (PlayerLimitException e) {
+            response.error("Player limit reached", e.getMessage(), null);
+            return;
+        }
+        if (player == null) {
+            waitingCalls.add(new WaitingCall(call, response));
+            return;
+        }
+        final MethodChannel.Result result = new MainThreadResult(response);
+        final long receivedAt = System.nanoTime();
+        player.getCommands().submit(call.method, call.<String>argument("url"), new CommandPipeline.Task() {
+            @Override
+            public void run() {
+                Metrics.DISPATCH.recordSince(receivedAt);
+                Metrics.beginSection(call.method);
+                try {
+                    handlePlayerCall(player, call, result);
+                } catch (Exception e) {
+                    LOGGER.log(Level.SEVERE, "Unexpected error!", e);
+                    Metrics.ERRORS.incrementAndGet();
+                    result.error("Unexpected error!", e.getMessage(), null);
+                } finally {
+                    Metrics.endSection();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                result.success(1);
+            }
+        });
+    }
+
+    /**
+     * Runs the commands that were waiting for a free slot, as long as there is one.
+     */
+    private void admitWaitingCalls() {
+        while (!waitingCalls.isEmpty() && WrappedMediaPlayer.canAdmit()) {
+            final WaitingCall waiting = waitingCalls.poll();
+            onMethodCall(waiting.call, waiting.response);
+        }
+    }
+
+    /**
+     * Runs a command of a single player, on the audio thread of that player.
+     */
+    private void handlePlayerCall(final WrappedMediaPlayer player, final MethodCall call,
+                                  final MethodChannel.Result response) {
+        player.touch();
         switch (call.method) {
             case "deleteNotification":
                 player.onDeleteNotification();
                 break;
             case "play": {
-                final String url = call.argument("url");
-                final double volume = call.argument("volume");
-                final Double position = call.argument("position");
-                player.setUrl(url);
-                player.setVolume(volume);
-                if (position != null) {
-                    player.seek(position);
-                }
+                setUpPlay(player, call);
                 player.play();
                 break;
             }
@@ -105,6 +418,8 @@ public class AudioplayersPlugin implements MethodCallHandler, AudioView {
             }
             case "pause": {
                 player.pause();
+                // also when paused already (by a focus loss), so it is not resumed when the focus comes back
+                audioFocus.onPlayerStopped(player);
                 break;
             }
             case "stop": {
@@ -113,6 +428,7 @@ public class AudioplayersPlugin implements MethodCallHandler, AudioView {
             }
             case "release": {
                 player.release();
+                audioFocus.onPlayerStopped(player);
                 break;
             }
             case "seek": {
@@ -120,6 +436,41 @@ public class AudioplayersPlugin implements MethodCallHandler, AudioView {
                 player.seek(position);
                 break;
             }
+            case "beginScrub": {
+                player.beginScrub();
+                break;
+            }
+            case "scrubTo": {
+                final double position = call.argument("position");
+                player.scrubTo((int) (position * 1000));
+                break;
+            }
+            case "endScrub": {
+                final Double position = call.argument("position");
+                player.endScrub(position == null ? -1 : (int) (position * 1000));
+                break;
+            }
+            case "fadeTo": {
+                final double volume = call.argument("volume");
+                final int duration = call.argument("duration");
+                final String curveName = call.argument("curve");
+                final VolumeRamp.Curve curve =
+                        VolumeRamp.Curve.valueOf(curveName.substring("FadeCurve.".length()));
+                // answered once the fade is over
+                player.fadeTo(volume, duration, curve, new VolumeRamp.Listener() {
+                    @Override
+                    public void onRampDone(boolean completed) {
+                        response.success(completed ? 1 : 0);
+                    }
+                });
+                return;
+            }
+            case "setAudioAttributes": {
+                final String usage = call.argument("usage");
+                final String contentType = call.argument("contentType");
+                player.setAudioAttributes(usageOf(usage), contentTypeOf(contentType));
+                break;
+            }
             case "setVolume": {
                 final double volume = call.argument("volume");
                 player.setVolume(volume);
@@ -127,9 +478,53 @@ public class AudioplayersPlugin implements MethodCallHandler, AudioView {
             }
             case "setUrl": {
                 final String url = call.argument("url");
+                setMode(player, call);
                 player.setUrl(url);
                 break;
             }
+            case "setBytes": {
+                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                    response.error("Unsupported", "Playing bytes needs Android 6.0 or later", null);
+                    return;
+                }
+                final byte[] bytes = call.argument("bytes");
+                final boolean complete = call.argument("complete");
+                setMode(player, call);
+                player.setUrl(BytesSource.put(player.getPlayerId(), bytes, complete));
+                break;
+            }
+            case "appendBytes": {
+                final byte[] bytes = call.argument("bytes");
+                final boolean complete = call.argument("complete");
+                response.success(BytesSource.append(player.getPlayerId(), bytes, complete) ? 1 : 0);
+                return;
+            }
+            case "setQueue": {
+                final List<String> urls = call.argument("urls");
+                final int index = call.argument("index");
+                final int crossfade = call.argument("crossfade");
+                player.setQueue(urls, index, crossfade);
+                break;
+            }
+            case "enqueue": {
+                final String url = call.argument("url");
+                player.enqueue(url);
+                break;
+            }
+            case "next": {
+                player.next();
+                break;
+            }
+            case "previous": {
+                player.previous();
+                break;
+            }
+            case "setPreparePriority": {
+                final String priorityName = call.argument("priority");
+                player.setPreparePriority(PrepareScheduler.Priority.valueOf(
+                        priorityName.substring("PreparePriority.".length())));
+                break;
+            }
             case "setReleaseMode": {
                 final String releaseModeName = call.argument("releaseMode");
                 final ReleaseMode releaseMode =
@@ -137,8 +532,17 @@ public class AudioplayersPlugin implements MethodCallHandler, AudioView {
                 player.setReleaseMode(releaseMode);
                 break;
             }
+            case "setProgressInterval": {
+                final int interval = call.argument("interval");
+                player.setProgressInterval(interval);
+                break;
+            }
             case "setSpeed": {
                 final float speed = ((Double) (call.argument("speed"))).floatValue();
+                if (!(speed > 0) || Float.isInfinite(speed)) {
+                    response.error("Invalid speed", "The speed must be a positive number, got " + speed, null);
+                    return;
+                }
                 player.setSpeed(speed);
                 break;
             }
@@ -150,6 +554,307 @@ public class AudioplayersPlugin implements MethodCallHandler, AudioView {
         response.success(1);
     }
 
+    private static void setUpPlay(WrappedMediaPlayer player, MethodCall call) {
+        final String url = call.argument("url");
+        final double volume = call.argument("volume");
+        final Double position = call.argument("position");
+        setMode(player, call);
+        player.setUrl(url);
+        player.setVolume(volume);
+        if (position != null) {
+            player.seek(position);
+        }
+    }
+
+    /**
+     * Runs the given commands in order, each one on the audio thread of its player, and responds with one result per
+     * command. Consecutive commands on the same audio thread run in a single pass.
+     *
+     * With {@code syncStart}, the {@code play} and {@code resume} commands only prepare their players, and all of them
+     * are started together once the last one is prepared.
+     */
+    private void runBatch(final List<Map<String, Object>> commands, final boolean syncStart,
+                          final MethodChannel.Result response) {
+        final List<Map<String, Object>> results = new ArrayList<>(commands.size());
+        final List<WrappedMediaPlayer> toStart = new ArrayList<>();
+        runBatchFrom(0, commands, syncStart, results, toStart, response);
+    }
+
+    private void runBatchFrom(final int first, final List<Map<String, Object>> commands, final boolean syncStart,
+                              final List<Map<String, Object>> results, final List<WrappedMediaPlayer> toStart,
+                              final MethodChannel.Result response) {
+        for (int i = first; i < commands.size(); i++) {
+            final Map<String, Object> command = commands.get(i);
+            final String playerId = (String) command.get("playerId");
+            WrappedMediaPlayer player;
+            try {
+                player = WrappedMediaPlayer.get(playerId, this);
+            } catch (PlayerLimitException e) {
+                player = null;
+            }
+            if (player == null) {
+                // a batch does not wait for free slots
+                final BatchResult result = new BatchResult();
+                result.error("Player limit reached", "No slot for player " + playerId, null);
+                results.add(result.value);
+                continue;
+            }
+            if (!AudioThreads.isCurrent(player.getHandler())) {
+                final int next = i;
+                player.getHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        runBatchFrom(next, commands, syncStart, results, toStart, response);
+                    }
+                });
+                return;
+            }
+
+            final String method = (String) command.get("method");
+            @SuppressWarnings("unchecked")
+            final Map<String, Object> commandArguments = (Map<String, Object>) command.get("args");
+            final Map<String, Object> arguments = commandArguments == null
+                    ? new HashMap<String, Object>(1) : new HashMap<>(commandArguments);
+            arguments.put("playerId", playerId);
+
+            final BatchResult result = new BatchResult();
+            try {
+                if (syncStart && ("play".equals(method) || "resume".equals(method))) {
+                    if ("play".equals(method)) {
+                        setUpPlay(player, new MethodCall(method, arguments));
+                    }
+                    player.prepare();
+                    toStart.add(player);
+                    result.success(1);
+                } else {
+                    handlePlayerCall(player, new MethodCall(method, arguments), result);
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Unexpected error!", e);
+                Metrics.ERRORS.incrementAndGet();
+                result.error("Unexpected error!", e.getMessage(), null);
+            }
+            results.add(result.value);
+        }
+        if (!toStart.isEmpty()) {
+            startTogether(toStart);
+        }
+        response.success(results);
+    }
+
+    /**
+     * Fades {@code from} out and pauses it, while {@code to} starts and fades in up to its volume, with equal-power
+     * curves. {@code from} gets its volume back once paused, or if its fade is interrupted. Responds once both fades
+     * are over.
+     */
+    private static void crossfade(final WrappedMediaPlayer from, final WrappedMediaPlayer to, final int duration,
+                                  final MethodChannel.Result response) {
+        final AtomicInteger pending = new AtomicInteger(2);
+        final AtomicInteger completed = new AtomicInteger(0);
+        final VolumeRamp.Listener done = new VolumeRamp.Listener() {
+            @Override
+            public void onRampDone(boolean rampCompleted) {
+                if (rampCompleted) {
+                    completed.incrementAndGet();
+                }
+                if (pending.decrementAndGet() == 0) {
+                    response.success(completed.get() == 2 ? 1 : 0);
+                }
+            }
+        };
+        from.getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                final double volume = from.getVolume();
+                from.fadeTo(0, duration, VolumeRamp.Curve.EQUAL_POWER, new VolumeRamp.Listener() {
+                    @Override
+                    public void onRampDone(boolean rampCompleted) {
+                        if (rampCompleted) {
+                            from.pause();
+                        }
+                        // also when interrupted, so it is never left muted
+                        from.setVolume(volume);
+                        done.onRampDone(rampCompleted);
+                    }
+                });
+            }
+        });
+        to.getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                final double volume = to.getVolume();
+                to.setVolume(0);
+                to.play();
+                to.fadeTo(volume, duration, VolumeRamp.Curve.EQUAL_POWER, done);
+            }
+        });
+    }
+
+    /**
+     * Starts the players once each of them is prepared or failed to, with one pass per audio thread. The players that
+     * could not be prepared are left out; their failure is reported by their own events.
+     */
+    private static void startTogether(final List<WrappedMediaPlayer> players) {
+        final AtomicInteger pending = new AtomicInteger(players.size());
+        // written before pending is decremented, read by the last one
+        final boolean[] ready = new boolean[players.size()];
+        for (int i = 0; i < players.size(); i++) {
+            final int index = i;
+            final WrappedMediaPlayer player = players.get(i);
+            final WrappedMediaPlayer.PreparedCallback callback = new WrappedMediaPlayer.PreparedCallback() {
+                @Override
+                public void onPrepared(boolean success) {
+                    ready[index] = success;
+                    if (pending.decrementAndGet() == 0) {
+                        startReady(players, ready);
+                    }
+                }
+            };
+            // the callbacks of a player are only touched on its own audio thread
+            player.getHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    player.whenPrepared(callback);
+                }
+            });
+        }
+    }
+
+    private static void startReady(List<WrappedMediaPlayer> players, boolean[] ready) {
+        final Map<Handler, List<WrappedMediaPlayer>> byThread = new HashMap<>();
+        for (int i = 0; i < players.size(); i++) {
+            if (!ready[i]) {
+                continue;
+            }
+            final WrappedMediaPlayer player = players.get(i);
+            List<WrappedMediaPlayer> group = byThread.get(player.getHandler());
+            if (group == null) {
+                group = new ArrayList<>();
+                byThread.put(player.getHandler(), group);
+            }
+            group.add(player);
+        }
+        for (Map.Entry<Handler, List<WrappedMediaPlayer>> entry : byThread.entrySet()) {
+            final List<WrappedMediaPlayer> group = entry.getValue();
+            entry.getKey().post(new Runnable() {
+                @Override
+                public void run() {
+                    for (WrappedMediaPlayer player : group) {
+                        player.play();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Delivers the result of a command from an audio thread back on the main thread, as Flutter requires.
+     */
+    private static final class MainThreadResult implements MethodChannel.Result {
+        private final MethodChannel.Result result;
+
+        MainThreadResult(MethodChannel.Result result) {
+            this.result = result;
+        }
+
+        @Override
+        public void success(final Object value) {
+            AudioThreads.main().post(new Runnable() {
+                @Override
+                public void run() {
+                    result.success(value);
+                }
+            });
+        }
+
+        @Override
+        public void error(final String errorCode, final String errorMessage, final Object errorDetails) {
+            AudioThreads.main().post(new Runnable() {
+                @Override
+                public void run() {
+                    result.error(errorCode, errorMessage, errorDetails);
+                }
+            });
+        }
+
+        @Override
+        public void notImplemented() {
+            AudioThreads.main().post(new Runnable() {
+                @Override
+                public void run() {
+                    result.notImplemented();
+                }
+            });
+        }
+    }
+
+    private static final class WaitingCall {
+        final MethodCall call;
+        final MethodChannel.Result response;
+
+        WaitingCall(MethodCall call, MethodChannel.Result response) {
+            this.call = call;
+            this.response = response;
+        }
+    }
+
+    private static final class BatchResult implements MethodChannel.Result {
+        final Map<String, Object> value = new HashMap<>(2);
+
+        @Override
+        public void success(Object result) {
+            value.put("result", result);
+        }
+
+        @Override
+        public void error(String errorCode, String errorMessage, Object errorDetails) {
+            value.put("error", errorCode);
+            value.put("message", errorMessage);
+        }
+
+        @Override
+        public void notImplemented() {
+            value.put("error", "notImplemented");
+        }
+    }
+
+    private static int usageOf(String name) {
+        switch (name.substring("AudioUsage.".length())) {
+            case "GAME":
+                return AudioAttributes.USAGE_GAME;
+            case "NOTIFICATION":
+                return AudioAttributes.USAGE_NOTIFICATION;
+            case "ALARM":
+                return AudioAttributes.USAGE_ALARM;
+            case "ASSISTANCE_SONIFICATION":
+                return AudioAttributes.USAGE_ASSISTANCE_SONIFICATION;
+            case "VOICE_COMMUNICATION":
+                return AudioAttributes.USAGE_VOICE_COMMUNICATION;
+            default:
+                return AudioAttributes.USAGE_MEDIA;
+        }
+    }
+
+    private static int contentTypeOf(String name) {
+        switch (name.substring("AudioContentType.".length())) {
+            case "SPEECH":
+                return AudioAttributes.CONTENT_TYPE_SPEECH;
+            case "SONIFICATION":
+                return AudioAttributes.CONTENT_TYPE_SONIFICATION;
+            case "MOVIE":
+                return AudioAttributes.CONTENT_TYPE_MOVIE;
+            default:
+                return AudioAttributes.CONTENT_TYPE_MUSIC;
+        }
+    }
+
+    private static void setMode(WrappedMediaPlayer player, MethodCall call) {
+        final String modeName = call.argument("mode");
+        if (modeName != null) {
+            player.setMode(PlayerMode.valueOf(modeName.substring("PlayerMode.".length())));
+        }
+    }
+
     @Override
     public Context getApplicationContext() {
         return context;
@@ -157,12 +862,19 @@ public class AudioplayersPlugin implements MethodCallHandler, AudioView {
 
     @Override
     public void onDeleteNotification(WrappedMediaPlayer player) {
+        AudioService.onDeleteNotification();
+    }
 
+    @Override
+    public void onReclaimed(WrappedMediaPlayer player) {
+        // the waiting calls can take its slot
+        events.post(admitWaiting);
     }
 
     @Override
     public void onStart(WrappedMediaPlayer player) {
-        channel.invokeMethod("audio.onDuration", buildArguments(player.getPlayerId(), STATE_PLAY));
+        events.obtainMessage(EVENT_STATE, STATE_PLAY, 0, player).sendToTarget();
+        audioFocus.onPlaybackChanged();
         Context context = getApplicationContext();
         Intent intent = new Intent(AUDIO_SERVICE_ACTION)
                                 .setPackage(context.getPackageName())
@@ -176,39 +888,154 @@ public class AudioplayersPlugin implements MethodCallHandler, AudioView {
 
     @Override
     public void onPause(WrappedMediaPlayer player) {
-        channel.invokeMethod("audio.onDuration", buildArguments(player.getPlayerId(), STATE_PAUSE));
+        events.obtainMessage(EVENT_STATE, STATE_PAUSE, 0, player).sendToTarget();
+        AudioService.onPlaybackChanged();
+        audioFocus.onPlayerStopped(player);
     }
 
     @Override
     public void onStop(WrappedMediaPlayer player) {
-        channel.invokeMethod("audio.onDuration", buildArguments(player.getPlayerId(), STATE_STOP));
+        events.obtainMessage(EVENT_STATE, STATE_STOP, 0, player).sendToTarget();
+        AudioService.onPlaybackChanged();
+        audioFocus.onPlayerStopped(player);
     }
 
     @Override
     public void onSourceSet(WrappedMediaPlayer player, String source) {}
 
     @Override
-    public void onProgressUpdate(WrappedMediaPlayer player, int duration, int position) {
-        channel.invokeMethod("audio.onDuration", buildArguments(player.getPlayerId(), duration));
-        channel.invokeMethod(
-                "audio.onCurrentPosition", buildArguments(player.getPlayerId(), position));
+    public void onPrepared(WrappedMediaPlayer player, boolean success) {
+        events.obtainMessage(EVENT_PREPARED, success ? 1 : 0, 0, player).sendToTarget();
+    }
+
+    @Override
+    public void onBuffering(WrappedMediaPlayer player, boolean buffering) {
+        events.removeMessages(EVENT_BUFFERING, player);
+        events.obtainMessage(EVENT_BUFFERING, buffering ? 1 : 0, 0, player).sendToTarget();
+    }
+
+    @Override
+    public void onBufferingUpdate(WrappedMediaPlayer player, int percent) {
+        events.removeMessages(EVENT_BUFFERED, player);
+        events.obtainMessage(EVENT_BUFFERED, percent, 0, player).sendToTarget();
+    }
+
+    @Override
+    public void onError(WrappedMediaPlayer player, String message) {
+        events.obtainMessage(EVENT_ERROR, new PlayerError(player, message)).sendToTarget();
+        AudioService.onPlaybackChanged();
+        audioFocus.onPlayerStopped(player);
+    }
+
+    // progress updates may come from several audio threads, the batcher is synchronized
+    @Override
+    public void onProgressUpdate(WrappedMediaPlayer player, int duration, boolean durationChanged, int position) {
+        progress.add(player.getPlayerId(), duration, durationChanged, position);
+    }
+
+    @Override
+    public void onProgressUpdatesDone() {
+        final ProgressBatcher.Batch batch = progress.take();
+        if (batch != null) {
+            events.obtainMessage(EVENT_POSITIONS, batch).sendToTarget();
+        }
     }
 
     @Override
     public void onComplete(WrappedMediaPlayer player) {
-        channel.invokeMethod("audio.onComplete", buildArguments(player.getPlayerId(), true));
+        events.obtainMessage(EVENT_COMPLETE, player).sendToTarget();
+        AudioService.onPlaybackChanged();
+        audioFocus.onPlaybackChanged();
     }
 
     @Override
     public void onSeekComplete(WrappedMediaPlayer player) {
-        channel.invokeMethod("audio.onSeekComplete",
-                buildArguments(player.getPlayerId(), player.getCurrentPosition()));
+        events.obtainMessage(EVENT_SEEK_COMPLETE, player.getCurrentPosition(), 0, player).sendToTarget();
+    }
+
+    @Override
+    public void onAnchor(WrappedMediaPlayer player, int position, long timestamp, float speed) {
+        events.obtainMessage(EVENT_ANCHOR, new Anchor(player, position, timestamp, speed)).sendToTarget();
+    }
+
+    /**
+     * Sends an event to Flutter; runs on the main thread.
+     */
+    private void dispatchEvent(Message message) {
+        switch (message.what) {
+            case EVENT_STATE:
+                sendEvent("audio.onDuration", (WrappedMediaPlayer) message.obj, message.arg1);
+                break;
+            case EVENT_COMPLETE:
+                sendEvent("audio.onComplete", (WrappedMediaPlayer) message.obj, Boolean.TRUE);
+                break;
+            case EVENT_SEEK_COMPLETE:
+                sendEvent("audio.onSeekComplete", (WrappedMediaPlayer) message.obj, message.arg1);
+                break;
+            case EVENT_PREPARED:
+                sendEvent("audio.onPrepared", (WrappedMediaPlayer) message.obj, message.arg1 == 1);
+                break;
+            case EVENT_BUFFERING:
+                sendEvent("audio.onBuffering", (WrappedMediaPlayer) message.obj, message.arg1 == 1);
+                break;
+            case EVENT_BUFFERED:
+                sendEvent("audio.onBufferingUpdate", (WrappedMediaPlayer) message.obj, message.arg1);
+                break;
+            case EVENT_ERROR: {
+                final PlayerError error = (PlayerError) message.obj;
+                sendEvent("audio.onError", error.player, error.message);
+                break;
+            }
+            case EVENT_ANCHOR: {
+                // Dart has its own clock, so the anchor goes with its age rather than its timestamp
+                final Anchor anchor = (Anchor) message.obj;
+                eventArguments.put("speed", (double) anchor.speed);
+                eventArguments.put("age", (int) (SystemClock.uptimeMillis() - anchor.timestamp));
+                sendEvent("audio.onAnchor", anchor.player, anchor.position);
+                eventArguments.remove("speed");
+                eventArguments.remove("age");
+                break;
+            }
+            case EVENT_POSITIONS: {
+                final ProgressBatcher.Batch batch = (ProgressBatcher.Batch) message.obj;
+                channel.invokeMethod("audio.onPositions", batch.arguments);
+                progress.recycle(batch);
+                break;
+            }
+            default:
+                break;
+        }
     }
 
-    private static Map<String, Object> buildArguments(String playerId, Object value) {
-        Map<String, Object> result = new HashMap<>(2);
-        result.put("playerId", playerId);
-        result.put("value", value);
-        return result;
+    private void sendEvent(String method, WrappedMediaPlayer player, Object value) {
+        // the arguments are encoded right away, so the same map can be reused for every event
+        eventArguments.put("playerId", player.getPlayerId());
+        eventArguments.put("value", value);
+        channel.invokeMethod(method, eventArguments);
+    }
+
+    private static final class PlayerError {
+        final WrappedMediaPlayer player;
+        final String message;
+
+        PlayerError(WrappedMediaPlayer player, String message) {
+            this.player = player;
+            this.message = message;
+        }
+    }
+
+    private static final class Anchor {
+        final WrappedMediaPlayer player;
+        final int position;
+        // uptime when the position was read
+        final long timestamp;
+        final float speed;
+
+        Anchor(WrappedMediaPlayer player, int position, long timestamp, float speed) {
+            this.player = player;
+            this.position = position;
+            this.timestamp = timestamp;
+            this.speed = speed;
+        }
     }
 }
@@ -0,0 +1,215 @@
+package xyz.luan.audioplayers;
+
+import android.annotation.TargetApi;
+import android.media.MediaDataSource;
+import android.media.MediaExtractor;
+import android.media.MediaPlayer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Audio sent from Dart as bytes, played from memory through a {@link MediaDataSource} (API 23+) without going through
+ * a file.
+ *
+ * Each player has at most one buffer, addressed as {@code bytes://<playerId>/<generation>}; setting new bytes replaces
+ * it, with a new url. A buffer is a list of the chunks received, kept as they came from the channel, so the data is
+ * never copied again on the native side. Bytes can be appended until the buffer is complete, and playback can start
+ * before: reads past the end wait for more data, and the size stays unknown until then, as for a live stream.
+ */
+final class BytesSource {
+    private static final String SCHEME = "bytes://";
+
+    // by player id, guarded by itself
+    private static final Map<String, Buffer> sBuffers = new HashMap<>();
+    private static int sGeneration = 0;
+
+    private BytesSource() {
+    }
+
+    static boolean isBytes(String url) {
+        return url != null && url.startsWith(SCHEME);
+    }
+
+    /**
+     * Replaces the buffer of the player with a new one starting with {@code bytes}.
+     *
+     * @return the url of the new buffer
+     */
+    static String put(String playerId, byte[] bytes, boolean complete) {
+        final Buffer buffer;
+        final Buffer previous;
+        synchronized (sBuffers) {
+            buffer = new Buffer(SCHEME + playerId + "/" + sGeneration++);
+            previous = sBuffers.put(playerId, buffer);
+        }
+        if (previous != null) {
+            previous.close();
+        }
+        buffer.append(bytes, complete);
+        return buffer.url;
+    }
+
+    /**
+     * Appends to the buffer of the player.
+     *
+     * @return false if the player has no buffer, or a complete one
+     */
+    static boolean append(String playerId, byte[] bytes, boolean complete) {
+        final Buffer buffer;
+        synchronized (sBuffers) {
+            buffer = sBuffers.get(playerId);
+        }
+        return buffer != null && buffer.append(bytes, complete);
+    }
+
+    /**
+     * Drops the buffer of a disposed player; reads still waiting for data end.
+     */
+    static void remove(String playerId) {
+        final Buffer buffer;
+        synchronized (sBuffers) {
+            buffer = sBuffers.remove(playerId);
+        }
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    @TargetApi(23)
+    static void setDataSource(MediaPlayer player, String url) throws IOException {
+        player.setDataSource(new Source(buffer(url)));
+    }
+
+    @TargetApi(23)
+    static void setDataSource(MediaExtractor extractor, String url) throws IOException {
+        extractor.setDataSource(new Source(buffer(url)));
+    }
+
+    private static Buffer buffer(String url) throws IOException {
+        synchronized (sBuffers) {
+            for (Buffer buffer : sBuffers.values()) {
+                if (buffer.url.equals(url)) {
+                    return buffer;
+                }
+            }
+        }
+        throw new IOException("No bytes for " + url + ", they were replaced or disposed");
+    }
+
+    /**
+     * Append-only list of chunks, read from any position. Reads past the end block until more is appended, the buffer
+     * is complete, or closed.
+     */
+    static final class Buffer {
+        private final String url;
+        // guarded by this
+        private final List<byte[]> chunks = new ArrayList<>();
+        private long[] starts = new long[16];
+        private long size = 0;
+        private boolean complete = false;
+        private boolean closed = false;
+
+        Buffer(String url) {
+            this.url = url;
+        }
+
+        synchronized boolean append(byte[] bytes, boolean complete) {
+            if (this.complete || closed) {
+                return false;
+            }
+            if (bytes.length > 0) {
+                if (chunks.size() == starts.length) {
+                    final long[] grown = new long[starts.length * 2];
+                    System.arraycopy(starts, 0, grown, 0, starts.length);
+                    starts = grown;
+                }
+                starts[chunks.size()] = size;
+                chunks.add(bytes);
+                size += bytes.length;
+            }
+            this.complete = complete;
+            notifyAll();
+            return true;
+        }
+
+        synchronized void close() {
+            closed = true;
+            chunks.clear();
+            notifyAll();
+        }
+
+        /**
+         * @return the size, or -1 while more bytes may come
+         */
+        synchronized long getSize() {
+            return complete ? size : -1;
+        }
+
+        synchronized int readAt(long position, byte[] buffer, int offset, int length) throws IOException {
+            while (position >= size && !complete && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted while waiting for " + url, e);
+                }
+            }
+            if (closed || position >= size) {
+                return -1;
+            }
+            int chunk = chunkAt(position);
+            int read = 0;
+            while (read < length && chunk < chunks.size()) {
+                final byte[] bytes = chunks.get(chunk);
+                final int from = (int) (position + read - starts[chunk]);
+                final int count = Math.min(length - read, bytes.length - from);
+                System.arraycopy(bytes, from, buffer, offset + read, count);
+                read += count;
+                chunk++;
+            }
+            return read;
+        }
+
+        // the index of the chunk holding the position, which must be before the end
+        private int chunkAt(long position) {
+            int low = 0;
+            int high = chunks.size() - 1;
+            while (low < high) {
+                final int middle = (low + high + 1) >>> 1;
+                if (starts[middle] <= position) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+    }
+
+    @TargetApi(23)
+    private static final class Source extends MediaDataSource {
+        private final Buffer buffer;
+
+        Source(Buffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int readAt(long position, byte[] bytes, int offset, int size) throws IOException {
+            return buffer.readAt(position, bytes, offset, size);
+        }
+
+        @Override
+        public long getSize() {
+            return buffer.getSize();
+        }
+
+        @Override
+        public void close() {
+            // the buffer belongs to the player, and may be played again
+        }
+    }
+}
@@ -0,0 +1,539 @@
+package xyz.luan.audioplayers;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Local HTTP server that serves remote sources out of a {@link DiskCache}, so replaying or seeking a remote file does
+ * not download the same bytes again.
+ *
+ * {@link android.media.MediaPlayer} is pointed at {@link #proxyUrl(String)} instead of the remote url. Requests
+ * (including byte ranges) are answered from disk as far as the cache goes; the rest is fetched from the origin and
+ * written to the cache while it is streamed to the player. Ranges starting past the cached prefix are just passed
+ * through. Redirects of the origin are followed, and its errors are passed on to the player as HTTP errors.
+ *
+ * Disabled until {@link #configure} is called with a positive size.
+ */
+class CacheProxy {
+    private static final String TAG = CacheProxy.class.getSimpleName();
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int TIMEOUT = 15000;
+    private static final int MAX_REDIRECTS = 5;
+    private static final int HTTP_TEMP_REDIRECT = 307;
+    private static final int HTTP_PERMANENT_REDIRECT = 308;
+
+    private static CacheProxy sInstance;
+
+    private final DiskCache cache;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+
+    private CacheProxy(DiskCache cache) throws IOException {
+        this.cache = cache;
+        this.serverSocket = new ServerSocket(0, 8, InetAddress.getByName("127.0.0.1"));
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "audioplayers-cache-" + count++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        });
+    }
+
+    /**
+     * @return the running proxy, or {@code null} if caching is disabled
+     */
+    static synchronized CacheProxy get() {
+        return sInstance;
+    }
+
+    /**
+     * Enables the cache with the given size cap in bytes, or disables it (keeping the files) if {@code maxBytes <= 0}.
+     */
+    static synchronized void configure(File dir, long maxBytes) throws IOException {
+        if (maxBytes <= 0) {
+            if (sInstance != null) {
+                sInstance.shutdown();
+                sInstance = null;
+            }
+        } else if (sInstance == null) {
+            sInstance = new CacheProxy(new DiskCache(dir, maxBytes));
+        } else {
+            sInstance.cache.setMaxBytes(maxBytes);
+        }
+    }
+
+    /**
+     * @return the url the player should use for the given source: the proxied one for remote urls, the same otherwise
+     */
+    static String dataSourceOf(String url) {
+        final CacheProxy proxy = get();
+        return proxy == null ? url : proxy.proxyUrl(url);
+    }
+
+    String proxyUrl(String url) {
+        if (!url.startsWith("http://") && !url.startsWith("https://")) {
+            return url;
+        }
+        try {
+            return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/" + URLEncoder.encode(url, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return url;
+        }
+    }
+
+    /**
+     * Downloads the first {@code bytes} bytes of the url into the cache in background (the whole file if negative).
+     */
+    void preCache(final String url, final long bytes) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final String key = DiskCache.keyOf(url);
+                if (!cache.lockWriter(key)) {
+                    // someone is already downloading it
+                    return;
+                }
+                try {
+                    final long cached = cache.cachedLength(key);
+                    final DiskCache.Meta meta = cache.readMeta(key);
+                    final boolean complete = meta != null && meta.totalLength >= 0 && cached >= meta.totalLength;
+                    if (complete || (bytes >= 0 && cached >= bytes)) {
+                        return;
+                    }
+                    final Upstream upstream = openUpstream(url, cached, bytes >= 0 ? bytes - 1 : -1);
+                    try {
+                        cache.writeMeta(key, upstream.totalLength, upstream.contentType);
+                        appendToCache(key, upstream, cached, bytes >= 0 ? bytes - 1 : Long.MAX_VALUE, null);
+                    } finally {
+                        upstream.connection.disconnect();
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Unable to pre-cache " + url, e);
+                } finally {
+                    cache.unlockWriter(key);
+                    cache.trim();
+                }
+            }
+        });
+    }
+
+    private void shutdown() {
+        closeQuietly(serverSocket);
+        executor.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handleConnection(socket);
+                    }
+                });
+            } catch (IOException e) {
+                // closed by shutdown()
+            }
+        }
+    }
+
+    private void handleConnection(Socket socket) {
+        try {
+            socket.setSoTimeout(TIMEOUT);
+            final InputStream in = new BufferedInputStream(socket.getInputStream());
+            final String requestLine = readLine(in);
+            if (requestLine == null) {
+                return;
+            }
+            long start = 0;
+            long end = -1;
+            boolean ranged = false;
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                final int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Range")) {
+                    final long[] range = parseRange(line.substring(colon + 1).trim());
+                    if (range != null) {
+                        ranged = true;
+                        start = range[0];
+                        end = range[1];
+                    }
+                }
+            }
+            final String[] parts = requestLine.split(" ");
+            if (parts.length < 2 || parts[1].length() < 2) {
+                return;
+            }
+            final String url = URLDecoder.decode(parts[1].substring(1), "UTF-8");
+            final OutputStream out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+            serve(url, start, end, ranged, out);
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            // the player closes connections whenever it seeks, nothing to report
+            Log.d(TAG, "Proxy connection closed", e);
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    private void serve(String url, long start, long end, boolean ranged, OutputStream out) throws IOException {
+        final String key = DiskCache.keyOf(url);
+        cache.touch(key);
+        final long cached = cache.cachedLength(key);
+        final DiskCache.Meta meta = cache.readMeta(key);
+        if (start < 0) {
+            if (meta != null && meta.totalLength >= 0) {
+                // the last -start bytes
+                start = Math.max(0, meta.totalLength + start);
+                end = meta.totalLength - 1;
+            } else {
+                // a suffix cannot be resolved before knowing the length: the whole resource is sent instead, as by an
+                // origin ignoring ranges
+                start = 0;
+                ranged = false;
+            }
+        }
+
+        final boolean complete = meta != null && meta.totalLength >= 0 && cached >= meta.totalLength;
+        if (complete || (meta != null && meta.totalLength >= 0 && end >= 0 && end < cached)) {
+            if (writeHeaders(out, start, end, ranged, meta.totalLength, -1, meta.contentType)) {
+                copyFromCache(key, start, lastByte(end, meta.totalLength) + 1, out);
+            }
+            return;
+        }
+
+        boolean whole = false;
+        final boolean writer = start <= cached && cache.lockWriter(key);
+        try {
+            final long from = writer ? cached : start;
+            final Upstream upstream;
+            try {
+                upstream = openUpstream(url, from, end);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to fetch " + url, e);
+                writeError(out, e instanceof UpstreamException ? ((UpstreamException) e).code
+                        : HttpURLConnection.HTTP_BAD_GATEWAY);
+                return;
+            }
+            try {
+                if (writer) {
+                    cache.writeMeta(key, upstream.totalLength, upstream.contentType);
+                }
+                // a range of unknown end cannot be described: the whole resource is sent instead, as by an origin
+                // ignoring ranges
+                whole = ranged && start > 0 && end < 0 && upstream.totalLength < 0 && upstream.lastByte < 0;
+                if (!whole && writeHeaders(out, start, end, ranged, upstream.totalLength, upstream.lastByte,
+                        upstream.contentType)) {
+                    final long last = upstream.totalLength >= 0
+                            ? lastByte(end, upstream.totalLength) : (end >= 0 ? end : Long.MAX_VALUE);
+                    if (writer) {
+                        copyFromCache(key, start, Math.min(cached, last + 1), out);
+                        appendToCache(key, upstream, cached, last, out);
+                    } else {
+                        copy(upstream.body, from, last, out);
+                    }
+                }
+            } finally {
+                upstream.connection.disconnect();
+            }
+        } finally {
+            if (writer) {
+                cache.unlockWriter(key);
+                cache.trim();
+            }
+        }
+        if (whole) {
+            serve(url, 0, -1, false, out);
+        }
+    }
+
+    /**
+     * Parses the value of a {@code Range} header holding a single range: {@code bytes=first-last}, {@code bytes=first-}
+     * or the suffix {@code bytes=-length}.
+     *
+     * @return the first and last byte (-1 up to the end), the first one being minus the length for a suffix; null for
+     * several ranges or a malformed one, which are ignored as by an origin not supporting them
+     */
+    static long[] parseRange(String value) {
+        if (!value.startsWith("bytes=") || value.indexOf(',') >= 0) {
+            return null;
+        }
+        final String range = value.substring("bytes=".length()).trim();
+        final int dash = range.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            final String first = range.substring(0, dash).trim();
+            final String last = range.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                final long length = Long.parseLong(last);
+                return length <= 0 ? null : new long[]{-length, -1};
+            }
+            final long start = Long.parseLong(first);
+            if (last.isEmpty()) {
+                return start < 0 ? null : new long[]{start, -1};
+            }
+            final long end = Long.parseLong(last);
+            return start < 0 || end < start ? null : new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param lastKnown the last byte the origin will send, when its total length is unknown; -1 if unknown too
+     * @return whether there is a body to send after the headers
+     */
+    private static boolean writeHeaders(OutputStream out, long start, long end, boolean ranged, long totalLength,
+                                        long lastKnown, String contentType) throws IOException {
+        final StringBuilder headers = new StringBuilder(256);
+        boolean hasBody = true;
+        if (totalLength >= 0 && start >= totalLength && totalLength > 0) {
+            headers.append("HTTP/1.1 416 Range Not Satisfiable\r\n")
+                    .append("Content-Range: bytes */").append(totalLength).append("\r\n")
+                    .append("Content-Length: 0\r\n");
+            hasBody = false;
+        } else if (ranged && totalLength >= 0) {
+            final long last = lastByte(end, totalLength);
+            headers.append("HTTP/1.1 206 Partial Content\r\n")
+                    .append("Content-Range: bytes ").append(start).append('-').append(last)
+                    .append('/').append(totalLength).append("\r\n")
+                    .append("Content-Length: ").append(last - start + 1).append("\r\n");
+        } else if (ranged && (end >= 0 || lastKnown >= 0)) {
+            // the end of the range is known, but not the total length
+            final long last = end >= 0 && lastKnown >= 0 ? Math.min(end, lastKnown) : Math.max(end, lastKnown);
+            headers.append("HTTP/1.1 206 Partial Content\r\n")
+                    .append("Content-Range: bytes ").append(start).append('-').append(last).append("/*\r\n")
+                    .append("Content-Length: ").append(last - start + 1).append("\r\n");
+        } else {
+            headers.append("HTTP/1.1 200 OK\r\n");
+            if (totalLength >= 0) {
+                headers.append("Content-Length: ").append(totalLength - start).append("\r\n");
+            }
+        }
+        if (contentType != null) {
+            headers.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        headers.append("Accept-Ranges: bytes\r\nConnection: close\r\n\r\n");
+        out.write(headers.toString().getBytes("US-ASCII"));
+        return hasBody;
+    }
+
+    private static void writeError(OutputStream out, int code) throws IOException {
+        out.write(("HTTP/1.1 " + code + " Upstream Error\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                .getBytes("US-ASCII"));
+    }
+
+    private static long lastByte(long end, long totalLength) {
+        return end >= 0 ? Math.min(end, totalLength - 1) : totalLength - 1;
+    }
+
+    /**
+     * Opens the url, following up to {@link #MAX_REDIRECTS} redirects (HttpURLConnection does not follow them from
+     * one protocol to another).
+     *
+     * @throws UpstreamException if the origin answers with an error
+     */
+    private Upstream openUpstream(String url, long from, long end) throws IOException {
+        URL location = new URL(url);
+        HttpURLConnection connection;
+        int code;
+        int redirects = 0;
+        while (true) {
+            connection = (HttpURLConnection) location.openConnection();
+            connection.setInstanceFollowRedirects(false);
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            if (from > 0 || end >= 0) {
+                connection.setRequestProperty("Range", "bytes=" + from + "-" + (end >= 0 ? end : ""));
+            }
+            code = connection.getResponseCode();
+            if (!isRedirect(code)) {
+                break;
+            }
+            final String target = connection.getHeaderField("Location");
+            connection.disconnect();
+            if (target == null || ++redirects > MAX_REDIRECTS) {
+                throw new UpstreamException(HttpURLConnection.HTTP_BAD_GATEWAY, "Too many redirects for " + url);
+            }
+            location = new URL(location, target);
+        }
+        if (code != HttpURLConnection.HTTP_OK && code != HttpURLConnection.HTTP_PARTIAL) {
+            connection.disconnect();
+            throw new UpstreamException(code, "Unexpected response " + code + " for " + url);
+        }
+        final InputStream body = new BufferedInputStream(connection.getInputStream(), BUFFER_SIZE);
+        final long length = connection.getContentLength();
+        long totalLength = -1;
+        long lastByte = -1;
+        if (code == HttpURLConnection.HTTP_PARTIAL) {
+            final String range = connection.getHeaderField("Content-Range");
+            final int slash = range == null ? -1 : range.lastIndexOf('/');
+            if (slash >= 0 && !range.endsWith("*")) {
+                totalLength = Long.parseLong(range.substring(slash + 1).trim());
+            }
+            final int dash = range == null ? -1 : range.indexOf('-');
+            if (dash >= 0 && slash > dash) {
+                lastByte = Long.parseLong(range.substring(dash + 1, slash).trim());
+            }
+        } else {
+            totalLength = length;
+            // the origin ignored the range, skip what was not asked for
+            long skipped = 0;
+            while (skipped < from) {
+                final long n = body.skip(from - skipped);
+                if (n <= 0) {
+                    throw new IOException("Unexpected end of " + url);
+                }
+                skipped += n;
+            }
+        }
+        if (lastByte < 0 && totalLength >= 0) {
+            lastByte = totalLength - 1;
+        }
+        return new Upstream(connection, body, totalLength, lastByte, connection.getContentType());
+    }
+
+    private static boolean isRedirect(int code) {
+        return code == HttpURLConnection.HTTP_MOVED_PERM || code == HttpURLConnection.HTTP_MOVED_TEMP
+                || code == HttpURLConnection.HTTP_SEE_OTHER || code == HTTP_TEMP_REDIRECT
+                || code == HTTP_PERMANENT_REDIRECT;
+    }
+
+    /**
+     * Appends the upstream bytes from {@code position} to {@code last} (inclusive) to the cached prefix, forwarding
+     * them to {@code out} if not null. Records the total length once the end of a source of unknown size is reached.
+     */
+    private void appendToCache(String key, Upstream upstream, long position, long last, OutputStream out)
+            throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (FileOutputStream file = new FileOutputStream(cache.dataFile(key), true)) {
+            while (position <= last) {
+                final int n = upstream.body.read(buffer, 0, (int) Math.min(buffer.length - 1, last - position) + 1);
+                if (n < 0) {
+                    if (upstream.totalLength < 0) {
+                        cache.writeMeta(key, position, upstream.contentType);
+                    }
+                    break;
+                }
+                file.write(buffer, 0, n);
+                position += n;
+                if (out != null) {
+                    out.write(buffer, 0, n);
+                }
+            }
+        }
+    }
+
+    private void copyFromCache(String key, long from, long to, OutputStream out) throws IOException {
+        if (from >= to) {
+            return;
+        }
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (RandomAccessFile file = new RandomAccessFile(cache.dataFile(key), "r")) {
+            file.seek(from);
+            long remaining = to - from;
+            while (remaining > 0) {
+                final int n = file.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    throw new IOException("Cache entry truncated");
+                }
+                out.write(buffer, 0, n);
+                remaining -= n;
+            }
+        }
+    }
+
+    private static void copy(InputStream in, long position, long last, OutputStream out) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        while (position <= last) {
+            final int n = in.read(buffer, 0, (int) Math.min(buffer.length - 1, last - position) + 1);
+            if (n < 0) {
+                break;
+            }
+            out.write(buffer, 0, n);
+            position += n;
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+        return c == -1 && line.size() == 0 ? null : line.toString("US-ASCII");
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignored
+        }
+    }
+
+    private static final class Upstream {
+        final HttpURLConnection connection;
+        final InputStream body;
+        final long totalLength;
+        // the last byte the origin sends, -1 if unknown
+        final long lastByte;
+        final String contentType;
+
+        Upstream(HttpURLConnection connection, InputStream body, long totalLength, long lastByte, String contentType) {
+            this.connection = connection;
+            this.body = body;
+            this.totalLength = totalLength;
+            this.lastByte = lastByte;
+            this.contentType = contentType;
+        }
+    }
+
+    /**
+     * An error answered by the origin, passed on to the player.
+     */
+    private static final class UpstreamException extends IOException {
+        final int code;
+
+        UpstreamException(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+}
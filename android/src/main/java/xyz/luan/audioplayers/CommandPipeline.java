@@ -0,0 +1,141 @@
+package xyz.luan.audioplayers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * The commands of a player on their way to its audio thread, run in the order they were sent.
+ *
+ * A command still waiting when a newer one makes it pointless is cancelled, and answered as if it ran: during a burst
+ * (skipping tracks, scrubbing) only the last source is prepared, and the seeks collapse to the last one. A new source
+ * cancels the waiting source changes, and the seeks and scrubs sent for another source; a new seek (or scrub) cancels
+ * the waiting ones.
+ */
+final class CommandPipeline {
+    interface Task {
+        /**
+         * Runs the command, and answers its result.
+         */
+        void run();
+
+        /**
+         * Answers the command as if it ran, instead of running it.
+         */
+        void cancel();
+    }
+
+    private static final int OTHER = 0;
+    // only sets the source, so can be dropped when another source follows
+    private static final int SOURCE = 1;
+    // sets the source along with other state (or data), so is never dropped but still supersedes older commands
+    private static final int LOAD = 2;
+    private static final int SEEK = 3;
+    private static final int SCRUB = 4;
+
+    // posts to the audio thread
+    private final Executor executor;
+    // the commands posted but not run yet, guarded by this
+    private final List<Command> waiting = new ArrayList<>(4);
+    // the source set by the last command sent, guarded by this: its url, or a new object when not known
+    private Object source = null;
+    private int cancelledCount = 0;
+
+    CommandPipeline(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Posts the command to the audio thread, cancelling the waiting commands it supersedes.
+     *
+     * @param url the source set by the command, if any and known
+     */
+    void submit(String method, String url, Task task) {
+        final int kind = kindOf(method);
+        final Command command;
+        synchronized (this) {
+            if (kind == SOURCE || kind == LOAD) {
+                // setting the source already loaded changes nothing, so the seeks sent for it still apply
+                source = url != null ? url : new Object();
+            }
+            command = new Command(kind, source, task);
+            for (int i = waiting.size() - 1; i >= 0; i--) {
+                final Command older = waiting.get(i);
+                if (command.supersedes(older)) {
+                    older.cancelled = true;
+                    waiting.remove(i);
+                    cancelledCount++;
+                }
+            }
+            waiting.add(command);
+        }
+        executor.execute(command);
+    }
+
+    /**
+     * How many commands were dropped so far because a newer one superseded them.
+     */
+    synchronized int getCancelledCount() {
+        return cancelledCount;
+    }
+
+    private static int kindOf(String method) {
+        switch (method) {
+            case "setUrl":
+                return SOURCE;
+            case "play":
+            case "setQueue":
+            case "setBytes":
+                return LOAD;
+            case "seek":
+                return SEEK;
+            case "scrubTo":
+                return SCRUB;
+            default:
+                return OTHER;
+        }
+    }
+
+    private final class Command implements Runnable {
+        private final int kind;
+        // the source the command applies to (or sets)
+        private final Object target;
+        private final Task task;
+        // guarded by the pipeline lock
+        private boolean cancelled = false;
+
+        Command(int kind, Object target, Task task) {
+            this.kind = kind;
+            this.target = target;
+            this.task = task;
+        }
+
+        boolean supersedes(Command older) {
+            switch (kind) {
+                case SOURCE:
+                case LOAD:
+                    return older.kind == SOURCE
+                            || (older.kind == SEEK || older.kind == SCRUB) && !target.equals(older.target);
+                case SEEK:
+                case SCRUB:
+                    return older.kind == kind;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public void run() {
+            final boolean superseded;
+            synchronized (CommandPipeline.this) {
+                superseded = cancelled;
+                waiting.remove(this);
+            }
+            if (superseded) {
+                task.cancel();
+            } else {
+                task.run();
+            }
+        }
+    }
+}
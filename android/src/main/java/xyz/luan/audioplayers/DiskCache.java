@@ -0,0 +1,149 @@
+package xyz.luan.audioplayers;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Files backing the {@link CacheProxy}, evicted least recently used first once they exceed a size cap.
+ *
+ * Each url is stored as a {@code .data} file holding the bytes downloaded so far, always a contiguous prefix of the
+ * resource, and a {@code .meta} file with its total length (-1 if unknown) and content type. At most one connection
+ * writes a given entry at a time.
+ */
+class DiskCache {
+    private final File dir;
+    private final Set<String> writing = new HashSet<>();
+    private volatile long maxBytes;
+
+    DiskCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        dir.mkdirs();
+    }
+
+    void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    static String keyOf(String url) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+            final StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    File dataFile(String key) {
+        return new File(dir, key + ".data");
+    }
+
+    long cachedLength(String key) {
+        return dataFile(key).length();
+    }
+
+    /**
+     * @return the total length and content type of the entry, or {@code null} if they were never recorded
+     */
+    Meta readMeta(String key) {
+        final File file = new File(dir, key + ".meta");
+        if (!file.exists()) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            final long totalLength = Long.parseLong(reader.readLine());
+            final String contentType = reader.readLine();
+            return new Meta(totalLength, contentType == null || contentType.isEmpty() ? null : contentType);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    void writeMeta(String key, long totalLength, String contentType) throws IOException {
+        try (Writer writer = new FileWriter(new File(dir, key + ".meta"))) {
+            writer.write(totalLength + "\n" + (contentType == null ? "" : contentType) + "\n");
+        }
+    }
+
+    void touch(String key) {
+        dataFile(key).setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * @return whether the caller may append to the entry, in which case it must call {@link #unlockWriter}
+     */
+    synchronized boolean lockWriter(String key) {
+        return writing.add(key);
+    }
+
+    synchronized void unlockWriter(String key) {
+        writing.remove(key);
+    }
+
+    /**
+     * Deletes the least recently used entries (skipping the ones being written) until the cache fits its cap.
+     */
+    synchronized void trim() {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                final long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (File file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            final String name = file.getName();
+            if (!name.endsWith(".data")) {
+                continue;
+            }
+            final String key = name.substring(0, name.length() - ".data".length());
+            if (writing.contains(key)) {
+                continue;
+            }
+            final File meta = new File(dir, key + ".meta");
+            total -= file.length() + meta.length();
+            file.delete();
+            meta.delete();
+        }
+    }
+
+    static final class Meta {
+        final long totalLength;
+        final String contentType;
+
+        Meta(long totalLength, String contentType) {
+            this.totalLength = totalLength;
+            this.contentType = contentType;
+        }
+    }
+}
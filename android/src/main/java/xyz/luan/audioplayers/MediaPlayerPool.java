@@ -0,0 +1,157 @@
+package xyz.luan.audioplayers;
+
+import android.media.MediaPlayer;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * A bounded pool of idle, reset {@link MediaPlayer}s.
+ *
+ * Players returned by {@link #recycle(MediaPlayer)} are kept in the Idle state and handed out again by
+ * {@link #acquire()}, so playing a sound after a release does not pay for constructing a new native player.
+ * Players idle for longer than the idle timeout, or over the maximum size, are released for good.
+ */
+class MediaPlayerPool {
+    static final int DEFAULT_MAX_SIZE = 4;
+    static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000;
+
+    private final Handler handler;
+    private final ArrayDeque<Entry> idle = new ArrayDeque<>();
+    private final Runnable evictCallback = new Runnable() {
+        @Override
+        public void run() {
+            evictIdle();
+        }
+    };
+
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    MediaPlayerPool(Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Returns a player in the Idle state, reusing the most recently recycled one if there is any.
+     */
+    MediaPlayer acquire() {
+        synchronized (idle) {
+            final Entry entry = idle.pollFirst();
+            if (entry != null) {
+                return entry.player;
+            }
+        }
+        return new MediaPlayer();
+    }
+
+    /**
+     * Resets the given player and keeps it for later reuse, or releases it if the pool is full.
+     */
+    void recycle(MediaPlayer player) {
+        player.reset();
+        player.setOnPreparedListener(null);
+        player.setOnCompletionListener(null);
+        player.setOnSeekCompleteListener(null);
+        player.setOnErrorListener(null);
+        player.setOnInfoListener(null);
+        player.setOnBufferingUpdateListener(null);
+
+        synchronized (idle) {
+            if (idle.size() < maxSize) {
+                idle.addFirst(new Entry(player, SystemClock.uptimeMillis()));
+                scheduleEviction();
+                return;
+            }
+        }
+        player.release();
+    }
+
+    /**
+     * Creates idle players until the pool holds {@code count} of them (capped by the maximum size).
+     *
+     * @return the number of idle players after pre-warming
+     */
+    int prewarm(int count) {
+        synchronized (idle) {
+            final int target = Math.min(count, maxSize);
+            while (idle.size() < target) {
+                idle.addFirst(new Entry(new MediaPlayer(), SystemClock.uptimeMillis()));
+            }
+            scheduleEviction();
+            return idle.size();
+        }
+    }
+
+    void configure(int maxSize, long idleTimeout) {
+        synchronized (idle) {
+            this.maxSize = Math.max(0, maxSize);
+            this.idleTimeout = idleTimeout;
+            while (idle.size() > this.maxSize) {
+                idle.pollLast().player.release();
+            }
+        }
+        handler.removeCallbacks(evictCallback);
+        evictIdle();
+    }
+
+    /**
+     * Releases every idle player, keeping the configuration.
+     */
+    void clear() {
+        synchronized (idle) {
+            while (!idle.isEmpty()) {
+                idle.pollLast().player.release();
+            }
+            scheduleEviction();
+        }
+    }
+
+    int size() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    private void evictIdle() {
+        synchronized (idle) {
+            if (idleTimeout <= 0) {
+                // a non-positive timeout keeps idle players until the pool is reconfigured
+                return;
+            }
+            final long now = SystemClock.uptimeMillis();
+            final Iterator<Entry> it = idle.descendingIterator();
+            while (it.hasNext()) {
+                final Entry entry = it.next();
+                if (now - entry.returnedAt < idleTimeout) {
+                    // entries are ordered by return time, the remaining ones are younger
+                    break;
+                }
+                it.remove();
+                entry.player.release();
+            }
+            scheduleEviction();
+        }
+    }
+
+    // must be called holding the idle lock
+    private void scheduleEviction() {
+        handler.removeCallbacks(evictCallback);
+        if (!idle.isEmpty() && idleTimeout > 0) {
+            final long oldest = idle.peekLast().returnedAt;
+            handler.postAtTime(evictCallback, oldest + idleTimeout);
+        }
+    }
+
+    private static final class Entry {
+        final MediaPlayer player;
+        final long returnedAt;
+
+        Entry(MediaPlayer player, long returnedAt) {
+            this.player = player;
+            this.returnedAt = returnedAt;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package xyz.luan.audioplayers;
+
+import android.os.Trace;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide timings and counters of the players, read from Dart with {@code getMetrics}.
+ *
+ * Timings are measured with {@link System#nanoTime()} and recorded in {@link Histogram histograms} of fixed buckets,
+ * so recording never allocates. When tracing is enabled, the synchronous operations are also emitted as
+ * {@link Trace} sections, to be seen in systrace.
+ */
+final class Metrics {
+    // from the command reaching the plugin on the main thread to its start on the audio thread
+    static final Histogram DISPATCH = new Histogram();
+    static final Histogram SET_DATA_SOURCE = new Histogram();
+    static final Histogram PREPARE = new Histogram();
+    // from play() to the engine being started, including the prepare if needed
+    static final Histogram START = new Histogram();
+    static final Histogram SEEK = new Histogram();
+
+    // players as seen from Dart, created by their first command and released when disposed (or stolen); their engines
+    // are released and prepared again many times in between, which is not counted
+    static final AtomicLong PLAYERS_CREATED = new AtomicLong();
+    static final AtomicLong PLAYERS_RELEASED = new AtomicLong();
+    static final AtomicLong ERRORS = new AtomicLong();
+    static final AtomicLong UNDERRUNS = new AtomicLong();
+
+    private static volatile boolean sTracing = false;
+
+    private Metrics() {
+    }
+
+    static void setTracing(boolean tracing) {
+        sTracing = tracing;
+    }
+
+    /**
+     * Begins a trace section if tracing is enabled; must be ended with {@link #endSection()} on the same thread.
+     */
+    static void beginSection(String name) {
+        if (sTracing) {
+            Trace.beginSection(name);
+        }
+    }
+
+    static void endSection() {
+        if (sTracing) {
+            Trace.endSection();
+        }
+    }
+
+    static Map<String, Object> snapshot(boolean reset) {
+        final Map<String, Object> histograms = new HashMap<>();
+        histograms.put("dispatch", DISPATCH.snapshot(reset));
+        histograms.put("setDataSource", SET_DATA_SOURCE.snapshot(reset));
+        histograms.put("prepare", PREPARE.snapshot(reset));
+        histograms.put("start", START.snapshot(reset));
+        histograms.put("seek", SEEK.snapshot(reset));
+
+        final Map<String, Object> counters = new HashMap<>();
+        counters.put("playersCreated", reset ? PLAYERS_CREATED.getAndSet(0) : PLAYERS_CREATED.get());
+        counters.put("playersReleased", reset ? PLAYERS_RELEASED.getAndSet(0) : PLAYERS_RELEASED.get());
+        counters.put("errors", reset ? ERRORS.getAndSet(0) : ERRORS.get());
+        counters.put("underruns", reset ? UNDERRUNS.getAndSet(0) : UNDERRUNS.get());
+
+        final Map<String, Object> metrics = new HashMap<>();
+        metrics.put("histograms", histograms);
+        metrics.put("counters", counters);
+        return metrics;
+    }
+
+    /**
+     * Durations in buckets growing roughly by 2.5x, from 100 microseconds to 5 seconds and more.
+     */
+    static final class Histogram {
+        // upper bounds in microseconds; the last bucket has none
+        private static final long[] BOUNDS = {
+                100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000, 1000000, 2500000, 5000000
+        };
+
+        private final long[] counts = new long[BOUNDS.length + 1];
+        private long count = 0;
+        private long sum = 0;
+        private long min = Long.MAX_VALUE;
+        private long max = 0;
+
+        /**
+         * Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} value; ignored if 0.
+         */
+        void recordSince(long startNanos) {
+            if (startNanos != 0) {
+                record((System.nanoTime() - startNanos) / 1000);
+            }
+        }
+
+        synchronized void record(long micros) {
+            int bucket = 0;
+            while (bucket < BOUNDS.length && micros > BOUNDS[bucket]) {
+                bucket++;
+            }
+            counts[bucket]++;
+            count++;
+            sum += micros;
+            min = Math.min(min, micros);
+            max = Math.max(max, micros);
+        }
+
+        /**
+         * @return the count, and the mean, min, max and estimated percentiles in milliseconds
+         */
+        synchronized Map<String, Object> snapshot(boolean reset) {
+            final Map<String, Object> snapshot = new HashMap<>();
+            snapshot.put("count", count);
+            if (count > 0) {
+                snapshot.put("mean", sum / (double) count / 1000);
+                snapshot.put("min", min / 1000.0);
+                snapshot.put("max", max / 1000.0);
+                snapshot.put("p50", percentile(0.5) / 1000.0);
+                snapshot.put("p90", percentile(0.9) / 1000.0);
+                snapshot.put("p99", percentile(0.99) / 1000.0);
+            }
+            if (reset) {
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] = 0;
+                }
+                count = 0;
+                sum = 0;
+                min = Long.MAX_VALUE;
+                max = 0;
+            }
+            return snapshot;
+        }
+
+        // the upper bound of the bucket holding the percentile, capped by the max
+        private long percentile(double fraction) {
+            final long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int i = 0; i < BOUNDS.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(BOUNDS[i], max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package xyz.luan.audioplayers;
+
+import android.annotation.TargetApi;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Mixes the sounds of many players into a single streaming {@link AudioTrack}, so they do not use a system player
+ * (and its decoder and track) each.
+ *
+ * Every playing sound is a {@link Voice}: a decoded buffer read at its own gain and rate, optionally looping. At most
+ * {@link #setMaxVoices max voices} play at once; starting one more steals the oldest voice, preferring non-looping
+ * ones.
+ *
+ * Mixing runs on its own thread, in blocks of {@link #BLOCK_FRAMES} frames. Voices are changed from the audio threads
+ * holding the mixer lock; finished and stolen voices are reported to their owner on its handler. While no voice plays,
+ * the track is paused and the thread waits. If the track fails, the voices playing are reported finished, and the next
+ * one to play starts a new thread and track.
+ */
+final class Mixer implements Runnable {
+    private static final String TAG = Mixer.class.getSimpleName();
+    static final int DEFAULT_MAX_VOICES = 32;
+
+    static final int SAMPLE_RATE = 44100;
+    // 10 ms
+    static final int BLOCK_FRAMES = SAMPLE_RATE / 100;
+
+    private static Mixer sInstance;
+
+    private final List<Voice> active = new ArrayList<>(DEFAULT_MAX_VOICES);
+    private final List<Voice> finished = new ArrayList<>(4);
+    private final float[] mix = new float[BLOCK_FRAMES * 2];
+    private final short[] block = new short[BLOCK_FRAMES * 2];
+    private int maxVoices = DEFAULT_MAX_VOICES;
+    private long sequence = 0;
+    private int blocksSinceUnderrunCheck = 0;
+    private int underruns = 0;
+
+    private final ThreadFactory threads;
+    // both null while the mixing thread is not running
+    private Thread thread;
+    private AudioTrack track;
+
+    Mixer(ThreadFactory threads) {
+        this.threads = threads;
+    }
+
+    static synchronized Mixer get() {
+        if (sInstance == null) {
+            sInstance = new Mixer(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "audioplayers-mixer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sInstance;
+    }
+
+    synchronized void setMaxVoices(int maxVoices) {
+        this.maxVoices = Math.max(1, maxVoices);
+        while (active.size() > this.maxVoices) {
+            steal();
+        }
+        notifyFinished();
+    }
+
+    /**
+     * Starts (or resumes) the voice, stealing another one if needed.
+     */
+    synchronized void play(Voice voice) {
+        if (!active.contains(voice)) {
+            while (active.size() >= maxVoices) {
+                steal();
+            }
+            active.add(voice);
+        }
+        voice.startedAt = ++sequence;
+        notifyFinished();
+        if (thread == null) {
+            thread = threads.newThread(this);
+            thread.start();
+        }
+        notifyAll();
+    }
+
+    synchronized void pause(Voice voice) {
+        active.remove(voice);
+    }
+
+    synchronized void stop(Voice voice) {
+        active.remove(voice);
+        voice.position = 0;
+    }
+
+    synchronized void seek(Voice voice, int frame) {
+        voice.position = Math.min(frame, voice.frameCount);
+    }
+
+    synchronized void setGain(Voice voice, float gain) {
+        voice.gain = gain;
+    }
+
+    synchronized void setRate(Voice voice, float rate) {
+        voice.step = (double) voice.sampleRate / SAMPLE_RATE * rate;
+    }
+
+    synchronized void setLooping(Voice voice, boolean looping) {
+        voice.looping = looping;
+    }
+
+    synchronized int getPosition(Voice voice) {
+        return (int) voice.position;
+    }
+
+    synchronized boolean isPlaying(Voice voice) {
+        return active.contains(voice);
+    }
+
+    @Override
+    public void run() {
+        try {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+            track = createTrack();
+            while (true) {
+                synchronized (this) {
+                    if (active.isEmpty()) {
+                        track.pause();
+                        while (active.isEmpty()) {
+                            wait();
+                        }
+                        track.play();
+                    }
+                    nextBlock();
+                }
+                // blocks until the track has room, which paces the loop
+                track.write(block, 0, block.length);
+                if (++blocksSinceUnderrunCheck == 100) {
+                    blocksSinceUnderrunCheck = 0;
+                    countUnderruns();
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (RuntimeException e) {
+            // e.g. the track could not be created, or was invalidated by the system
+            Log.e(TAG, "Mixing failed", e);
+        } finally {
+            stopped();
+        }
+    }
+
+    /**
+     * Forgets the thread and its track, so the next voice to play starts them again.
+     */
+    private synchronized void stopped() {
+        if (track != null) {
+            track.release();
+            track = null;
+        }
+        thread = null;
+        for (int v = active.size() - 1; v >= 0; v--) {
+            final Voice voice = active.remove(v);
+            voice.position = 0;
+            finished.add(voice);
+        }
+        notifyFinished();
+    }
+
+    /**
+     * Mixes the next block of the voices playing, reporting the ones that finished.
+     *
+     * @return the block, overwritten by the next call
+     */
+    synchronized short[] nextBlock() {
+        mixBlock();
+        notifyFinished();
+        return block;
+    }
+
+    // about once a second, only from the mixing thread
+    @TargetApi(24)
+    private void countUnderruns() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            final int count = track.getUnderrunCount();
+            Metrics.UNDERRUNS.addAndGet(count - underruns);
+            underruns = count;
+        }
+    }
+
+    // must be called holding the lock
+    private void mixBlock() {
+        for (int i = 0; i < mix.length; i++) {
+            mix[i] = 0;
+        }
+        for (int v = active.size() - 1; v >= 0; v--) {
+            final Voice voice = active.get(v);
+            if (!mixVoice(voice)) {
+                active.remove(v);
+                voice.position = 0;
+                finished.add(voice);
+            }
+        }
+        for (int i = 0; i < mix.length; i++) {
+            final float sample = mix[i];
+            block[i] = (short) (sample > Short.MAX_VALUE ? Short.MAX_VALUE
+                    : (sample < Short.MIN_VALUE ? Short.MIN_VALUE : sample));
+        }
+    }
+
+    /**
+     * Adds a block of the voice to the mix, linearly interpolating between source frames.
+     *
+     * @return whether the voice is still playing
+     */
+    private boolean mixVoice(Voice voice) {
+        final ShortBuffer samples = voice.samples;
+        final int channels = voice.channelCount;
+        final int frameCount = voice.frameCount;
+        final float gain = voice.gain;
+        double position = voice.position;
+        for (int i = 0; i < BLOCK_FRAMES; i++) {
+            if (position >= frameCount) {
+                if (!voice.looping || frameCount == 0) {
+                    return false;
+                }
+                // a short voice played fast may be over by more than a whole loop
+                position %= frameCount;
+            }
+            final int frame = (int) position;
+            final float fraction = (float) (position - frame);
+            final int next = frame + 1 < frameCount ? frame + 1 : (voice.looping ? 0 : frame);
+            final int index = frame * channels;
+            final int nextIndex = next * channels;
+            final float left = samples.get(index) + (samples.get(nextIndex) - samples.get(index)) * fraction;
+            final float right = channels == 1 ? left
+                    : samples.get(index + 1) + (samples.get(nextIndex + 1) - samples.get(index + 1)) * fraction;
+            mix[2 * i] += left * gain;
+            mix[2 * i + 1] += right * gain;
+            position += voice.step;
+        }
+        voice.position = position;
+        return true;
+    }
+
+    // must be called holding the lock
+    private void steal() {
+        Voice oldest = null;
+        for (Voice voice : active) {
+            if (oldest == null || (oldest.looping && !voice.looping)
+                    || (oldest.looping == voice.looping && voice.startedAt < oldest.startedAt)) {
+                oldest = voice;
+            }
+        }
+        active.remove(oldest);
+        oldest.position = 0;
+        finished.add(oldest);
+    }
+
+    // must be called holding the lock
+    private void notifyFinished() {
+        for (int i = 0; i < finished.size(); i++) {
+            finished.get(i).listener.onVoiceFinished(finished.get(i));
+        }
+        finished.clear();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static AudioTrack createTrack() {
+        final int size = Math.max(BLOCK_FRAMES * 4 * 2, AudioTrack.getMinBufferSize(SAMPLE_RATE,
+                AudioFormat.CHANNEL_OUT_STEREO, AudioFormat.ENCODING_PCM_16BIT));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return new AudioTrack(
+                    new AudioAttributes.Builder()
+                            .setUsage(AudioAttributes.USAGE_GAME)
+                            .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                            .build(),
+                    new AudioFormat.Builder()
+                            .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                            .setSampleRate(SAMPLE_RATE)
+                            .setChannelMask(AudioFormat.CHANNEL_OUT_STEREO)
+                            .build(),
+                    size, AudioTrack.MODE_STREAM, AudioManager.AUDIO_SESSION_ID_GENERATE);
+        }
+        // This constructor is deprecated but must be used on older devices
+        return new AudioTrack(AudioManager.STREAM_MUSIC, SAMPLE_RATE, AudioFormat.CHANNEL_OUT_STEREO,
+                AudioFormat.ENCODING_PCM_16BIT, size, AudioTrack.MODE_STREAM);
+    }
+
+    interface Listener {
+        /**
+         * Called when the voice reached its end or was stolen, holding the mixer lock: implementations must only hand
+         * the notification over to another thread.
+         */
+        void onVoiceFinished(Voice voice);
+    }
+
+    /**
+     * A sound played by the mixer. Its state is only accessed through the mixer.
+     */
+    static final class Voice {
+        private final Listener listener;
+        private final ShortBuffer samples;
+        private final int channelCount;
+        private final int sampleRate;
+        final int frameCount;
+
+        private float gain = 1.0f;
+        private double step;
+        private boolean looping = false;
+        private double position = 0;
+        private long startedAt = 0;
+
+        Voice(Listener listener, PcmBuffer buffer) {
+            this.listener = listener;
+            this.samples = buffer.data().asShortBuffer();
+            this.channelCount = buffer.channelCount;
+            this.sampleRate = buffer.sampleRate;
+            this.frameCount = buffer.frameCount();
+            this.step = (double) sampleRate / SAMPLE_RATE;
+        }
+
+        int toFrames(int millis) {
+            return (int) ((long) millis * sampleRate / 1000);
+        }
+
+        int toMillis(int frames) {
+            return (int) (frames * 1000L / sampleRate);
+        }
+    }
+}
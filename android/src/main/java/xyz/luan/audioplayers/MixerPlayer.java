@@ -0,0 +1,149 @@
+package xyz.luan.audioplayers;
+
+import android.os.Handler;
+
+/**
+ * Engine playing a decoded sound (see {@link PcmLoader}) as a voice of the shared {@link Mixer}.
+ *
+ * Calling {@link #start()} while already playing restarts the sound from the beginning. A voice stolen by the mixer
+ * to make room for another one is reported as completed.
+ */
+class MixerPlayer implements SamplePlayer, PcmLoader.Callback, Mixer.Listener {
+    private final Listener listener;
+    private final Handler handler;
+    private final Runnable completionCallback = new Runnable() {
+        @Override
+        public void run() {
+            if (voice != null && !Mixer.get().isPlaying(voice) && playing) {
+                playing = false;
+                listener.onSampleCompleted(MixerPlayer.this);
+            }
+        }
+    };
+
+    private String url;
+    private Mixer.Voice voice;
+    private float volume = 1.0f;
+    private float rate = 1.0f;
+    private boolean looping = false;
+    private boolean playing = false;
+
+    MixerPlayer(Listener listener, Handler handler) {
+        this.listener = listener;
+        this.handler = handler;
+    }
+
+    @Override
+    public void setSource(String url) {
+        releaseVoice();
+        this.url = url;
+        PcmLoader.load(url, handler, this);
+    }
+
+    @Override
+    public void onLoaded(String url, PcmBuffer buffer) {
+        if (!url.equals(this.url) || this.voice != null) {
+            // the source changed (or the player was released) in the meantime
+            return;
+        }
+        if (buffer == null) {
+            listener.onSampleLoaded(this, false);
+            return;
+        }
+        final Mixer mixer = Mixer.get();
+        voice = new Mixer.Voice(this, buffer);
+        mixer.setGain(voice, volume);
+        mixer.setRate(voice, rate);
+        mixer.setLooping(voice, looping);
+        listener.onSampleLoaded(this, true);
+    }
+
+    @Override
+    public void start() {
+        if (voice == null) {
+            return;
+        }
+        if (playing) {
+            Mixer.get().seek(voice, 0);
+        }
+        playing = true;
+        Mixer.get().play(voice);
+    }
+
+    @Override
+    public void pause() {
+        if (voice != null) {
+            playing = false;
+            Mixer.get().pause(voice);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (voice != null) {
+            playing = false;
+            Mixer.get().stop(voice);
+        }
+    }
+
+    @Override
+    public void seekTo(int position) {
+        if (voice != null) {
+            Mixer.get().seek(voice, voice.toFrames(position));
+        }
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        this.volume = volume;
+        if (voice != null) {
+            Mixer.get().setGain(voice, volume);
+        }
+    }
+
+    @Override
+    public void setRate(float rate) {
+        this.rate = rate;
+        if (voice != null) {
+            Mixer.get().setRate(voice, rate);
+        }
+    }
+
+    @Override
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+        if (voice != null) {
+            Mixer.get().setLooping(voice, looping);
+        }
+    }
+
+    @Override
+    public int getDuration() {
+        return voice == null ? 0 : voice.toMillis(voice.frameCount);
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return voice == null ? 0 : voice.toMillis(Mixer.get().getPosition(voice));
+    }
+
+    @Override
+    public void release() {
+        releaseVoice();
+        url = null;
+    }
+
+    @Override
+    public void onVoiceFinished(Mixer.Voice voice) {
+        handler.post(completionCallback);
+    }
+
+    private void releaseVoice() {
+        handler.removeCallbacks(completionCallback);
+        if (voice != null) {
+            Mixer.get().stop(voice);
+            voice = null;
+        }
+        playing = false;
+    }
+}
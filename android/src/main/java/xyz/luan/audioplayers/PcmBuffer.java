@@ -0,0 +1,50 @@
+package xyz.luan.audioplayers;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A decoded sound: interleaved 16 bit PCM in native byte order, kept in a direct buffer outside of the Java heap.
+ *
+ * The data is never modified once decoded, so it can be shared; read it through {@link #data()}, which does not move
+ * the shared buffer position.
+ */
+final class PcmBuffer {
+    private final ByteBuffer data;
+    final int sampleRate;
+    final int channelCount;
+
+    PcmBuffer(ByteBuffer data, int sampleRate, int channelCount) {
+        this.data = data;
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+    }
+
+    /**
+     * @return a view of the samples, positioned at 0
+     */
+    ByteBuffer data() {
+        return data.duplicate().order(data.order());
+    }
+
+    /**
+     * The size of the samples, which may not fill the whole buffer.
+     */
+    int sizeInBytes() {
+        return frameCount() * channelCount * 2;
+    }
+
+    /**
+     * The memory held, counted against the cache budget: the whole buffer, not only the samples.
+     */
+    int retainedBytes() {
+        return data.capacity();
+    }
+
+    int frameCount() {
+        return data.limit() / (2 * channelCount);
+    }
+
+    int getDuration() {
+        return (int) (frameCount() * 1000L / sampleRate);
+    }
+}
@@ -0,0 +1,90 @@
+package xyz.luan.audioplayers;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decoded sounds by url, evicted least recently used first once their total size exceeds a byte budget.
+ *
+ * Evicting a buffer only drops the cache reference: engines still playing it keep theirs. Counts hits, misses and
+ * evictions so the budget can be tuned.
+ */
+final class PcmCache {
+    static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+    // ordered by access, so the first one is the least recently used
+    private final LinkedHashMap<String, PcmBuffer> buffers = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long sizeInBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    PcmCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized PcmBuffer get(String url) {
+        final PcmBuffer buffer = buffers.get(url);
+        if (buffer == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return buffer;
+    }
+
+    /**
+     * Caches the buffer, unless it is bigger than the whole budget.
+     */
+    synchronized void put(String url, PcmBuffer buffer) {
+        final PcmBuffer previous = buffers.remove(url);
+        if (previous != null) {
+            sizeInBytes -= previous.retainedBytes();
+        }
+        if (buffer.retainedBytes() > maxBytes) {
+            return;
+        }
+        buffers.put(url, buffer);
+        sizeInBytes += buffer.retainedBytes();
+        trim();
+    }
+
+    synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    synchronized void clear() {
+        evictions += buffers.size();
+        buffers.clear();
+        sizeInBytes = 0;
+    }
+
+    synchronized long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    synchronized Map<String, Object> stats() {
+        final Map<String, Object> stats = new HashMap<>();
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("entries", buffers.size());
+        stats.put("bytes", sizeInBytes);
+        stats.put("maxBytes", maxBytes);
+        return stats;
+    }
+
+    // must be called holding the lock
+    private void trim() {
+        final Iterator<PcmBuffer> it = buffers.values().iterator();
+        while (sizeInBytes > maxBytes && it.hasNext()) {
+            sizeInBytes -= it.next().retainedBytes();
+            it.remove();
+            evictions++;
+        }
+    }
+}
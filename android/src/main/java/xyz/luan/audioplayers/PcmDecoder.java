@@ -0,0 +1,162 @@
+package xyz.luan.audioplayers;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Build;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes a whole source into a {@link PcmBuffer} with {@link MediaExtractor} and {@link MediaCodec}.
+ *
+ * Blocks until done, so it must run on a background thread.
+ */
+final class PcmDecoder {
+    private static final long TIMEOUT_US = 10000;
+    private static final int MIN_CAPACITY = 64 * 1024;
+
+    private PcmDecoder() {
+    }
+
+    static PcmBuffer decode(String url) throws IOException {
+        final MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            setDataSource(extractor, url);
+            final MediaFormat format = selectAudioTrack(extractor);
+            if (format == null) {
+                throw new IOException("No audio track in " + url);
+            }
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            final long durationUs = format.containsKey(MediaFormat.KEY_DURATION)
+                    ? format.getLong(MediaFormat.KEY_DURATION) : 0;
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            // 16 bit samples; a little slack since the reported duration is not exact
+            ByteBuffer out = ByteBuffer.allocateDirect((int) Math.max(MIN_CAPACITY,
+                    durationUs * sampleRate / 1000000 * channelCount * 2 * 11 / 10)).order(ByteOrder.nativeOrder());
+            final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            while (true) {
+                if (!inputDone) {
+                    final int index = codec.dequeueInputBuffer(TIMEOUT_US);
+                    if (index >= 0) {
+                        final int size = extractor.readSampleData(inputBuffer(codec, index), 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+                final int index = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    final MediaFormat outputFormat = codec.getOutputFormat();
+                    sampleRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    channelCount = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                } else if (index >= 0) {
+                    if (info.size > 0) {
+                        final ByteBuffer chunk = outputBuffer(codec, index);
+                        chunk.position(info.offset);
+                        chunk.limit(info.offset + info.size);
+                        if (out.remaining() < info.size) {
+                            out = grow(out, info.size);
+                        }
+                        out.put(chunk);
+                    }
+                    codec.releaseOutputBuffer(index, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        break;
+                    }
+                }
+            }
+            out.flip();
+            return new PcmBuffer(trim(out), sampleRate, channelCount);
+        } catch (RuntimeException e) {
+            // MediaCodec reports most failures with IllegalStateException
+            throw new IOException("Unable to decode " + url, e);
+        } finally {
+            if (codec != null) {
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    static void setDataSource(MediaExtractor extractor, String url) throws IOException {
+        if (AssetSource.isAsset(url)) {
+            AssetSource.setDataSource(extractor, url);
+        } else if (BytesSource.isBytes(url)) {
+            BytesSource.setDataSource(extractor, url);
+        } else {
+            extractor.setDataSource(url.startsWith("file://")
+                    ? url.substring("file://".length()) : CacheProxy.dataSourceOf(url));
+        }
+    }
+
+    /**
+     * Selects the first audio track of the extractor.
+     *
+     * @return its format, or null if there is none
+     */
+    static MediaFormat selectAudioTrack(MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            final MediaFormat format = extractor.getTrackFormat(i);
+            final String mime = format.getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                extractor.selectTrack(i);
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copies the samples to a buffer of their exact size if the decoded one grew, wasting more than an eighth; the
+     * slack of a buffer sized from the duration is kept.
+     */
+    private static ByteBuffer trim(ByteBuffer buffer) {
+        if (buffer.capacity() - buffer.limit() <= buffer.limit() / 8) {
+            return buffer;
+        }
+        final ByteBuffer trimmed = ByteBuffer.allocateDirect(buffer.limit()).order(buffer.order());
+        trimmed.put(buffer);
+        trimmed.flip();
+        return trimmed;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+        final ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + needed))
+                .order(buffer.order());
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    @SuppressWarnings("deprecation")
+    static ByteBuffer inputBuffer(MediaCodec codec, int index) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return codec.getInputBuffer(index);
+        }
+        final ByteBuffer buffer = codec.getInputBuffers()[index];
+        buffer.clear();
+        return buffer;
+    }
+
+    @SuppressWarnings("deprecation")
+    static ByteBuffer outputBuffer(MediaCodec codec, int index) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return codec.getOutputBuffer(index);
+        }
+        return codec.getOutputBuffers()[index];
+    }
+}
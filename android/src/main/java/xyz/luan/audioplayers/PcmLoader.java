@@ -0,0 +1,131 @@
+package xyz.luan.audioplayers;
+
+import android.os.Handler;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads decoded sounds for the engines playing from memory, out of the shared {@link PcmCache} or by decoding them
+ * on a background thread. Requests for a source already being decoded wait for that decoding.
+ */
+final class PcmLoader {
+    private static final String TAG = PcmLoader.class.getSimpleName();
+    private static final int DECODER_THREADS = 2;
+
+    static final PcmCache sCache = new PcmCache(PcmCache.DEFAULT_MAX_BYTES);
+
+    private static ExecutorService sDecoders;
+    // requests waiting for each source being decoded
+    private static final Map<String, List<Request>> sPending = new HashMap<>();
+
+    interface Callback {
+        /**
+         * @param buffer the decoded sound, or {@code null} if it could not be decoded
+         */
+        void onLoaded(String url, PcmBuffer buffer);
+    }
+
+    private PcmLoader() {
+    }
+
+    /**
+     * Loads the sound, calling back on the given handler.
+     */
+    static void load(final String url, final Handler handler, final Callback callback) {
+        final PcmBuffer cached = sCache.get(url);
+        if (cached != null) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onLoaded(url, cached);
+                }
+            });
+            return;
+        }
+        synchronized (sPending) {
+            List<Request> waiting = sPending.get(url);
+            if (waiting == null) {
+                waiting = new ArrayList<>(1);
+                sPending.put(url, waiting);
+                decoders().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        decode(url);
+                    }
+                });
+            }
+            for (Request request : waiting) {
+                if (request.callback == callback) {
+                    return;
+                }
+            }
+            waiting.add(new Request(handler, callback));
+        }
+    }
+
+    private static void decode(String url) {
+        PcmBuffer buffer = null;
+        try {
+            final PcmBuffer decoded = PcmDecoder.decode(url);
+            sCache.put(url, decoded);
+            buffer = decoded;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to decode " + url, e);
+        } finally {
+            // also on errors, so the requests waiting for this source (and their prepare slots) are not stuck
+            deliver(url, buffer);
+        }
+    }
+
+    private static void deliver(final String url, final PcmBuffer buffer) {
+        final List<Request> waiting;
+        synchronized (sPending) {
+            waiting = sPending.remove(url);
+        }
+        if (waiting == null) {
+            return;
+        }
+        for (final Request request : waiting) {
+            request.handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    request.callback.onLoaded(url, buffer);
+                }
+            });
+        }
+    }
+
+    private static synchronized ExecutorService decoders() {
+        if (sDecoders == null) {
+            sDecoders = Executors.newFixedThreadPool(DECODER_THREADS, new ThreadFactory() {
+                private int count = 0;
+
+                @Override
+                public synchronized Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "audioplayers-decoder-" + count++);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sDecoders;
+    }
+
+    private static final class Request {
+        final Handler handler;
+        final Callback callback;
+
+        Request(Handler handler, Callback callback) {
+            this.handler = handler;
+            this.callback = callback;
+        }
+    }
+}
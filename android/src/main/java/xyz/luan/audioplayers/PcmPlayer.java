@@ -0,0 +1,270 @@
+package xyz.luan.audioplayers;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.os.Handler;
+import android.util.Log;
+
+/**
+ * Engine for short sounds replayed many times: each source is decoded once into the shared {@link PcmCache} (see
+ * {@link PcmLoader}) and played from memory through a static {@link AudioTrack}.
+ *
+ * Speed is applied by resampling, so it also changes the pitch. Calling {@link #start()} while already playing
+ * restarts the sound from the beginning.
+ */
+class PcmPlayer implements SamplePlayer, PcmLoader.Callback, AudioTrack.OnPlaybackPositionUpdateListener {
+    private static final String TAG = PcmPlayer.class.getSimpleName();
+
+    private final Listener listener;
+    private final Handler handler;
+
+    private String url;
+    private PcmBuffer buffer;
+    private AudioTrack track;
+    private float volume = 1.0f;
+    private float rate = 1.0f;
+    private boolean looping = false;
+    private boolean playing = false;
+
+    PcmPlayer(Listener listener, Handler handler) {
+        this.listener = listener;
+        this.handler = handler;
+    }
+
+    @Override
+    public void setSource(String url) {
+        releaseTrack();
+        this.url = url;
+        this.buffer = null;
+        PcmLoader.load(url, handler, this);
+    }
+
+    @Override
+    public void start() {
+        if (track == null) {
+            return;
+        }
+        if (playing) {
+            track.pause();
+            rewind(0);
+        }
+        track.play();
+        playing = true;
+    }
+
+    @Override
+    public void pause() {
+        if (track != null && playing) {
+            track.pause();
+            playing = false;
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (track != null) {
+            track.pause();
+            rewind(0);
+            playing = false;
+        }
+    }
+
+    @Override
+    public void seekTo(int position) {
+        if (track == null) {
+            return;
+        }
+        final int frame = (int) Math.min((long) position * buffer.sampleRate / 1000, buffer.frameCount());
+        if (playing) {
+            track.pause();
+            rewind(frame);
+            track.play();
+        } else {
+            rewind(frame);
+        }
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        this.volume = volume;
+        if (track != null) {
+            applyVolume();
+        }
+    }
+
+    @Override
+    public void setRate(float rate) {
+        this.rate = rate;
+        if (track != null) {
+            applyRate();
+        }
+    }
+
+    @Override
+    public void setLooping(boolean looping) {
+        if (this.looping == looping) {
+            return;
+        }
+        this.looping = looping;
+        if (track != null) {
+            // loop points can only be changed while not playing
+            final int frame = currentFrame();
+            track.pause();
+            rewind(frame);
+            if (playing) {
+                track.play();
+            }
+        }
+    }
+
+    @Override
+    public int getDuration() {
+        return buffer == null ? 0 : buffer.getDuration();
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        if (track == null) {
+            return 0;
+        }
+        return (int) (currentFrame() * 1000L / buffer.sampleRate);
+    }
+
+    @Override
+    public void release() {
+        releaseTrack();
+        url = null;
+        buffer = null;
+    }
+
+    @Override
+    public void onMarkerReached(AudioTrack track) {
+        if (track != this.track || looping || !playing) {
+            return;
+        }
+        track.pause();
+        rewind(0);
+        playing = false;
+        listener.onSampleCompleted(this);
+    }
+
+    @Override
+    public void onPeriodicNotification(AudioTrack track) {
+    }
+
+    @Override
+    public void onLoaded(String url, PcmBuffer buffer) {
+        if (!url.equals(this.url) || this.buffer != null) {
+            // the source changed (or the player was released) in the meantime
+            return;
+        }
+        if (buffer == null) {
+            listener.onSampleLoaded(this, false);
+            return;
+        }
+        this.buffer = buffer;
+        this.track = createTrack(buffer);
+        if (this.track != null) {
+            applyVolume();
+            applyRate();
+            rewind(0);
+        }
+        listener.onSampleLoaded(this, this.track != null);
+    }
+
+    private int currentFrame() {
+        final int frameCount = buffer.frameCount();
+        final int head = track.getPlaybackHeadPosition();
+        return looping && frameCount > 0 ? head % frameCount : Math.min(head, frameCount);
+    }
+
+    /**
+     * Moves the playback head, re-arming the loop points and the end marker. The track must not be playing.
+     */
+    private void rewind(int frame) {
+        final int frameCount = buffer.frameCount();
+        track.setLoopPoints(0, frameCount, looping ? -1 : 0);
+        track.setPlaybackHeadPosition(frame);
+        track.setNotificationMarkerPosition(frameCount);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void applyVolume() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            track.setVolume(volume);
+        } else {
+            track.setStereoVolume(volume, volume);
+        }
+    }
+
+    private void applyRate() {
+        // AudioTrack does not go further than twice the source rate
+        final float clamped = Math.max(0.1f, Math.min(rate, 2.0f));
+        track.setPlaybackRate((int) (buffer.sampleRate * clamped));
+    }
+
+    @SuppressWarnings("deprecation")
+    private AudioTrack createTrack(PcmBuffer buffer) {
+        final int channelMask = buffer.channelCount == 1
+                ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+        final int size = buffer.sizeInBytes();
+        final AudioTrack track;
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                track = new AudioTrack(
+                        new AudioAttributes.Builder()
+                                .setUsage(AudioAttributes.USAGE_GAME)
+                                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                                .build(),
+                        new AudioFormat.Builder()
+                                .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                                .setSampleRate(buffer.sampleRate)
+                                .setChannelMask(channelMask)
+                                .build(),
+                        size, AudioTrack.MODE_STATIC, AudioManager.AUDIO_SESSION_ID_GENERATE);
+            } else {
+                // This constructor is deprecated but must be used on older devices
+                track = new AudioTrack(AudioManager.STREAM_MUSIC, buffer.sampleRate, channelMask,
+                        AudioFormat.ENCODING_PCM_16BIT, size, AudioTrack.MODE_STATIC);
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Unable to create a track for " + url, e);
+            return null;
+        }
+
+        final int written;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            written = track.write(buffer.data(), size, AudioTrack.WRITE_BLOCKING);
+        } else {
+            written = track.write(copySamples(buffer), 0, size);
+        }
+        if (written != size || track.getState() != AudioTrack.STATE_INITIALIZED) {
+            // static tracks are limited in size, this engine is meant for short sounds
+            Log.w(TAG, "Unable to load " + url + " in a static track (" + size + " bytes)");
+            track.release();
+            return null;
+        }
+        track.setPlaybackPositionUpdateListener(this, handler);
+        return track;
+    }
+
+    /**
+     * Copies the samples of the buffer, without the unused room at its end; for tracks written from an array.
+     */
+    static byte[] copySamples(PcmBuffer buffer) {
+        final byte[] bytes = new byte[buffer.sizeInBytes()];
+        buffer.data().get(bytes);
+        return bytes;
+    }
+
+    private void releaseTrack() {
+        if (track != null) {
+            track.release();
+            track = null;
+        }
+        playing = false;
+    }
+}
@@ -0,0 +1,10 @@
+package xyz.luan.audioplayers;
+
+/**
+ * Thrown when creating a player would go over the player limit with the {@link AdmissionPolicy#REJECT} policy.
+ */
+public class PlayerLimitException extends IllegalStateException {
+    PlayerLimitException(int maxPlayers) {
+        super("Cannot create more than " + maxPlayers + " players");
+    }
+}
@@ -0,0 +1,5 @@
+package xyz.luan.audioplayers;
+
+public enum PlayerMode {
+    MEDIA_PLAYER, LOW_LATENCY, PCM_CACHE, MIXER, TIME_STRETCH
+}
@@ -0,0 +1,99 @@
+package xyz.luan.audioplayers;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * Releases the native resources of players left idle, and of every idle player (plus the shared caches) when the
+ * system runs low on memory.
+ *
+ * A player is idle when it is not playing and received no command for the idle timeout. Reclaiming it is transparent:
+ * it keeps its source, position, volume, speed and looping, and is prepared again on the next play or seek.
+ */
+final class PlayerReclaimer implements Runnable, ComponentCallbacks2 {
+    static final long DEFAULT_IDLE_TIMEOUT = 5 * 60 * 1000;
+    private static final long MIN_CHECK_INTERVAL = 1000;
+    private static final long MAX_CHECK_INTERVAL = 60 * 1000;
+
+    private final Handler handler;
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    PlayerReclaimer(Handler handler) {
+        this.handler = handler;
+        schedule();
+    }
+
+    /**
+     * Sets how long, in milliseconds, a player must be idle to be reclaimed; 0 only reclaims on memory pressure.
+     */
+    void configure(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+        handler.removeCallbacks(this);
+        schedule();
+    }
+
+    /**
+     * Reclaims the players idle for at least {@code idleFor} milliseconds, each one on its own audio thread.
+     */
+    void reclaimIdle(final long idleFor) {
+        final long now = SystemClock.uptimeMillis();
+        for (final WrappedMediaPlayer player : WrappedMediaPlayer.players()) {
+            if (player.isIdleFor(now, idleFor)) {
+                player.getHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        player.reclaim(idleFor);
+                    }
+                });
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        final long idleTimeout = this.idleTimeout;
+        if (idleTimeout > 0) {
+            reclaimIdle(idleTimeout);
+        }
+        schedule();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level == TRIM_MEMORY_UI_HIDDEN || level < TRIM_MEMORY_RUNNING_LOW) {
+            return;
+        }
+        trim(level >= TRIM_MEMORY_RUNNING_CRITICAL);
+    }
+
+    @Override
+    public void onLowMemory() {
+        trim(true);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration configuration) {
+    }
+
+    private void trim(final boolean critical) {
+        reclaimIdle(0);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                WrappedMediaPlayer.sPlayerPool.clear();
+                if (critical) {
+                    PcmLoader.sCache.clear();
+                }
+            }
+        });
+    }
+
+    private void schedule() {
+        final long idleTimeout = this.idleTimeout;
+        if (idleTimeout > 0) {
+            handler.postDelayed(this, Math.max(MIN_CHECK_INTERVAL, Math.min(idleTimeout / 2, MAX_CHECK_INTERVAL)));
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package xyz.luan.audioplayers;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The players by id, with an optional limit on how many exist at once and the {@link AdmissionPolicy} past it.
+ *
+ * Lookups and iteration never block: the map is concurrent, and the players are also kept in a copy-on-write array
+ * for iterating without allocating. Only creating and removing players takes the lock.
+ */
+final class PlayerRegistry<P extends PlayerRegistry.Player> {
+    interface Player {
+        String getPlayerId();
+
+        boolean isPlaying();
+
+        /**
+         * @return whether its resources were released while idle, see {@link PlayerReclaimer}
+         */
+        boolean isReclaimed();
+
+        long getLastUsedAt();
+    }
+
+    interface Factory<P> {
+        P create(String playerId);
+    }
+
+    interface Listener<P> {
+        /**
+         * Called, outside of the lock, for a player removed to make room for a new one.
+         */
+        void onEvicted(P player);
+    }
+
+    private final Object lock = new Object();
+    private final Map<String, P> players = new ConcurrentHashMap<>();
+    private final Map<String, P> readOnly = Collections.unmodifiableMap(players);
+    private final P[] empty;
+    private volatile P[] snapshot;
+    private final Listener<P> listener;
+    // 0 for no limit
+    private int maxPlayers = 0;
+    private AdmissionPolicy policy = AdmissionPolicy.REJECT;
+
+    /**
+     * @param empty an empty array, giving the type of {@link #snapshot()}
+     */
+    PlayerRegistry(P[] empty, Listener<P> listener) {
+        this.empty = empty;
+        this.snapshot = empty;
+        this.listener = listener;
+    }
+
+    P get(String playerId) {
+        return players.get(playerId);
+    }
+
+    /**
+     * Returns the player with the given id, creating it if needed. Past the player limit, creating one follows the
+     * admission policy.
+     *
+     * @return the player, or {@code null} if it must wait for a free slot ({@link AdmissionPolicy#QUEUE})
+     * @throws PlayerLimitException if it cannot be created ({@link AdmissionPolicy#REJECT})
+     */
+    P getOrCreate(String playerId, Factory<P> factory) {
+        P player = players.get(playerId);
+        if (player != null) {
+            return player;
+        }
+        P evicted = null;
+        synchronized (lock) {
+            player = players.get(playerId);
+            if (player != null) {
+                return player;
+            }
+            if (maxPlayers > 0 && players.size() >= maxPlayers) {
+                switch (policy) {
+                    case QUEUE:
+                        // an idle player whose resources were reclaimed gives up its slot
+                        evicted = reclaimedPlayer();
+                        if (evicted == null) {
+                            return null;
+                        }
+                        break;
+                    case STEAL_LRU:
+                        evicted = leastRecentlyUsed();
+                        break;
+                    default:
+                        throw new PlayerLimitException(maxPlayers);
+                }
+                players.remove(evicted.getPlayerId());
+            }
+            player = factory.create(playerId);
+            players.put(playerId, player);
+            snapshot = players.values().toArray(empty);
+        }
+        if (evicted != null) {
+            listener.onEvicted(evicted);
+        }
+        return player;
+    }
+
+    /**
+     * @return the player removed, or {@code null} if there was none with this id
+     */
+    P remove(String playerId) {
+        synchronized (lock) {
+            final P player = players.remove(playerId);
+            if (player != null) {
+                snapshot = players.values().toArray(empty);
+            }
+            return player;
+        }
+    }
+
+    /**
+     * Removes the player only if it is still the one registered under its id.
+     *
+     * @return whether it was removed
+     */
+    boolean remove(P player) {
+        synchronized (lock) {
+            if (players.remove(player.getPlayerId(), player)) {
+                snapshot = players.values().toArray(empty);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Sets how many players can exist at once (0 for no limit), and what happens to new players past that limit.
+     * Existing players are kept even if over the new limit.
+     */
+    void configureLimit(int maxPlayers, AdmissionPolicy policy) {
+        synchronized (lock) {
+            this.maxPlayers = Math.max(0, maxPlayers);
+            this.policy = policy;
+        }
+    }
+
+    /**
+     * @return whether creating a new player would not have to wait: there is room under the limit, a reclaimed player
+     * to take the slot of, or the policy does not queue
+     */
+    boolean canAdmit() {
+        synchronized (lock) {
+            return maxPlayers <= 0 || players.size() < maxPlayers
+                    || policy != AdmissionPolicy.QUEUE || reclaimedPlayer() != null;
+        }
+    }
+
+    int getMaxPlayers() {
+        synchronized (lock) {
+            return maxPlayers;
+        }
+    }
+
+    AdmissionPolicy getAdmissionPolicy() {
+        synchronized (lock) {
+            return policy;
+        }
+    }
+
+    /**
+     * @return the players, not to be modified; a new array whenever a player is created or removed
+     */
+    P[] snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return a read-only view of the players by id
+     */
+    Map<String, P> asMap() {
+        return readOnly;
+    }
+
+    // must be called holding the lock
+    private P reclaimedPlayer() {
+        P lru = null;
+        for (P player : snapshot) {
+            if (player.isReclaimed() && (lru == null || player.getLastUsedAt() < lru.getLastUsedAt())) {
+                lru = player;
+            }
+        }
+        return lru;
+    }
+
+    // must be called holding the lock, with at least one player
+    private P leastRecentlyUsed() {
+        P lru = null;
+        for (P player : snapshot) {
+            if (lru == null || (lru.isPlaying() && !player.isPlaying())
+                    || (lru.isPlaying() == player.isPlaying() && player.getLastUsedAt() < lru.getLastUsedAt())) {
+                lru = player;
+            }
+        }
+        return lru;
+    }
+}
@@ -0,0 +1,161 @@
+package xyz.luan.audioplayers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Limits how many sources are prepared at once across all the players, so a bulk preload does not have every decoder
+ * start together, and the sound needed first is not ready last.
+ *
+ * A {@link Client} (the source of a player, or the next item of its playlist) {@link #request requests} a slot when
+ * it gets a source; once granted, its prepare starts, and the slot is held until it is {@link #done} (prepared,
+ * failed, released or given another source). Waiting clients are granted a slot by {@link Priority}, then in the order
+ * they asked. A player started while waiting becomes {@link Priority#INTERACTIVE}.
+ */
+final class PrepareScheduler {
+    static final int DEFAULT_MAX_CONCURRENT = 4;
+
+    enum Priority {
+        // needed now, e.g. played while still loading
+        INTERACTIVE,
+        // likely needed soon
+        PREFETCH,
+        // loaded ahead of time, whenever there is room
+        BACKGROUND
+    }
+
+    interface Client {
+        /**
+         * Starts the prepare, on the thread of the client; called on any thread once a slot is granted.
+         *
+         * @param generation as given to {@link #request}
+         */
+        void onGranted(int generation);
+    }
+
+    private static final Object sLock = new Object();
+    // guarded by sLock
+    private static final List<Request> sWaiting = new ArrayList<>();
+    private static final List<Request> sRunning = new ArrayList<>();
+    private static int sMaxConcurrent = DEFAULT_MAX_CONCURRENT;
+    private static long sSequence = 0;
+
+    private PrepareScheduler() {
+    }
+
+    /**
+     * Sets how many prepares can run at once (at least 1), starting waiting ones if the limit grew.
+     */
+    static void configure(int maxConcurrent) {
+        synchronized (sLock) {
+            sMaxConcurrent = Math.max(1, maxConcurrent);
+        }
+        schedule();
+    }
+
+    /**
+     * Queues the prepare of the current source of the client, replacing any previous request of the client; calls
+     * {@link Client#onGranted} once granted.
+     *
+     * @param generation identifies the source, so a grant arriving after the source changed is ignored
+     */
+    static void request(Client client, Priority priority, int generation) {
+        synchronized (sLock) {
+            remove(client);
+            sWaiting.add(new Request(client, priority, generation, sSequence++));
+        }
+        schedule();
+    }
+
+    /**
+     * Moves the waiting request of the client, if any, to {@link Priority#INTERACTIVE}.
+     */
+    static void promote(Client client) {
+        synchronized (sLock) {
+            for (Request request : sWaiting) {
+                if (request.client == client) {
+                    request.priority = Priority.INTERACTIVE;
+                }
+            }
+        }
+    }
+
+    /**
+     * Frees the slot of the client, or drops its waiting request.
+     */
+    static void done(Client client) {
+        final boolean removed;
+        synchronized (sLock) {
+            removed = remove(client);
+        }
+        if (removed) {
+            schedule();
+        }
+    }
+
+    static int getWaitingCount() {
+        synchronized (sLock) {
+            return sWaiting.size();
+        }
+    }
+
+    static int getRunningCount() {
+        synchronized (sLock) {
+            return sRunning.size();
+        }
+    }
+
+    // must be called holding sLock
+    private static boolean remove(Client client) {
+        return remove(sWaiting, client) | remove(sRunning, client);
+    }
+
+    private static boolean remove(List<Request> requests, Client client) {
+        for (int i = 0; i < requests.size(); i++) {
+            if (requests.get(i).client == client) {
+                requests.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void schedule() {
+        final List<Request> granted = new ArrayList<>(2);
+        synchronized (sLock) {
+            while (sRunning.size() < sMaxConcurrent && !sWaiting.isEmpty()) {
+                Request next = sWaiting.get(0);
+                for (Request request : sWaiting) {
+                    if (request.isBefore(next)) {
+                        next = request;
+                    }
+                }
+                sWaiting.remove(next);
+                sRunning.add(next);
+                granted.add(next);
+            }
+        }
+        for (Request request : granted) {
+            request.client.onGranted(request.generation);
+        }
+    }
+
+    private static final class Request {
+        final Client client;
+        final int generation;
+        final long sequence;
+        Priority priority;
+
+        Request(Client client, Priority priority, int generation, long sequence) {
+            this.client = client;
+            this.priority = priority;
+            this.generation = generation;
+            this.sequence = sequence;
+        }
+
+        boolean isBefore(Request other) {
+            final int byPriority = priority.compareTo(other.priority);
+            return byPriority < 0 || byPriority == 0 && sequence < other.sequence;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package xyz.luan.audioplayers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gathers the progress updates of a scheduler tick, from any audio thread, into a single batch for the main thread.
+ *
+ * Batches are recycled once sent, and their arrays are only reallocated when the number of playing players changes, so
+ * a steady tick sends its positions without allocating.
+ */
+final class ProgressBatcher {
+    // the updates of the current tick, guarded by this
+    private final List<String> playerIds = new ArrayList<>();
+    private int[] positions = new int[8];
+    private int[] durations = new int[8];
+    private final ArrayDeque<Batch> freeBatches = new ArrayDeque<>(2);
+
+    /**
+     * @param durationChanged whether the duration differs from the previous update of this source
+     */
+    synchronized void add(String playerId, int duration, boolean durationChanged, int position) {
+        final int index = playerIds.size();
+        if (index == positions.length) {
+            positions = Arrays.copyOf(positions, index * 2);
+            durations = Arrays.copyOf(durations, index * 2);
+        }
+        playerIds.add(playerId);
+        positions[index] = position;
+        // -1 means the duration did not change since the last update
+        durations[index] = durationChanged ? duration : -1;
+    }
+
+    /**
+     * @return the updates added since the last call, or null if none; give it back with {@link #recycle} once sent
+     */
+    synchronized Batch take() {
+        if (playerIds.isEmpty()) {
+            return null;
+        }
+        Batch batch;
+        synchronized (freeBatches) {
+            batch = freeBatches.pollFirst();
+        }
+        if (batch == null) {
+            batch = new Batch();
+        }
+        batch.fill(playerIds, positions, durations);
+        playerIds.clear();
+        return batch;
+    }
+
+    // called on the main thread, so only locks the free batches
+    void recycle(Batch batch) {
+        synchronized (freeBatches) {
+            freeBatches.addFirst(batch);
+        }
+    }
+
+    /**
+     * The positions of a scheduler tick, on their way to the main thread, as the arguments of
+     * {@code audio.onPositions}.
+     */
+    static final class Batch {
+        final List<String> playerIds = new ArrayList<>();
+        final Map<String, Object> arguments = new HashMap<>(4);
+        int[] positions = new int[0];
+        int[] durations = new int[0];
+
+        void fill(List<String> playerIds, int[] positions, int[] durations) {
+            final int count = playerIds.size();
+            if (this.positions.length != count) {
+                this.positions = new int[count];
+                this.durations = new int[count];
+            }
+            this.playerIds.clear();
+            for (int i = 0; i < count; i++) {
+                this.playerIds.add(playerIds.get(i));
+            }
+            System.arraycopy(positions, 0, this.positions, 0, count);
+            System.arraycopy(durations, 0, this.durations, 0, count);
+            arguments.put("playerIds", this.playerIds);
+            arguments.put("positions", this.positions);
+            arguments.put("durations", this.durations);
+        }
+    }
+}
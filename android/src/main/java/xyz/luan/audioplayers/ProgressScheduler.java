@@ -0,0 +1,143 @@
+package xyz.luan.audioplayers;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reports the position of every playing player to its views, each one at its own interval.
+ *
+ * Instead of waking up at a fixed rate, the scheduler only wakes up when some player is due. While the app is in
+ * background, every interval is stretched to at least the background interval (or paused altogether if that is 0).
+ * All the updates of a single wake up are delivered together, followed by {@link AudioView#onProgressUpdatesDone()},
+ * so views can batch them.
+ *
+ * There is one scheduler per audio thread, and it only reports the players running on that thread.
+ */
+class ProgressScheduler implements Runnable {
+    static final int DEFAULT_INTERVAL = 200;
+    static final int DEFAULT_BACKGROUND_INTERVAL = 1000;
+
+    private static final Map<Handler, ProgressScheduler> sSchedulers = new HashMap<>();
+    private static volatile boolean sBackgrounded = false;
+    private static volatile int sBackgroundInterval = DEFAULT_BACKGROUND_INTERVAL;
+
+    private final Handler handler;
+    // views that got updates in the current run, reused so a run does not allocate
+    private AudioView[] updatedViews = new AudioView[2];
+    private int updatedViewCount = 0;
+
+    private boolean scheduled = false;
+    private long scheduledAt = Long.MAX_VALUE;
+
+    private ProgressScheduler(Handler handler) {
+        this.handler = handler;
+    }
+
+    static ProgressScheduler forHandler(Handler handler) {
+        synchronized (sSchedulers) {
+            ProgressScheduler scheduler = sSchedulers.get(handler);
+            if (scheduler == null) {
+                scheduler = new ProgressScheduler(handler);
+                sSchedulers.put(handler, scheduler);
+            }
+            return scheduler;
+        }
+    }
+
+    static void setBackgrounded(boolean backgrounded) {
+        if (sBackgrounded != backgrounded) {
+            sBackgrounded = backgrounded;
+            if (!backgrounded) {
+                // catch up right away with the (shorter) foreground intervals
+                synchronized (sSchedulers) {
+                    for (ProgressScheduler scheduler : sSchedulers.values()) {
+                        scheduler.reschedule(SystemClock.uptimeMillis());
+                    }
+                }
+            }
+        }
+    }
+
+    static void setBackgroundInterval(int backgroundInterval) {
+        sBackgroundInterval = backgroundInterval;
+    }
+
+    /**
+     * Schedules an immediate update for the given player, and the following ones at its interval.
+     */
+    void schedule(WrappedMediaPlayer player) {
+        player.nextProgressAt = 0;
+        reschedule(SystemClock.uptimeMillis());
+    }
+
+    void onViewUpdated(AudioView view) {
+        for (int i = 0; i < updatedViewCount; i++) {
+            if (updatedViews[i] == view) {
+                return;
+            }
+        }
+        if (updatedViewCount == updatedViews.length) {
+            updatedViews = Arrays.copyOf(updatedViews, updatedViewCount * 2);
+        }
+        updatedViews[updatedViewCount++] = view;
+    }
+
+    private static int intervalOf(WrappedMediaPlayer player) {
+        final int interval = player.getProgressInterval();
+        if (interval <= 0 || !sBackgrounded) {
+            return interval;
+        }
+        final int backgroundInterval = sBackgroundInterval;
+        return backgroundInterval <= 0 ? 0 : Math.max(interval, backgroundInterval);
+    }
+
+    private synchronized void reschedule(long at) {
+        if (scheduled && scheduledAt <= at) {
+            return;
+        }
+        handler.removeCallbacks(this);
+        scheduled = true;
+        scheduledAt = at;
+        handler.postAtTime(this, at);
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            scheduled = false;
+            scheduledAt = Long.MAX_VALUE;
+        }
+
+        final long now = SystemClock.uptimeMillis();
+        long nextDue = Long.MAX_VALUE;
+        for (WrappedMediaPlayer player : WrappedMediaPlayer.players()) {
+            // stalled players are not polled, they are scheduled again once buffered
+            if (player.getHandler() != handler || !player.isActuallyPlaying() || player.isBuffering()) {
+                continue;
+            }
+            final int interval = intervalOf(player);
+            if (interval <= 0) {
+                continue;
+            }
+            if (player.nextProgressAt <= now) {
+                player.reportProgress(this);
+                player.nextProgressAt = now + interval;
+            }
+            nextDue = Math.min(nextDue, player.nextProgressAt);
+        }
+
+        for (int i = 0; i < updatedViewCount; i++) {
+            updatedViews[i].onProgressUpdatesDone();
+            updatedViews[i] = null;
+        }
+        updatedViewCount = 0;
+
+        if (nextDue != Long.MAX_VALUE) {
+            reschedule(nextDue);
+        }
+    }
+}
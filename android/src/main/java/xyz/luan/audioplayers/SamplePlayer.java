@@ -0,0 +1,44 @@
+package xyz.luan.audioplayers;
+
+/**
+ * A playback engine used by {@link WrappedMediaPlayer} instead of a {@link android.media.MediaPlayer},
+ * depending on its {@link PlayerMode}.
+ *
+ * Loading is asynchronous: {@link Listener#onSampleLoaded} is called once the source can be started.
+ */
+interface SamplePlayer {
+    interface Listener {
+        void onSampleLoaded(SamplePlayer player, boolean success);
+
+        void onSampleCompleted(SamplePlayer player);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the source is rejected right away, instead of a failed load notification
+     */
+    void setSource(String url);
+
+    /**
+     * Starts playback, resuming if paused. Engines that support overlapping streams start a new one
+     * when called while already playing.
+     */
+    void start();
+
+    void pause();
+
+    void stop();
+
+    void seekTo(int position);
+
+    void setVolume(float volume);
+
+    void setRate(float rate);
+
+    void setLooping(boolean looping);
+
+    int getDuration();
+
+    int getCurrentPosition();
+
+    void release();
+}
@@ -0,0 +1,90 @@
+package xyz.luan.audioplayers;
+
+/**
+ * What the {@link AudioService} holds as playback goes on: the wake and Wi-Fi locks only while a player actually
+ * plays, and the foreground until every player is paused or stopped. Kept apart from the service so it does not
+ * depend on Android.
+ *
+ * Only used on the main thread.
+ */
+final class ServiceLifecycle {
+    interface Host {
+        void setWakeLockHeld(boolean held);
+
+        void setWifiLockHeld(boolean held);
+
+        void startForeground();
+
+        /**
+         * Leaves the foreground, keeping a notification that can now be dismissed.
+         */
+        void stopForeground();
+
+        /**
+         * Removes the notification and stops the service.
+         */
+        void stop();
+    }
+
+    private final Host host;
+    private boolean wakeHeld = false;
+    private boolean wifiHeld = false;
+    private boolean foreground = false;
+
+    ServiceLifecycle(Host host) {
+        this.host = host;
+    }
+
+    /**
+     * The service was started by a player starting.
+     *
+     * @param playing whether a player actually plays
+     * @param remote whether one of the players actually playing plays a remote source
+     */
+    void onStart(boolean playing, boolean remote) {
+        // started with startForegroundService on O+, so it must go foreground right away, even if it already is
+        host.startForeground();
+        foreground = true;
+        onPlaybackChanged(playing, remote);
+    }
+
+    /**
+     * A player paused, stopped or completed.
+     */
+    void onPlaybackChanged(boolean playing, boolean remote) {
+        setHeld(playing, remote);
+        if (!playing && foreground) {
+            host.stopForeground();
+            foreground = false;
+        }
+    }
+
+    /**
+     * The notification was swiped away, or deleted from Dart.
+     */
+    void onDeleteNotification() {
+        setHeld(false, false);
+        foreground = false;
+        host.stop();
+    }
+
+    void onDestroy() {
+        setHeld(false, false);
+        foreground = false;
+    }
+
+    boolean isForeground() {
+        return foreground;
+    }
+
+    private void setHeld(boolean wake, boolean wifi) {
+        if (wake != wakeHeld) {
+            wakeHeld = wake;
+            host.setWakeLockHeld(wake);
+        }
+        if (wifi != wifiHeld) {
+            wifiHeld = wifi;
+            host.setWifiLockHeld(wifi);
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package xyz.luan.audioplayers;
+
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.MediaMetadataRetriever;
+import android.media.SoundPool;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Low latency engine for short local sounds.
+ *
+ * Every source is decoded once into a shared {@link SoundPool} and kept there while in use (and a while after, up to
+ * {@link #MAX_CACHED_SAMPLES}), so starting it again is immediate. Calling {@link #start()} while already playing
+ * starts another overlapping stream of the same sample.
+ *
+ * The sample cache is shared by players on different audio threads, so it is only accessed holding its lock; the
+ * duration of a new sample is read before taking it. Load notifications arrive on the thread that created the pool, and
+ * the listener is expected to hop back to its own.
+ *
+ * SoundPool does not tell when a stream ends, so completion is timed from the duration of the sample: from the file
+ * metadata, or else by decoding it. A source whose duration cannot be known is rejected.
+ */
+class SoundPoolPlayer implements SamplePlayer {
+    private static final int MAX_STREAMS = 32;
+    private static final int MAX_CACHED_SAMPLES = 64;
+
+    private static SoundPool sSoundPool;
+    // ordered by access, so the first unreferenced sample is the least recently used one
+    private static final LinkedHashMap<String, Sample> sSamples = new LinkedHashMap<>(16, 0.75f, true);
+    private static final Map<Integer, Sample> sSamplesById = new HashMap<>();
+
+    private final Listener listener;
+    private final Handler handler;
+    private final List<Integer> streamIds = new ArrayList<>(4);
+    private final Runnable completionCallback = new Runnable() {
+        @Override
+        public void run() {
+            onStreamsCompleted();
+        }
+    };
+
+    private Sample sample;
+    private float volume = 1.0f;
+    private float rate = 1.0f;
+    private boolean looping = false;
+    private boolean paused = false;
+
+    // position of the most recent stream: positionBase at startedAt, advancing at rate
+    private int positionBase = 0;
+    private long startedAt = 0;
+
+    SoundPoolPlayer(Listener listener, Handler handler) {
+        this.listener = listener;
+        this.handler = handler;
+    }
+
+    @Override
+    public void setSource(String url) {
+        stop();
+        releaseSample();
+
+        final String path = pathOf(url);
+        Sample obtained;
+        boolean loaded;
+        // -1 until read, which is only needed for a sample not cached yet, and done outside of the lock
+        int duration = -1;
+        while (true) {
+            synchronized (sSamples) {
+                obtained = obtainSample(url, path, duration);
+                if (obtained != null) {
+                    obtained.references++;
+                    loaded = obtained.loaded;
+                    if (!loaded) {
+                        obtained.waiting.add(this);
+                    }
+                    break;
+                }
+            }
+            duration = readDuration(url, path);
+        }
+        final Sample sample = obtained;
+        this.sample = sample;
+        if (loaded) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (SoundPoolPlayer.this.sample == sample) {
+                        listener.onSampleLoaded(SoundPoolPlayer.this, true);
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    public void start() {
+        if (sample == null || !sample.loaded) {
+            return;
+        }
+        if (paused) {
+            paused = false;
+            for (Integer streamId : streamIds) {
+                sSoundPool.resume(streamId);
+            }
+        } else {
+            final int streamId = sSoundPool.play(sample.id, volume, volume, 1, looping ? -1 : 0, rate);
+            if (streamId == 0) {
+                // no free stream left, SoundPool already logged it
+                return;
+            }
+            streamIds.add(streamId);
+            positionBase = 0;
+        }
+        startedAt = SystemClock.uptimeMillis();
+        scheduleCompletion();
+    }
+
+    @Override
+    public void pause() {
+        if (paused || streamIds.isEmpty()) {
+            return;
+        }
+        positionBase = getCurrentPosition();
+        paused = true;
+        for (Integer streamId : streamIds) {
+            sSoundPool.pause(streamId);
+        }
+        handler.removeCallbacks(completionCallback);
+    }
+
+    @Override
+    public void stop() {
+        handler.removeCallbacks(completionCallback);
+        for (Integer streamId : streamIds) {
+            sSoundPool.stop(streamId);
+        }
+        streamIds.clear();
+        paused = false;
+        positionBase = 0;
+    }
+
+    /**
+     * SoundPool cannot seek, samples always start from the beginning.
+     */
+    @Override
+    public void seekTo(int position) {
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        this.volume = volume;
+        for (Integer streamId : streamIds) {
+            sSoundPool.setVolume(streamId, volume, volume);
+        }
+    }
+
+    @Override
+    public void setRate(float rate) {
+        if (!paused && !streamIds.isEmpty()) {
+            positionBase = getCurrentPosition();
+            startedAt = SystemClock.uptimeMillis();
+        }
+        this.rate = rate;
+        for (Integer streamId : streamIds) {
+            sSoundPool.setRate(streamId, rate);
+        }
+        scheduleCompletion();
+    }
+
+    @Override
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+        for (Integer streamId : streamIds) {
+            sSoundPool.setLoop(streamId, looping ? -1 : 0);
+        }
+        scheduleCompletion();
+    }
+
+    @Override
+    public int getDuration() {
+        return sample == null ? 0 : sample.duration;
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        if (streamIds.isEmpty()) {
+            return 0;
+        }
+        if (paused) {
+            return positionBase;
+        }
+        int position = positionBase + (int) ((SystemClock.uptimeMillis() - startedAt) * rate);
+        final int duration = getDuration();
+        if (duration > 0) {
+            position = looping ? position % duration : Math.min(position, duration);
+        }
+        return position;
+    }
+
+    @Override
+    public void release() {
+        stop();
+        releaseSample();
+    }
+
+    private void scheduleCompletion() {
+        handler.removeCallbacks(completionCallback);
+        final int duration = getDuration();
+        if (looping || paused || streamIds.isEmpty() || duration <= 0) {
+            return;
+        }
+        final long remaining = (long) ((duration - getCurrentPosition()) / rate);
+        handler.postDelayed(completionCallback, Math.max(0, remaining));
+    }
+
+    private void onStreamsCompleted() {
+        // the most recent stream is the last one to finish, the older ones are done too
+        streamIds.clear();
+        positionBase = 0;
+        listener.onSampleCompleted(this);
+    }
+
+    private void releaseSample() {
+        if (sample == null) {
+            return;
+        }
+        synchronized (sSamples) {
+            sample.waiting.remove(this);
+            sample.references--;
+            trimSamples();
+        }
+        sample = null;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the source is not local; the player reports it as a failed prepare
+     */
+    private static String pathOf(String url) {
+        if (url.startsWith("http://") || url.startsWith("https://")) {
+            throw new IllegalArgumentException("Low latency mode only supports local files, got " + url);
+        }
+        return url.startsWith("file://") ? url.substring("file://".length()) : url;
+    }
+
+    /**
+     * Must be called holding the sSamples lock.
+     *
+     * @param duration the duration of the source, or -1 if not read yet
+     * @return the sample, or {@code null} if it must be loaded and the duration was not read yet
+     * @throws IllegalArgumentException if the source cannot be loaded; the player reports it as a failed prepare
+     */
+    private static Sample obtainSample(String url, String path, int duration) {
+        Sample sample = sSamples.get(path);
+        if (sample == null) {
+            if (duration < 0) {
+                return null;
+            }
+            final SoundPool soundPool = soundPool();
+            final int id;
+            try {
+                id = AssetSource.isAsset(path) ? AssetSource.load(soundPool, path) : soundPool.load(path, 1);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Unable to load " + url, e);
+            }
+            if (id == 0) {
+                // rejected right away, so there will be no load notification; not cached, the next use tries again
+                throw new IllegalArgumentException("SoundPool could not load " + url);
+            }
+            sample = new Sample(id, duration);
+            sSamples.put(path, sample);
+            sSamplesById.put(sample.id, sample);
+        }
+        return sample;
+    }
+
+    // must be called holding the sSamples lock
+    private static void trimSamples() {
+        final Iterator<Sample> it = sSamples.values().iterator();
+        while (sSamples.size() > MAX_CACHED_SAMPLES && it.hasNext()) {
+            final Sample sample = it.next();
+            if (sample.references <= 0) {
+                it.remove();
+                sSamplesById.remove(sample.id);
+                sSoundPool.unload(sample.id);
+            }
+        }
+    }
+
+    /**
+     * Reads the duration from the metadata, or else decodes the source to measure it.
+     *
+     * @throws IllegalArgumentException if neither works, since completion could never be reported
+     */
+    private static int readDuration(String url, String path) {
+        final int duration = readMetadataDuration(path);
+        if (duration > 0) {
+            return duration;
+        }
+        final PcmBuffer decoded;
+        try {
+            decoded = PcmDecoder.decode(path);
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("Unable to read the duration of " + url, e);
+        }
+        if (decoded.getDuration() <= 0) {
+            throw new IllegalArgumentException("No audio in " + url);
+        }
+        return decoded.getDuration();
+    }
+
+    /**
+     * @return the duration, or 0 if the metadata does not have it
+     */
+    private static int readMetadataDuration(String path) {
+        final MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            if (AssetSource.isAsset(path)) {
+                AssetSource.setDataSource(retriever, path);
+            } else {
+                retriever.setDataSource(path);
+            }
+            final String duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            return duration == null ? 0 : Integer.parseInt(duration);
+        } catch (IOException | RuntimeException e) {
+            return 0;
+        } finally {
+            retriever.release();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static SoundPool soundPool() {
+        if (sSoundPool == null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                sSoundPool = new SoundPool.Builder()
+                        .setMaxStreams(MAX_STREAMS)
+                        .setAudioAttributes(new AudioAttributes.Builder()
+                                .setUsage(AudioAttributes.USAGE_GAME)
+                                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                                .build())
+                        .build();
+            } else {
+                // This constructor is deprecated but must be used on older devices
+                sSoundPool = new SoundPool(MAX_STREAMS, AudioManager.STREAM_MUSIC, 0);
+            }
+            sSoundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+                @Override
+                public void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
+                    final Sample sample;
+                    final List<SoundPoolPlayer> waiting;
+                    synchronized (sSamples) {
+                        sample = sSamplesById.get(sampleId);
+                        if (sample == null) {
+                            return;
+                        }
+                        sample.loaded = status == 0;
+                        waiting = new ArrayList<>(sample.waiting);
+                        sample.waiting.clear();
+                        if (!sample.loaded) {
+                            sSamples.values().remove(sample);
+                            sSamplesById.remove(sampleId);
+                        }
+                    }
+                    for (SoundPoolPlayer player : waiting) {
+                        player.listener.onSampleLoaded(player, sample.loaded);
+                    }
+                }
+            });
+        }
+        return sSoundPool;
+    }
+
+    private static final class Sample {
+        final int id;
+        final int duration;
+        final List<SoundPoolPlayer> waiting = new ArrayList<>(1);
+        int references = 0;
+        volatile boolean loaded = false;
+
+        Sample(int id, int duration) {
+            this.id = id;
+            this.duration = duration;
+        }
+    }
+}
@@ -0,0 +1,565 @@
+package xyz.luan.audioplayers;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Engine changing the speed without changing the pitch, on every API level: the source is decoded with
+ * {@link MediaCodec} as it plays, stretched by {@link TimeStretch} and written to a streaming {@link AudioTrack}.
+ *
+ * It plays the same sources as the MediaPlayer engine (remote ones through the {@link CacheProxy}), for a bit more CPU;
+ * meant for devices where {@code setPlaybackParams} is missing (before Marshmallow) or broken (6.0.1).
+ *
+ * Each source is played by a {@link Stream} on a thread of its own, the only one touching its codec and track. The
+ * player's audio thread posts requests to it holding the stream lock, and is called back on its handler.
+ */
+class StretchPlayer implements SamplePlayer {
+    private static final String TAG = StretchPlayer.class.getSimpleName();
+
+    private static final long TIMEOUT_US = 10000;
+    // the track is written in blocks of 10 ms, so requests are handled within that time
+    private static final int BLOCKS_PER_SECOND = 100;
+
+    private final Listener listener;
+    private final Handler handler;
+
+    private Stream stream;
+    private float volume = 1.0f;
+    private float rate = 1.0f;
+    private boolean looping = false;
+
+    StretchPlayer(Listener listener, Handler handler) {
+        this.listener = listener;
+        this.handler = handler;
+    }
+
+    @Override
+    public void setSource(String url) {
+        release();
+        stream = new Stream(url, volume, rate, looping);
+        final Thread thread = new Thread(stream, "audioplayers-stretch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void start() {
+        if (stream != null) {
+            stream.play();
+        }
+    }
+
+    @Override
+    public void pause() {
+        if (stream != null) {
+            stream.pause();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (stream != null) {
+            stream.pause();
+            stream.seek(0);
+        }
+    }
+
+    @Override
+    public void seekTo(int position) {
+        if (stream != null) {
+            stream.seek(position);
+        }
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        this.volume = volume;
+        if (stream != null) {
+            stream.setVolume(volume);
+        }
+    }
+
+    @Override
+    public void setRate(float rate) {
+        // also used to map positions, so clamped as the stretch will
+        this.rate = TimeStretch.clampSpeed(rate);
+        if (stream != null) {
+            stream.setRate(this.rate);
+        }
+    }
+
+    @Override
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+        if (stream != null) {
+            stream.setLooping(looping);
+        }
+    }
+
+    @Override
+    public int getDuration() {
+        return stream == null ? 0 : stream.getDuration();
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return stream == null ? 0 : stream.getPosition();
+    }
+
+    @Override
+    public void release() {
+        if (stream != null) {
+            stream.quit();
+            stream = null;
+        }
+    }
+
+    private final class Stream implements Runnable {
+        private final String url;
+
+        // requests from the player's thread, guarded by this
+        private boolean quit = false;
+        private boolean playing = false;
+        // played to the end, so starting again starts over
+        private boolean ended = false;
+        private int seekTarget = -1;
+        private float volume;
+        private float rate;
+        private boolean looping;
+
+        // published by the decoding thread, guarded by this
+        private AudioTrack track;
+        private int sampleRate = 0;
+        private int duration = 0;
+        // the playback head after the last flush, the frames written since, and the source frame (and speed) at the
+        // end of what was written; the position is worked back from them
+        private long headBase = 0;
+        private long written = 0;
+        private long writtenEnd = 0;
+        private float writtenSpeed = 1.0f;
+        // the length in frames of the source, once looped; until the track plays the new loop, positions wrap with it
+        private long loopLength = 0;
+
+        // owned by the decoding thread
+        private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        private MediaExtractor extractor;
+        private MediaCodec codec;
+        private TimeStretch stretch;
+        private short[] pcm = new short[0];
+        private int channelCount = 0;
+        private int blockFrames = 0;
+        private boolean inputDone = false;
+        private boolean outputDone = false;
+        private boolean flushed = false;
+        private boolean trackPlaying = false;
+        private float appliedVolume = -1;
+        // the source frame of the first frame given to the stretch, and the decoded audio to drop after a seek
+        private long baseFrame = 0;
+        private long skipUntilUs = 0;
+
+        Stream(String url, float volume, float rate, boolean looping) {
+            this.url = url;
+            this.volume = volume;
+            this.rate = rate;
+            this.looping = looping;
+        }
+
+        synchronized void play() {
+            if (ended) {
+                ended = false;
+                seekTarget = 0;
+            }
+            playing = true;
+            notifyAll();
+        }
+
+        synchronized void pause() {
+            playing = false;
+            notifyAll();
+        }
+
+        synchronized void seek(int position) {
+            seekTarget = Math.max(0, position);
+            ended = false;
+            notifyAll();
+        }
+
+        synchronized void setVolume(float volume) {
+            this.volume = volume;
+        }
+
+        synchronized void setRate(float rate) {
+            this.rate = rate;
+        }
+
+        synchronized void setLooping(boolean looping) {
+            this.looping = looping;
+        }
+
+        synchronized void quit() {
+            quit = true;
+            notifyAll();
+        }
+
+        synchronized int getDuration() {
+            return duration;
+        }
+
+        synchronized int getPosition() {
+            if (track == null || sampleRate == 0) {
+                return 0;
+            }
+            final long played = (track.getPlaybackHeadPosition() & 0xFFFFFFFFL) - headBase;
+            long frame = writtenEnd - (long) (Math.max(0, written - played) * writtenSpeed);
+            if (frame < 0 && loopLength > 0) {
+                frame += loopLength;
+            }
+            return (int) (Math.max(0, frame) * 1000 / sampleRate);
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+            final boolean opened = open();
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (stream == Stream.this) {
+                        listener.onSampleLoaded(StretchPlayer.this, opened);
+                    }
+                }
+            });
+            try {
+                if (opened) {
+                    loop();
+                }
+            } catch (RuntimeException e) {
+                // MediaCodec reports most failures with IllegalStateException
+                Log.w(TAG, "Unable to play " + url, e);
+                finish();
+            } finally {
+                close();
+            }
+        }
+
+        private boolean open() {
+            try {
+                extractor = new MediaExtractor();
+                PcmDecoder.setDataSource(extractor, url);
+                final MediaFormat format = PcmDecoder.selectAudioTrack(extractor);
+                if (format == null) {
+                    Log.w(TAG, "No audio track in " + url);
+                    return false;
+                }
+                codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+                codec.configure(format, null, null, 0);
+                codec.start();
+                configureOutput(format.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                        format.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+                synchronized (this) {
+                    duration = format.containsKey(MediaFormat.KEY_DURATION)
+                            ? (int) (format.getLong(MediaFormat.KEY_DURATION) / 1000) : 0;
+                }
+                return true;
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Unable to open " + url, e);
+                return false;
+            }
+        }
+
+        private void loop() {
+            while (true) {
+                final int seek;
+                final boolean play;
+                final boolean loop;
+                final float speed;
+                synchronized (this) {
+                    while (!quit && seekTarget < 0 && (!playing || ended)) {
+                        pauseTrack();
+                        if (!await(0)) {
+                            return;
+                        }
+                    }
+                    if (quit) {
+                        return;
+                    }
+                    seek = seekTarget;
+                    seekTarget = -1;
+                    play = playing && !ended;
+                    loop = looping;
+                    speed = rate;
+                    if (appliedVolume != volume) {
+                        appliedVolume = volume;
+                        applyVolume();
+                    }
+                }
+                if (seek >= 0) {
+                    seekTo(seek);
+                }
+                if (!play) {
+                    continue;
+                }
+                if (!trackPlaying) {
+                    track.play();
+                    trackPlaying = true;
+                }
+                stretch.setSpeed(speed);
+                if (stretch.available() > 0) {
+                    write(speed);
+                } else if (!outputDone) {
+                    decode();
+                } else if (loop) {
+                    restart();
+                } else if (!flushed) {
+                    stretch.flush();
+                    flushed = true;
+                } else if (isDrained()) {
+                    finish();
+                } else {
+                    synchronized (this) {
+                        if (!await(1000 / BLOCKS_PER_SECOND)) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+
+        private void decode() {
+            if (!inputDone) {
+                final int index = codec.dequeueInputBuffer(0);
+                if (index >= 0) {
+                    final int size = extractor.readSampleData(PcmDecoder.inputBuffer(codec, index), 0);
+                    if (size < 0) {
+                        codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputDone = true;
+                    } else {
+                        codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+                        extractor.advance();
+                    }
+                }
+            }
+            final int index = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+            if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                final MediaFormat outputFormat = codec.getOutputFormat();
+                configureOutput(outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                        outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+            } else if (index >= 0) {
+                if (info.size > 0) {
+                    stretchChunk(PcmDecoder.outputBuffer(codec, index));
+                }
+                codec.releaseOutputBuffer(index, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    outputDone = true;
+                }
+            }
+        }
+
+        private void stretchChunk(ByteBuffer chunk) {
+            chunk.position(info.offset);
+            chunk.limit(info.offset + info.size);
+            final ShortBuffer samples = chunk.order(ByteOrder.nativeOrder()).asShortBuffer();
+            final int frames = samples.remaining() / channelCount;
+            // after a seek, decoding starts at the previous sync sample
+            int skip = 0;
+            if (skipUntilUs > info.presentationTimeUs) {
+                skip = (int) Math.min(frames, (skipUntilUs - info.presentationTimeUs) * sampleRate / 1000000);
+            }
+            if (skip == frames) {
+                return;
+            }
+            if (pcm.length < frames * channelCount) {
+                pcm = new short[frames * channelCount];
+            }
+            samples.get(pcm, 0, frames * channelCount);
+            stretch.put(pcm, skip * channelCount, frames - skip);
+        }
+
+        private void write(float speed) {
+            final int frames = Math.min(stretch.available(), blockFrames);
+            // blocks until the track has room, which paces the loop
+            final int count = track.write(stretch.output(), stretch.outputOffset(), frames * channelCount);
+            if (count < 0) {
+                throw new IllegalStateException("AudioTrack write failed with " + count);
+            }
+            stretch.consume(count / channelCount);
+            synchronized (this) {
+                written += count / channelCount;
+                writtenEnd = baseFrame + stretch.sourcePosition() - (long) (stretch.available() * speed);
+                writtenSpeed = speed;
+            }
+        }
+
+        private void seekTo(int position) {
+            pauseTrack();
+            track.flush();
+            codec.flush();
+            extractor.seekTo(position * 1000L, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            stretch.clear();
+            inputDone = outputDone = flushed = false;
+            skipUntilUs = position * 1000L;
+            baseFrame = (long) position * sampleRate / 1000;
+            synchronized (this) {
+                headBase = track.getPlaybackHeadPosition() & 0xFFFFFFFFL;
+                written = 0;
+                writtenEnd = baseFrame;
+                loopLength = 0;
+            }
+        }
+
+        /**
+         * Decodes the source again from the start, appending it to what is being stretched, for a seamless loop.
+         */
+        private void restart() {
+            codec.flush();
+            extractor.seekTo(0, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            inputDone = outputDone = false;
+            skipUntilUs = 0;
+            synchronized (this) {
+                loopLength = baseFrame + stretch.received();
+            }
+            baseFrame = -stretch.received();
+        }
+
+        private boolean isDrained() {
+            synchronized (this) {
+                return (track.getPlaybackHeadPosition() & 0xFFFFFFFFL) - headBase >= written;
+            }
+        }
+
+        private void finish() {
+            synchronized (this) {
+                ended = true;
+            }
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (stream == Stream.this) {
+                        listener.onSampleCompleted(StretchPlayer.this);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Waits for a request, at most {@code millis} (0 for no limit); must hold the lock.
+         *
+         * @return false if interrupted
+         */
+        private boolean await(long millis) {
+            try {
+                wait(millis);
+                return true;
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Creates the track and the stretch for the format, unless it did not change.
+         */
+        private void configureOutput(int sampleRate, int channelCount) {
+            if (track != null && sampleRate == this.sampleRate && channelCount == this.channelCount) {
+                return;
+            }
+            if (channelCount != 1 && channelCount != 2) {
+                throw new IllegalArgumentException("Unsupported channel count " + channelCount);
+            }
+            final AudioTrack track = createTrack(sampleRate, channelCount);
+            final AudioTrack previous;
+            synchronized (this) {
+                previous = this.track;
+                this.track = track;
+                this.sampleRate = sampleRate;
+                headBase = 0;
+                written = 0;
+            }
+            if (previous != null) {
+                previous.release();
+            }
+            this.channelCount = channelCount;
+            this.blockFrames = sampleRate / BLOCKS_PER_SECOND;
+            this.stretch = new TimeStretch(sampleRate, channelCount);
+            this.trackPlaying = false;
+            this.appliedVolume = -1;
+        }
+
+        @SuppressWarnings("deprecation")
+        private AudioTrack createTrack(int sampleRate, int channelCount) {
+            final int channelMask = channelCount == 1 ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+            final int size = 2 * AudioTrack.getMinBufferSize(sampleRate, channelMask, AudioFormat.ENCODING_PCM_16BIT);
+            final AudioTrack track;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                track = new AudioTrack(
+                        new AudioAttributes.Builder()
+                                .setUsage(AudioAttributes.USAGE_MEDIA)
+                                .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                                .build(),
+                        new AudioFormat.Builder()
+                                .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                                .setSampleRate(sampleRate)
+                                .setChannelMask(channelMask)
+                                .build(),
+                        size, AudioTrack.MODE_STREAM, AudioManager.AUDIO_SESSION_ID_GENERATE);
+            } else {
+                // This constructor is deprecated but must be used on older devices
+                track = new AudioTrack(AudioManager.STREAM_MUSIC, sampleRate, channelMask,
+                        AudioFormat.ENCODING_PCM_16BIT, size, AudioTrack.MODE_STREAM);
+            }
+            if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+                track.release();
+                throw new IllegalStateException("Unable to create a track at " + sampleRate + " Hz");
+            }
+            return track;
+        }
+
+        private void pauseTrack() {
+            if (trackPlaying) {
+                track.pause();
+                trackPlaying = false;
+            }
+        }
+
+        @SuppressWarnings("deprecation")
+        private void applyVolume() {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                track.setVolume(volume);
+            } else {
+                track.setStereoVolume(volume, volume);
+            }
+        }
+
+        private void close() {
+            try {
+                if (codec != null) {
+                    codec.release();
+                }
+                if (extractor != null) {
+                    extractor.release();
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Unable to release the decoder of " + url, e);
+            }
+            synchronized (this) {
+                if (track != null) {
+                    track.release();
+                    track = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package xyz.luan.audioplayers;
+
+/**
+ * Pitch preserving time-stretch of 16 bit interleaved PCM, with WSOLA (waveform similarity overlap-add).
+ *
+ * The input is cut in sequences of {@link #SEQUENCE_MS}, laid out back to back in the output but read {@code speed}
+ * times further apart in the input. Each sequence is shifted, within {@link #SEEK_WINDOW_MS}, to where its start looks
+ * most like the end of the previous one, and the two are cross-faded over {@link #OVERLAP_MS}.
+ *
+ * Processing is incremental: {@link #put} queues decoded input and stretches as much of it as possible, and the output
+ * is read in place with {@link #output()} and {@link #consume}. Buffers only grow when fed larger chunks than before,
+ * so a steady stream is processed without allocating. At speed 1 the input is passed through untouched.
+ *
+ * Not thread safe.
+ */
+final class TimeStretch {
+    private static final int SEQUENCE_MS = 40;
+    private static final int SEEK_WINDOW_MS = 15;
+    private static final int OVERLAP_MS = 8;
+    // correlation is computed on every other frame, halving its cost with no audible difference
+    private static final int CORRELATION_STEP = 2;
+    // speeds are clamped to this range; past it the sequences barely overlap, or repeat many times
+    static final float MIN_SPEED = 0.25f;
+    static final float MAX_SPEED = 4.0f;
+
+    private final int channels;
+    // in frames
+    private final int sequence;
+    private final int seekWindow;
+    private final int overlap;
+
+    // the queued input is input[inputStart, inputEnd), and the pending output output[outputStart, outputEnd), in frames
+    private short[] input;
+    private int inputStart = 0;
+    private int inputEnd = 0;
+    private short[] output;
+    private int outputStart = 0;
+    private int outputEnd = 0;
+    // the end of the last sequence, to be cross-faded with the next one
+    private final short[] mid;
+    private boolean midValid = false;
+
+    private float speed = 1.0f;
+    private double skipFraction = 0;
+    // input frames queued and dropped since the last clear
+    private long received = 0;
+    private long consumed = 0;
+    // the input frame matching the end of the output produced so far
+    private long sourcePosition = 0;
+
+    TimeStretch(int sampleRate, int channels) {
+        this.channels = channels;
+        this.sequence = sampleRate * SEQUENCE_MS / 1000;
+        this.seekWindow = sampleRate * SEEK_WINDOW_MS / 1000;
+        this.overlap = sampleRate * OVERLAP_MS / 1000;
+        this.mid = new short[overlap * channels];
+        this.input = new short[(seekWindow + sequence) * 4 * channels];
+        this.output = new short[(seekWindow + sequence) * 4 * channels];
+    }
+
+    /**
+     * Sets the speed, see {@link #clampSpeed}.
+     */
+    void setSpeed(float speed) {
+        this.speed = clampSpeed(speed);
+    }
+
+    /**
+     * @return the speed within [{@link #MIN_SPEED}, {@link #MAX_SPEED}], or 1 if not a number
+     */
+    static float clampSpeed(float speed) {
+        return Float.isNaN(speed) ? 1.0f : Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+    }
+
+    /**
+     * Queues {@code frames} frames of interleaved samples, and stretches as much of the queued input as possible.
+     */
+    void put(short[] samples, int offset, int frames) {
+        if (inputEnd + frames > capacity(input)) {
+            input = compact(input, inputStart, inputEnd, frames);
+            inputEnd -= inputStart;
+            inputStart = 0;
+        }
+        System.arraycopy(samples, offset, input, inputEnd * channels, frames * channels);
+        inputEnd += frames;
+        received += frames;
+        process();
+    }
+
+    /**
+     * Moves all the queued input to the output, unstretched; called at the end of the stream.
+     */
+    void flush() {
+        if (midValid) {
+            emitMid();
+        }
+        append(input, inputStart, inputEnd - inputStart);
+        drop(inputEnd - inputStart);
+        sourcePosition = consumed;
+    }
+
+    /**
+     * Drops the queued input and output, and restarts counting frames; the next input is output as is, not cross-faded.
+     */
+    void clear() {
+        inputStart = inputEnd = 0;
+        outputStart = outputEnd = 0;
+        midValid = false;
+        skipFraction = 0;
+        received = consumed = sourcePosition = 0;
+    }
+
+    /**
+     * The pending output, starting at sample {@link #outputOffset()}, for {@link #available()} frames.
+     */
+    short[] output() {
+        return output;
+    }
+
+    int outputOffset() {
+        return outputStart * channels;
+    }
+
+    int available() {
+        return outputEnd - outputStart;
+    }
+
+    void consume(int frames) {
+        outputStart += frames;
+        if (outputStart == outputEnd) {
+            outputStart = outputEnd = 0;
+        }
+    }
+
+    /**
+     * How many input frames were queued since the last {@link #clear()}.
+     */
+    long received() {
+        return received;
+    }
+
+    /**
+     * The input frame, counted since the last {@link #clear()}, matching the end of the output produced so far (read
+     * or not).
+     */
+    long sourcePosition() {
+        return sourcePosition;
+    }
+
+    private void process() {
+        if (speed == 1.0f) {
+            passThrough();
+            return;
+        }
+        final int hop = sequence - overlap;
+        while (true) {
+            final int skip = (int) (skipFraction + speed * hop);
+            if (inputEnd - inputStart < Math.max(seekWindow + sequence, skip)) {
+                return;
+            }
+            final int offset;
+            if (midValid) {
+                offset = bestOffset();
+                crossFade(offset);
+            } else {
+                // nothing to match against: the output resumes exactly where the input starts
+                offset = 0;
+                append(input, inputStart, overlap);
+            }
+            append(input, inputStart + offset + overlap, sequence - 2 * overlap);
+            System.arraycopy(input, (inputStart + offset + hop) * channels, mid, 0, mid.length);
+            midValid = true;
+            sourcePosition = consumed + offset + hop;
+
+            skipFraction += speed * hop - skip;
+            drop(skip);
+        }
+    }
+
+    private void passThrough() {
+        if (midValid) {
+            // leaving the stretched mode: one last cross-fade, then the input follows as is
+            if (inputEnd - inputStart < seekWindow + overlap) {
+                return;
+            }
+            final int offset = bestOffset();
+            crossFade(offset);
+            drop(offset + overlap);
+            midValid = false;
+        }
+        append(input, inputStart, inputEnd - inputStart);
+        drop(inputEnd - inputStart);
+        sourcePosition = consumed;
+    }
+
+    private void emitMid() {
+        append(mid, 0, overlap);
+        midValid = false;
+    }
+
+    /**
+     * The shift of the next sequence, in [0, seekWindow), whose start correlates best with the mid buffer.
+     */
+    private int bestOffset() {
+        int best = 0;
+        double bestScore = -Double.MAX_VALUE;
+        final int base = inputStart * channels;
+        final int step = CORRELATION_STEP * channels;
+        final int length = overlap * channels;
+        for (int offset = 0; offset < seekWindow; offset++) {
+            final int start = base + offset * channels;
+            long correlation = 0;
+            long energy = 1;
+            for (int i = 0; i < length; i += step) {
+                for (int c = 0; c < channels; c++) {
+                    final int sample = input[start + i + c];
+                    correlation += mid[i + c] * sample;
+                    energy += sample * sample;
+                }
+            }
+            // normalized by the energy of the candidate only, so louder parts are not preferred; sign kept
+            final double score = (double) correlation * Math.abs(correlation) / energy;
+            if (score > bestScore) {
+                bestScore = score;
+                best = offset;
+            }
+        }
+        return best;
+    }
+
+    private void crossFade(int offset) {
+        ensureOutput(overlap);
+        final int in = (inputStart + offset) * channels;
+        int out = outputEnd * channels;
+        for (int i = 0; i < overlap; i++) {
+            for (int c = 0; c < channels; c++) {
+                final int index = i * channels + c;
+                output[out++] = (short) ((mid[index] * (overlap - i) + input[in + index] * i) / overlap);
+            }
+        }
+        outputEnd += overlap;
+    }
+
+    private void append(short[] source, int frame, int frames) {
+        ensureOutput(frames);
+        System.arraycopy(source, frame * channels, output, outputEnd * channels, frames * channels);
+        outputEnd += frames;
+    }
+
+    private void ensureOutput(int frames) {
+        if (outputEnd + frames > capacity(output)) {
+            output = compact(output, outputStart, outputEnd, frames);
+            outputEnd -= outputStart;
+            outputStart = 0;
+        }
+    }
+
+    private void drop(int frames) {
+        inputStart += frames;
+        consumed += frames;
+        if (inputStart == inputEnd) {
+            inputStart = inputEnd = 0;
+        }
+    }
+
+    private int capacity(short[] buffer) {
+        return buffer.length / channels;
+    }
+
+    /**
+     * Moves the frames [start, end) to the beginning of the buffer, or of a larger one if {@code extra} more frames
+     * would not fit.
+     */
+    private short[] compact(short[] buffer, int start, int end, int extra) {
+        final int frames = end - start;
+        final short[] target = frames + extra > capacity(buffer)
+                ? new short[Math.max(capacity(buffer) * 2, frames + extra) * channels] : buffer;
+        System.arraycopy(buffer, start * channels, target, 0, frames * channels);
+        return target;
+    }
+}
@@ -0,0 +1,80 @@
+package xyz.luan.audioplayers;
+
+/**
+ * A volume change spread over a duration, following a {@link Curve}. Used both to drive a handler ramp step by step,
+ * and to describe the same shape to a {@code VolumeShaper}.
+ */
+final class VolumeRamp {
+    enum Curve {
+        LINEAR,
+        // slow start, fast end
+        EASE_IN,
+        // fast start, slow end
+        EASE_OUT,
+        // sine shaped, keeps the total power constant when one player fades out while another fades in
+        EQUAL_POWER
+    }
+
+    final float from;
+    final float to;
+    final long start;
+    final int duration;
+    private final Curve curve;
+
+    VolumeRamp(float from, float to, long start, int duration, Curve curve) {
+        this.from = from;
+        this.to = to;
+        this.start = start;
+        this.duration = Math.max(0, duration);
+        this.curve = curve;
+    }
+
+    /**
+     * @param time on the same clock as the start of the ramp
+     */
+    float valueAt(long time) {
+        if (duration == 0) {
+            return to;
+        }
+        final float t = Math.max(0, Math.min(1, (time - start) / (float) duration));
+        return from + (to - from) * shape(t);
+    }
+
+    boolean isDoneAt(long time) {
+        return time - start >= duration;
+    }
+
+    /**
+     * Samples the shape of the ramp at {@code count} (at least 2) evenly spaced points, for a {@code VolumeShaper}
+     * curve: times go from 0 to 1, and volumes from {@code from / scale} to {@code to / scale}.
+     */
+    void sample(float[] times, float[] volumes, float scale) {
+        final int last = times.length - 1;
+        for (int i = 0; i <= last; i++) {
+            final float t = i / (float) last;
+            times[i] = t;
+            volumes[i] = Math.max(0, Math.min(1, (from + (to - from) * shape(t)) / scale));
+        }
+    }
+
+    private float shape(float t) {
+        switch (curve) {
+            case EASE_IN:
+                return t * t;
+            case EASE_OUT:
+                return 1 - (1 - t) * (1 - t);
+            case EQUAL_POWER:
+                // rises like a sine when fading in, falls like a cosine when fading out
+                return (float) (to >= from ? Math.sin(t * Math.PI / 2) : 1 - Math.cos(t * Math.PI / 2));
+            default:
+                return t;
+        }
+    }
+
+    interface Listener {
+        /**
+         * @param completed false if the ramp was interrupted (by another one, a volume change, a pause...)
+         */
+        void onRampDone(boolean completed);
+    }
+}
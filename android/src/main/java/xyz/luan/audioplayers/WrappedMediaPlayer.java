@@ -4,195 +4,742 @@ import android.annotation.TargetApi;
 import android.media.AudioAttributes;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
+import android.media.VolumeShaper;
 import android.os.Build;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.text.TextUtils;
+import android.util.Log;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
 
 public class WrappedMediaPlayer implements MediaPlayer.OnPreparedListener,
         MediaPlayer.OnCompletionListener,
-        MediaPlayer.OnSeekCompleteListener {
+        MediaPlayer.OnSeekCompleteListener,
+        MediaPlayer.OnErrorListener,
+        MediaPlayer.OnInfoListener,
+        MediaPlayer.OnBufferingUpdateListener,
+        SamplePlayer.Listener, PlayerRegistry.Player {
     private final static String TAG = WrappedMediaPlayer.class.getSimpleName();
 
     public final static String AUDIO_SERVICE_ACTION = "xyz.luan.audioplayers.action.START_SERVICE";
     public final static String EXTRA_PLAYER_ID = "xyz.luan.audioplayers.extra.PLAYER_ID";
     public final static String EXTRA_COMMAND = "xyz.luan.audioplayers.extra.COMMAND";
 
-    private String playerId;
+    private final String playerId;
 
     private String url;
     private double volume = 1.0;
+    // gain applied on top of the volume, ramped by the AudioFocus coordinator to duck the player
+    private float gain = 1.0f;
+    private float gainFrom = 1.0f;
+    private float gainTo = 1.0f;
+    private long gainRampStart = 0;
+    private int gainRampDuration = 0;
+    private final Runnable gainCallback = new Runnable() {
+        @Override
+        public void run() {
+            updateGain();
+        }
+    };
+    // fadeTo(): the ramp in progress, stepped by fadeCallback, or run by fadeShaper on API 26+
+    private static final int FADE_STEP = 10;
+    private static final int SHAPER_POINTS = 32;
+    private VolumeRamp fade;
+    private VolumeRamp.Listener fadeListener;
+    private VolumeShaper fadeShaper;
+    // the MediaPlayer volume while the shaper scales it down, 0 otherwise
+    private float fadeScale = 0;
+    private final Runnable fadeCallback = new Runnable() {
+        @Override
+        public void run() {
+            updateFade();
+        }
+    };
+    // AudioAttributes of the MediaPlayer engine
+    private int usage = AudioAttributes.USAGE_MEDIA;
+    private int contentType = AudioAttributes.CONTENT_TYPE_MUSIC;
     private ReleaseMode releaseMode = ReleaseMode.RELEASE;
+    private PlayerMode mode = PlayerMode.MEDIA_PLAYER;
+
+    // read by the progress scheduler and the plugin from other threads
+    private volatile boolean released = true;
+    private volatile boolean prepared = false;
+    private volatile boolean playing = false;
+    // stalled waiting for data, so the position does not move and is not polled
+    private volatile boolean buffering = false;
+    private int bufferedPercent = -1;
+
+    // remote sources failing are prepared again, up to MAX_RETRIES times, waiting RETRY_DELAY and twice as long
+    // after each attempt; the position is restored
+    private static final int MAX_RETRIES = 3;
+    private static final int RETRY_DELAY = 1000;
+    private int retries = 0;
+    private int retryPosition = 0;
+    private final Runnable retryCallback = new Runnable() {
+        @Override
+        public void run() {
+            retrySource();
+        }
+    };
+    // the last position read while prepared
+    private int lastPosition = 0;
+
+    private final List<PreparedCallback> preparedCallbacks = new ArrayList<>(1);
 
-    private boolean released = true;
-    private boolean prepared = false;
-    private boolean playing = false;
+    private int progressInterval = ProgressScheduler.DEFAULT_INTERVAL;
+    volatile long nextProgressAt = 0;
+    // the last duration given to the views, reset whenever the source changes
+    private int reportedDuration = -1;
 
     private double shouldSeekTo = -1;
+    // playing, but the MediaPlayer is only started once the seek restoring the position completes
+    private boolean startAfterSeek = false;
+    // released by the PlayerReclaimer, prepared again on the next play or seek; read by the admission too
+    private volatile boolean reclaimed = false;
+    private volatile long lastUsedAt = SystemClock.uptimeMillis();
     private float speed = -1;
     private float currentSpeed = -1;
 
     private MediaPlayer player;
-    private WeakHashMap<AudioView, Boolean> audioViews = new WeakHashMap<>(2);
-
-    private static final Handler sHandler = new Handler();
-    private static Runnable sPositionUpdates;
-    private static final Object sLock = new Object();
-
-    public static final Map<String, WrappedMediaPlayer> sMediaPlayers = new HashMap<>();
-
-    public static WrappedMediaPlayer get(String playerId, AudioView audioView) {
-        WrappedMediaPlayer player;
-        synchronized (sLock) {
-            player = sMediaPlayers.get(playerId);
-            if (null == player) {
-                if (sMediaPlayers.size() == 0) {
-                    player = new WrappedMediaPlayer(audioView, playerId);
-                } else {
-                    for (Map.Entry<String, WrappedMediaPlayer> entry : sMediaPlayers.entrySet()) {
-                        player = sMediaPlayers.remove(entry.getKey());
-                        player.playerId = playerId;
-                        break;
-                    }
-                }
-                sMediaPlayers.put(playerId, player);
-            } else {
-                player.audioViews.put(audioView, Boolean.TRUE);
-                if (!TextUtils.isEmpty(player.url)) {
-                    audioView.onSourceSet(player, player.url);
+    private SamplePlayer sample;
+
+    // playlist: the next item is prepared on nextPlayer while the current one plays
+    private final List<String> queue = new ArrayList<>();
+    private int queueIndex = -1;
+    private int crossfadeDuration = 0;
+    private MediaPlayer nextPlayer;
+    private boolean nextPrepared = false;
+    private boolean nextAttached = false;
+    private boolean crossfading = false;
+    private final Runnable crossfadeCallback = new Runnable() {
+        @Override
+        public void run() {
+            updateCrossfade();
+        }
+    };
+
+    // scrubbing: fast seeks are rate limited and not reported, see beginScrub()
+    private static final int SCRUB_SEEK_INTERVAL = 50;
+    private boolean scrubbing = false;
+    // the last position asked for, and the one still waiting to be sought (-1 if none)
+    private int scrubPosition = -1;
+    private int scrubTarget = -1;
+    // a fast seek was issued and did not complete yet
+    private boolean scrubSeeking = false;
+    private long lastScrubSeekAt = 0;
+    // the exact seek ending the scrub, waiting for the fast seek in flight to complete
+    private int exactSeekTarget = -1;
+    private final Runnable scrubCallback = new Runnable() {
+        @Override
+        public void run() {
+            seekScrubTarget();
+        }
+    };
+    // copy-on-write, so notifying the views needs neither a lock nor a copy
+    private volatile AudioView[] audioViews = new AudioView[0];
+
+    // the audio thread this player runs on, see AudioThreads
+    private final Handler handler;
+    private final ProgressScheduler progressScheduler;
+    private final CommandPipeline commands;
+    // how many times a source was prepared, for diagnostics; also identifies the prepare granted by the scheduler
+    private int prepareCount = 0;
+    // the priority of the prepares not started by play()
+    private PrepareScheduler.Priority preparePriority = PrepareScheduler.Priority.PREFETCH;
+    // the current source and the next queue item take separate prepare slots
+    private final PrepareScheduler.Client sourcePrepare = new PrepareScheduler.Client() {
+        @Override
+        public void onGranted(final int generation) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    startPrepare(generation);
                 }
-                if (player.isActuallyPlaying()) {
-                    audioView.onStart(player);
+            });
+        }
+    };
+    private final PrepareScheduler.Client nextPrepare = new PrepareScheduler.Client() {
+        @Override
+        public void onGranted(final int generation) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    startNextPrepare(generation);
                 }
-            }
+            });
         }
-        return player;
+    };
+    // identifies the prepare of the next queue item granted by the scheduler
+    private int nextPrepareCount = 0;
+    // System.nanoTime() when the operations measured by Metrics began, 0 if none is in progress
+    private long prepareStartedAt = 0;
+    private long nextPrepareStartedAt = 0;
+    private long playRequestedAt = 0;
+    private long seekStartedAt = 0;
+
+    static final MediaPlayerPool sPlayerPool = new MediaPlayerPool(AudioThreads.shared());
+    static final PlayerReclaimer sReclaimer = new PlayerReclaimer(AudioThreads.shared());
+
+    /**
+     * Told once whether the source being prepared got ready, see {@link #whenPrepared}.
+     */
+    interface PreparedCallback {
+        void onPrepared(boolean success);
     }
 
-    public static void destroy(String playerId, AudioView audioView) {
-        WrappedMediaPlayer player;
-        synchronized (sLock) {
-            if ((player = sMediaPlayers.get(playerId)) != null) {
-                player.audioViews.remove(audioView);
-                if (player.audioViews.isEmpty()) {
-                    sMediaPlayers.remove(playerId);
+    private static final PlayerRegistry<WrappedMediaPlayer> sRegistry = new PlayerRegistry<>(new WrappedMediaPlayer[0],
+            new PlayerRegistry.Listener<WrappedMediaPlayer>() {
+                @Override
+                public void onEvicted(WrappedMediaPlayer player) {
+                    player.dispose("Released to make room for another player");
+                }
+            });
+    public static final Map<String, WrappedMediaPlayer> sMediaPlayers = sRegistry.asMap();
+
+    /**
+     * Returns the player with the given id, creating it if needed. Past the player limit, creating one follows the
+     * admission policy.
+     *
+     * @return the player, or {@code null} if it must wait for a free slot ({@link AdmissionPolicy#QUEUE})
+     * @throws PlayerLimitException if it cannot be created ({@link AdmissionPolicy#REJECT})
+     */
+    public static WrappedMediaPlayer get(String playerId, final AudioView audioView) {
+        WrappedMediaPlayer player = sRegistry.get(playerId);
+        if (null == player) {
+            player = sRegistry.getOrCreate(playerId, new PlayerRegistry.Factory<WrappedMediaPlayer>() {
+                @Override
+                public WrappedMediaPlayer create(String id) {
+                    Metrics.PLAYERS_CREATED.incrementAndGet();
+                    return new WrappedMediaPlayer(audioView, id);
                 }
+            });
+            if (null == player) {
+                return null;
             }
         }
+        // a player just created already has the view
+        if (player.addAudioView(audioView)) {
+            if (!TextUtils.isEmpty(player.url)) {
+                audioView.onSourceSet(player, player.url);
+            }
+            if (player.isActuallyPlaying()) {
+                audioView.onStart(player);
+            }
+        }
+        return player;
     }
 
-    private static void startPositionUpdates() {
-        if (sPositionUpdates == null) {
-            sPositionUpdates = new UpdateCallback();
-            sHandler.post(sPositionUpdates);
+    /**
+     * Releases the player with the given id and forgets it, freeing its slot.
+     *
+     * @return whether there was such a player
+     */
+    public static boolean remove(String playerId) {
+        final WrappedMediaPlayer player = sRegistry.remove(playerId);
+        if (player == null) {
+            return false;
         }
+        player.dispose(null);
+        BytesSource.remove(playerId);
+        return true;
     }
 
-    private static void stopPositionUpdates() {
-        sPositionUpdates = null;
-        sHandler.removeCallbacksAndMessages(null);
+    /**
+     * Sets how many players can exist at once (0 for no limit), and what happens to new players past that limit.
+     * Existing players are kept even if over the new limit.
+     */
+    public static void configureLimit(int maxPlayers, AdmissionPolicy policy) {
+        sRegistry.configureLimit(maxPlayers, policy);
     }
 
-    public void onDeleteNotification() {
-        Set<AudioView> views;
-        synchronized (sLock) {
-            views = new HashSet<>(audioViews.keySet());
+    /**
+     * @return whether creating a new player would not have to wait: there is room under the limit, a reclaimed player
+     * to take the slot of, or the policy does not queue
+     */
+    public static boolean canAdmit() {
+        return sRegistry.canAdmit();
+    }
+
+    static int getMaxPlayers() {
+        return sRegistry.getMaxPlayers();
+    }
+
+    static AdmissionPolicy getAdmissionPolicy() {
+        return sRegistry.getAdmissionPolicy();
+    }
+
+    public static void destroy(String playerId, AudioView audioView) {
+        final WrappedMediaPlayer player = sRegistry.get(playerId);
+        if (player != null && player.removeAudioView(audioView)
+                && player.audioViews.length == 0 && sRegistry.remove(player)) {
+            Metrics.PLAYERS_RELEASED.incrementAndGet();
         }
+    }
 
-        if (!views.isEmpty()) {
-            for (AudioView view : views) {
-                if (null != view) {
-                    view.onDeleteNotification(this);
-                }
+    static WrappedMediaPlayer[] players() {
+        return sRegistry.snapshot();
+    }
+
+    /**
+     * @return whether the view was not registered yet
+     */
+    private synchronized boolean addAudioView(AudioView audioView) {
+        final AudioView[] views = this.audioViews;
+        for (AudioView view : views) {
+            if (view == audioView) {
+                return false;
             }
         }
+        final AudioView[] updated = Arrays.copyOf(views, views.length + 1);
+        updated[views.length] = audioView;
+        this.audioViews = updated;
+        return true;
     }
 
-    private static final class UpdateCallback implements Runnable {
-        @Override
-        public void run() {
-            if (sMediaPlayers.isEmpty()) {
-                stopPositionUpdates();
-                return;
+    /**
+     * @return whether the view was registered
+     */
+    private synchronized boolean removeAudioView(AudioView audioView) {
+        final AudioView[] views = this.audioViews;
+        for (int i = 0; i < views.length; i++) {
+            if (views[i] == audioView) {
+                final AudioView[] updated = new AudioView[views.length - 1];
+                System.arraycopy(views, 0, updated, 0, i);
+                System.arraycopy(views, i + 1, updated, i, views.length - i - 1);
+                this.audioViews = updated;
+                return true;
             }
+        }
+        return false;
+    }
 
-            boolean nonePlaying = true;
-            for (WrappedMediaPlayer player : sMediaPlayers.values()) {
-                if (!player.isActuallyPlaying()) {
-                    continue;
-                }
-                nonePlaying = false;
-
-                Set<AudioView> views;
-                synchronized (sLock) {
-                    views = new HashSet<>(player.audioViews.keySet());
-                }
-
-                if (!views.isEmpty()) {
-                    final int duration = player.getDuration();
-                    final int time = player.getCurrentPosition();
-                    for (AudioView view : views) {
-                        if (null != view) {
-                            view.onProgressUpdate(player, duration, time);
-                        }
-                    }
-                }
-            }
+    public void onDeleteNotification() {
+        for (AudioView view : audioViews) {
+            view.onDeleteNotification(this);
+        }
+    }
 
-            if (nonePlaying) {
-                stopPositionUpdates();
-            } else {
-                sHandler.postDelayed(this, 200);
+    void reportProgress(ProgressScheduler scheduler) {
+        final AudioView[] views = audioViews;
+        if (views.length > 0) {
+            final int duration = getDuration();
+            final int time = getCurrentPosition();
+            this.lastPosition = time;
+            final boolean durationChanged = duration != this.reportedDuration;
+            this.reportedDuration = duration;
+            for (AudioView view : views) {
+                view.onProgressUpdate(this, duration, durationChanged, time);
+                scheduler.onViewUpdated(view);
             }
         }
     }
 
     private WrappedMediaPlayer(AudioView ref, String playerId) {
-        this.audioViews.put(ref, Boolean.TRUE);
+        this.audioViews = new AudioView[]{ref};
         this.playerId = playerId;
+        this.handler = AudioThreads.forPlayer(playerId);
+        this.progressScheduler = ProgressScheduler.forHandler(handler);
+        this.commands = new CommandPipeline(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        });
+    }
+
+    /**
+     * The audio thread every operation of this player must run on.
+     */
+    public Handler getHandler() {
+        return this.handler;
+    }
+
+    /**
+     * The pipeline the commands sent to this player go through, see {@link CommandPipeline}.
+     */
+    CommandPipeline getCommands() {
+        return this.commands;
     }
 
     public int getAudioViewCount() {
-        return audioViews.size();
+        return audioViews.length;
     }
 
     public void setUrl(String url) {
         if (!objectEquals(this.url, url)) {
-            // save current play speed in order to play new url with same speed
-            speed = currentSpeed;
-            this.url = url;
+            this.clearQueue();
+            this.changeUrl(url);
+        }
+    }
+
+    private void changeUrl(String url) {
+        this.url = url;
+        this.resetRetries();
+        this.loadSource();
+
+        this.notifySourceSet();
+    }
+
+    /**
+     * Prepares the current url again from scratch, on a new engine if released.
+     */
+    private void loadSource() {
+        // save current play speed in order to play new url with same speed
+        speed = currentSpeed;
+        this.reclaimed = false;
+        // a seek waiting for the previous source does not apply to this one
+        this.shouldSeekTo = -1;
+        this.startAfterSeek = false;
+        this.finishFade(false);
+        this.resetScrub();
+        // callbacks waiting for the previous source must not run for this one
+        this.runPreparedCallbacks(false);
+        this.bufferedPercent = -1;
+        this.prepareCount++;
+        if (this.mode != PlayerMode.MEDIA_PLAYER) {
+            if (this.released) {
+                this.sample = createSamplePlayer();
+                this.released = false;
+            }
+            this.prepared = false;
+        } else {
             if (this.released) {
                 this.player = createPlayer();
                 this.released = false;
-            } else if (this.prepared) {
+            } else {
+                // also cancels a prepare still in progress for the previous url
                 this.player.reset();
                 this.prepared = false;
             }
-
-            this.setSource(url);
-            this.player.setVolume((float) volume, (float) volume);
+            this.player.setVolume(outputVolume(), outputVolume());
             this.player.setLooping(this.releaseMode == ReleaseMode.LOOP);
-            this.player.prepareAsync();
+        }
+        this.requestPrepare();
+    }
 
-            Set<AudioView> views;
-            synchronized (sLock) {
-                views = new HashSet<>(audioViews.keySet());
+    /**
+     * Sets the priority of the prepares of this player, unless started by {@link #play()} which makes them
+     * interactive.
+     */
+    public void setPreparePriority(PrepareScheduler.Priority priority) {
+        this.preparePriority = priority;
+    }
+
+    private void requestPrepare() {
+        PrepareScheduler.request(sourcePrepare,
+                this.playing ? PrepareScheduler.Priority.INTERACTIVE : this.preparePriority, this.prepareCount);
+    }
+
+    /**
+     * Starts preparing the current source, once the {@link PrepareScheduler} allows it.
+     *
+     * @param generation the prepare count when it was requested; the source changed since if it differs
+     */
+    private void startPrepare(int generation) {
+        if (generation != this.prepareCount) {
+            // the slot went to the request of the newer source
+            return;
+        }
+        if (this.released) {
+            PrepareScheduler.done(sourcePrepare);
+            return;
+        }
+        this.prepareStartedAt = System.nanoTime();
+        try {
+            if (this.sample != null) {
+                // a sample that cannot be loaded (e.g. a remote one in LOW_LATENCY) throws right away
+                this.sample.setSource(url);
+            } else {
+                setSource(this.player, url);
+                this.player.prepareAsync();
             }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to prepare " + url, e);
+            this.handleFailure("Unable to prepare the source");
+        }
+    }
 
-            if (!views.isEmpty()) {
-                for (AudioView view : views) {
-                    if (null != view) {
-                        view.onSourceSet(this, url);
-                    }
+    /**
+     * Handles the failure of the current source: a remote one is prepared again after a while, up to
+     * {@link #MAX_RETRIES} times, others (or the last attempt) are reported and released. The views only see the
+     * buffering state while retrying.
+     */
+    private void handleFailure(String message) {
+        Metrics.ERRORS.incrementAndGet();
+        // whoever waits for this source does not wait for the retries
+        this.runPreparedCallbacks(false);
+        final boolean preparing = !this.prepared;
+        if (preparing) {
+            this.prepareStartedAt = 0;
+            PrepareScheduler.done(sourcePrepare);
+        } else {
+            this.retryPosition = this.lastPosition;
+            // the engine is in an error state, nothing may use it until prepared again
+            this.prepared = false;
+        }
+        if (isRemote(this.url) && this.retries < MAX_RETRIES) {
+            final int delay = RETRY_DELAY << this.retries;
+            this.retries++;
+            Log.w(TAG, message + ", retrying " + url + " in " + delay + " ms");
+            this.setBuffering(true);
+            handler.removeCallbacks(retryCallback);
+            handler.postDelayed(retryCallback, delay);
+            return;
+        }
+        Log.w(TAG, message + ", giving up on " + url);
+        for (AudioView view : audioViews) {
+            if (preparing) {
+                view.onPrepared(this, false);
+            }
+            view.onError(this, message);
+        }
+        final boolean wasPlaying = this.playing;
+        this.playing = false;
+        this.release();
+        if (wasPlaying) {
+            this.publishAnchor();
+        }
+    }
+
+    private void retrySource() {
+        if (this.released || this.url == null) {
+            return;
+        }
+        // the same source for the views: no onSourceSet, and the retry count and position are kept
+        this.loadSource();
+        if (this.retryPosition > 0) {
+            this.shouldSeekTo = this.retryPosition / 1000.0;
+        }
+    }
+
+    private void resetRetries() {
+        handler.removeCallbacks(retryCallback);
+        this.retries = 0;
+        this.retryPosition = 0;
+    }
+
+    static boolean isRemote(String url) {
+        return url != null && (url.startsWith("http:") || url.startsWith("https:"));
+    }
+
+    private void setBuffering(boolean buffering) {
+        if (this.buffering == buffering) {
+            return;
+        }
+        this.buffering = buffering;
+        for (AudioView view : audioViews) {
+            view.onBuffering(this, buffering);
+        }
+        if (!buffering && this.isActuallyPlaying()) {
+            // positions were not polled while stalled
+            progressScheduler.schedule(this);
+        }
+        this.publishAnchor();
+    }
+
+    public boolean isBuffering() {
+        return this.buffering;
+    }
+
+    private void notifySourceSet() {
+        this.reportedDuration = -1;
+        for (AudioView view : audioViews) {
+            view.onSourceSet(this, url);
+        }
+    }
+
+    /**
+     * Replaces the playlist and loads the item at {@code index}. While an item plays, the next one is prepared on a
+     * second player so the change is gapless; if the device cannot chain players, the two items are crossfaded over
+     * {@code crossfadeDuration} milliseconds instead.
+     */
+    public void setQueue(List<String> urls, int index, int crossfadeDuration) {
+        this.clearQueue();
+        this.queue.addAll(urls);
+        this.crossfadeDuration = crossfadeDuration;
+        if (index >= 0 && index < queue.size()) {
+            this.queueIndex = index;
+            this.changeUrl(queue.get(index));
+        }
+    }
+
+    public void enqueue(String url) {
+        this.queue.add(url);
+        if (this.queueIndex < 0) {
+            this.queueIndex = 0;
+            this.changeUrl(url);
+        } else if (this.prepared) {
+            this.prepareNext();
+        }
+    }
+
+    public void next() {
+        if (this.queueIndex + 1 >= this.queue.size()) {
+            return;
+        }
+        if (this.nextPrepared) {
+            if (this.playing && !this.crossfading) {
+                this.nextPlayer.start();
+            }
+            this.advanceQueue(false);
+        } else {
+            this.releaseNext();
+            this.queueIndex++;
+            this.changeUrl(queue.get(queueIndex));
+        }
+    }
+
+    public void previous() {
+        if (this.queueIndex <= 0) {
+            return;
+        }
+        this.releaseNext();
+        this.queueIndex--;
+        this.changeUrl(queue.get(queueIndex));
+    }
+
+    public int getQueueIndex() {
+        return this.queueIndex;
+    }
+
+    private void clearQueue() {
+        this.releaseNext();
+        this.queue.clear();
+        this.queueIndex = -1;
+    }
+
+    private void prepareNext() {
+        if (this.mode != PlayerMode.MEDIA_PLAYER || this.released || this.nextPlayer != null
+                || this.queueIndex + 1 >= this.queue.size()) {
+            return;
+        }
+        this.nextPlayer = createPlayer();
+        this.nextPlayer.setLooping(false);
+        this.nextPrepareCount++;
+        // needed when the current item ends, which is not now
+        PrepareScheduler.request(nextPrepare, PrepareScheduler.Priority.BACKGROUND, this.nextPrepareCount);
+    }
+
+    /**
+     * Starts preparing the next queue item, once the {@link PrepareScheduler} allows it.
+     *
+     * @param generation the count of the next prepares when it was requested; the next item changed since if it differs
+     */
+    private void startNextPrepare(int generation) {
+        if (generation != this.nextPrepareCount || this.nextPlayer == null) {
+            return;
+        }
+        this.nextPrepareStartedAt = System.nanoTime();
+        try {
+            setSource(this.nextPlayer, queue.get(queueIndex + 1));
+            this.nextPlayer.prepareAsync();
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to prepare next queue item", e);
+            this.releaseNext();
+        }
+    }
+
+    private void handleNextPrepared() {
+        Metrics.PREPARE.recordSince(this.nextPrepareStartedAt);
+        this.nextPrepareStartedAt = 0;
+        PrepareScheduler.done(nextPrepare);
+        this.onNextPrepared();
+    }
+
+    private void onNextPrepared() {
+        this.nextPrepared = true;
+        if (this.releaseMode == ReleaseMode.LOOP || !this.prepared) {
+            return;
+        }
+        try {
+            this.player.setNextMediaPlayer(this.nextPlayer);
+            this.nextAttached = true;
+        } catch (RuntimeException e) {
+            // some devices cannot chain players, fall back to a timed crossfade
+            this.nextAttached = false;
+            handler.removeCallbacks(crossfadeCallback);
+            handler.post(crossfadeCallback);
+        }
+    }
+
+    private void updateCrossfade() {
+        if (this.nextPlayer == null || !this.nextPrepared || this.nextAttached) {
+            return;
+        }
+        if (this.playing && this.prepared) {
+            if (!this.crossfading) {
+                final int remaining = this.player.getDuration() - this.player.getCurrentPosition();
+                if (remaining <= this.crossfadeDuration) {
+                    this.crossfading = true;
+                    this.nextPlayer.setVolume(0, 0);
+                    this.nextPlayer.start();
                 }
             }
+            if (this.crossfading) {
+                final float t = this.crossfadeDuration <= 0 ? 1
+                        : Math.min(1, this.nextPlayer.getCurrentPosition() / (float) this.crossfadeDuration);
+                this.player.setVolume(outputVolume() * (1 - t), outputVolume() * (1 - t));
+                this.nextPlayer.setVolume(outputVolume() * t, outputVolume() * t);
+                if (t >= 1) {
+                    this.player.stop();
+                    this.advanceQueue(true);
+                    return;
+                }
+            }
+        }
+        handler.postDelayed(crossfadeCallback, this.crossfading ? 20 : 100);
+    }
+
+    /**
+     * Makes the prepared next player the current one, keeping the same logical player for the views.
+     */
+    private void advanceQueue(boolean completed) {
+        handler.removeCallbacks(crossfadeCallback);
+        this.finishFade(false);
+        final MediaPlayer previous = this.player;
+        this.player = this.nextPlayer;
+        this.nextPlayer = null;
+        this.nextPrepared = false;
+        this.nextAttached = false;
+        this.crossfading = false;
+        sPlayerPool.recycle(previous);
+
+        this.queueIndex++;
+        this.url = queue.get(queueIndex);
+        this.prepared = true;
+        this.shouldSeekTo = -1;
+        this.player.setVolume(outputVolume(), outputVolume());
+        this.player.setLooping(this.releaseMode == ReleaseMode.LOOP);
+        if (this.playing && currentSpeed > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            this.player.setPlaybackParams(this.player.getPlaybackParams().setSpeed(currentSpeed));
+        }
+
+        if (completed) {
+            this.notifyComplete();
+        }
+        this.notifySourceSet();
+        this.publishAnchor();
+        this.prepareNext();
+    }
+
+    private void releaseNext() {
+        handler.removeCallbacks(crossfadeCallback);
+        PrepareScheduler.done(nextPrepare);
+        this.nextPrepareStartedAt = 0;
+        if (this.nextPlayer != null) {
+            sPlayerPool.recycle(this.nextPlayer);
+            this.nextPlayer = null;
         }
+        this.nextPrepared = false;
+        this.nextAttached = false;
+        this.crossfading = false;
     }
 
     public String getUrl() {
@@ -200,11 +747,10 @@ public class WrappedMediaPlayer implements MediaPlayer.OnPreparedListener,
     }
 
     public void setVolume(double volume) {
+        this.finishFade(false);
         if (this.volume != volume) {
             this.volume = volume;
-            if (!this.released) {
-                this.player.setVolume((float) volume, (float) volume);
-            }
+            this.applyVolume();
         }
     }
 
@@ -212,6 +758,164 @@ public class WrappedMediaPlayer implements MediaPlayer.OnPreparedListener,
         return this.volume;
     }
 
+    /**
+     * Ramps the gain applied on top of the volume linearly to {@code target}, over {@code duration} milliseconds.
+     */
+    void rampGain(float target, int duration) {
+        if (this.gainTo == target) {
+            return;
+        }
+        this.gainFrom = this.gain;
+        this.gainTo = target;
+        this.gainRampStart = SystemClock.uptimeMillis();
+        this.gainRampDuration = duration;
+        handler.removeCallbacks(gainCallback);
+        this.updateGain();
+    }
+
+    private void updateGain() {
+        final float t = this.gainRampDuration <= 0 ? 1
+                : Math.min(1, (SystemClock.uptimeMillis() - this.gainRampStart) / (float) this.gainRampDuration);
+        this.gain = this.gainFrom + (this.gainTo - this.gainFrom) * t;
+        this.applyVolume();
+        if (t < 1) {
+            handler.postDelayed(gainCallback, 20);
+        }
+    }
+
+    /**
+     * Changes the volume progressively, over {@code duration} milliseconds. The ramp is interrupted, jumping to its
+     * target, by another ramp, a volume change, or when the player pauses, stops or changes its source.
+     *
+     * @param listener called once, when the ramp ends or is interrupted
+     */
+    public void fadeTo(double volume, int duration, VolumeRamp.Curve curve, VolumeRamp.Listener listener) {
+        this.finishFade(false);
+        this.fade = new VolumeRamp((float) this.volume, (float) volume, SystemClock.uptimeMillis(), duration, curve);
+        this.fadeListener = listener;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && this.sample == null && this.isActuallyPlaying()
+                && !this.crossfading && duration > 0) {
+            this.startShaper();
+        }
+        this.updateFade();
+    }
+
+    @TargetApi(26)
+    private void startShaper() {
+        final float scale = Math.max(this.fade.from, this.fade.to);
+        if (scale <= 0) {
+            return;
+        }
+        final float[] times = new float[SHAPER_POINTS];
+        final float[] volumes = new float[SHAPER_POINTS];
+        this.fade.sample(times, volumes, scale);
+        this.fadeShaper = this.player.createVolumeShaper(new VolumeShaper.Configuration.Builder()
+                .setDuration(this.fade.duration)
+                .setCurve(times, volumes)
+                .setInterpolatorType(VolumeShaper.Configuration.INTERPOLATOR_TYPE_LINEAR)
+                .build());
+        this.fadeShaper.apply(VolumeShaper.Operation.PLAY);
+        // the shaper scales the volume down from there
+        this.fadeScale = scale;
+        this.volume = this.fade.to;
+        this.applyVolume();
+    }
+
+    private void updateFade() {
+        if (this.fade == null) {
+            return;
+        }
+        final long now = SystemClock.uptimeMillis();
+        if (this.fade.isDoneAt(now)) {
+            this.finishFade(true);
+        } else if (this.fadeShaper != null) {
+            handler.postDelayed(fadeCallback, this.fade.start + this.fade.duration - now);
+        } else {
+            this.volume = this.fade.valueAt(now);
+            this.applyVolume();
+            handler.postDelayed(fadeCallback, FADE_STEP);
+        }
+    }
+
+    @TargetApi(26)
+    private void finishFade(boolean completed) {
+        if (this.fade == null) {
+            return;
+        }
+        handler.removeCallbacks(fadeCallback);
+        final VolumeRamp.Listener listener = this.fadeListener;
+        this.volume = this.fade.to;
+        this.fade = null;
+        this.fadeListener = null;
+        this.fadeScale = 0;
+        this.applyVolume();
+        if (this.fadeShaper != null) {
+            // the player volume is the target already, the shaper would scale it down until closed
+            this.fadeShaper.close();
+            this.fadeShaper = null;
+        }
+        if (listener != null) {
+            listener.onRampDone(completed);
+        }
+    }
+
+    private float outputVolume() {
+        return (this.fadeScale > 0 ? this.fadeScale : (float) this.volume) * this.gain;
+    }
+
+    private void applyVolume() {
+        if (this.released || this.crossfading) {
+            // a crossfade applies the volume on each of its steps
+            return;
+        }
+        if (this.sample != null) {
+            this.sample.setVolume(outputVolume());
+        } else {
+            this.player.setVolume(outputVolume(), outputVolume());
+        }
+    }
+
+    /**
+     * Sets the {@link AudioAttributes} usage and content type of the MediaPlayer engine (API 21+); the sample engines
+     * always play as game sounds. The current source is released and will be prepared again on the next
+     * {@link #play()}.
+     */
+    public void setAudioAttributes(int usage, int contentType) {
+        if (this.usage != usage || this.contentType != contentType) {
+            this.usage = usage;
+            this.contentType = contentType;
+            if (this.mode == PlayerMode.MEDIA_PLAYER) {
+                this.release();
+            }
+        }
+    }
+
+    /**
+     * The {@link AudioAttributes} usage the player plays with: the one set for the MediaPlayer engine, or the fixed
+     * one of the other engines.
+     */
+    int getUsage() {
+        switch (this.mode) {
+            case MEDIA_PLAYER:
+                return this.usage;
+            case TIME_STRETCH:
+                return AudioAttributes.USAGE_MEDIA;
+            default:
+                return AudioAttributes.USAGE_GAME;
+        }
+    }
+
+    int getContentType() {
+        switch (this.mode) {
+            case MEDIA_PLAYER:
+                return this.contentType;
+            case TIME_STRETCH:
+                return AudioAttributes.CONTENT_TYPE_MUSIC;
+            default:
+                return AudioAttributes.CONTENT_TYPE_SONIFICATION;
+        }
+    }
+
     public boolean isPlaying() {
         return this.playing;
     }
@@ -220,31 +924,154 @@ public class WrappedMediaPlayer implements MediaPlayer.OnPreparedListener,
         return this.playing && this.prepared;
     }
 
+    @Override
+    public boolean isReclaimed() {
+        return this.reclaimed;
+    }
+
+    @Override
+    public long getLastUsedAt() {
+        return this.lastUsedAt;
+    }
+
+    /**
+     * Prepares the current source again if it was released, without starting it.
+     */
+    public void prepare() {
+        if (this.released) {
+            this.released = false;
+            this.reclaimed = false;
+            this.prepareCount++;
+            if (this.mode != PlayerMode.MEDIA_PLAYER) {
+                this.sample = createSamplePlayer();
+            } else {
+                this.player = createPlayer();
+            }
+            this.requestPrepare();
+        }
+    }
+
+    /**
+     * Releases the native resources of a player that was removed, on its own thread.
+     *
+     * @param error sent to the views first when the player was not removed on their behalf, null otherwise
+     */
+    private void dispose(final String error) {
+        Metrics.PLAYERS_RELEASED.incrementAndGet();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (error != null) {
+                    for (AudioView view : audioViews) {
+                        view.onError(WrappedMediaPlayer.this, error);
+                    }
+                }
+                release();
+                clearQueue();
+            }
+        });
+    }
+
+    /**
+     * Describes the resources held by the player. Read from outside of its audio thread, so only approximate.
+     */
+    Map<String, Object> describeResources() {
+        final Map<String, Object> resources = new HashMap<>();
+        resources.put("playerId", playerId);
+        resources.put("mode", mode.name());
+        resources.put("released", released);
+        resources.put("playing", playing);
+        resources.put("nativePlayers", (player != null ? 1 : 0) + (nextPlayer != null ? 1 : 0));
+        resources.put("idleTime", SystemClock.uptimeMillis() - lastUsedAt);
+        resources.put("prepares", prepareCount);
+        resources.put("cancelledCommands", commands.getCancelledCount());
+        resources.put("preparePriority", preparePriority.name());
+        resources.put("buffering", buffering);
+        resources.put("retries", retries);
+        return resources;
+    }
+
+    /**
+     * Marks the player as used now, postponing its reclamation.
+     */
+    public void touch() {
+        this.lastUsedAt = SystemClock.uptimeMillis();
+    }
+
+    boolean isIdleFor(long now, long idleFor) {
+        return !this.released && !this.playing && now - this.lastUsedAt >= idleFor;
+    }
+
+    /**
+     * Releases the native resources if the player is still idle, remembering the state needed to prepare it again
+     * transparently: the position, and the speed (the source, volume and looping are kept anyway).
+     */
+    void reclaim(long idleFor) {
+        if (!isIdleFor(SystemClock.uptimeMillis(), idleFor)) {
+            return;
+        }
+        if (this.prepared) {
+            this.shouldSeekTo = getCurrentPosition() / 1000.0;
+        }
+        this.speed = this.currentSpeed;
+        this.release();
+        this.reclaimed = true;
+        for (AudioView view : audioViews) {
+            view.onReclaimed(this);
+        }
+    }
+
+    public boolean isPrepared() {
+        return this.prepared;
+    }
+
+    /**
+     * Calls back once the current source is prepared, right away if it already is, or with false if it fails or the
+     * player is released first.
+     */
+    public void whenPrepared(PreparedCallback callback) {
+        if (this.prepared) {
+            callback.onPrepared(true);
+        } else if (this.released) {
+            callback.onPrepared(false);
+        } else {
+            this.preparedCallbacks.add(callback);
+        }
+    }
+
+    private void runPreparedCallbacks(boolean success) {
+        if (this.preparedCallbacks.isEmpty()) {
+            return;
+        }
+        final List<PreparedCallback> callbacks = new ArrayList<>(this.preparedCallbacks);
+        this.preparedCallbacks.clear();
+        for (PreparedCallback callback : callbacks) {
+            callback.onPrepared(success);
+        }
+    }
+
     public void play() {
         if (!this.playing) {
             this.playing = true;
+            this.playRequestedAt = System.nanoTime();
             if (this.released) {
-                this.released = false;
-                this.player = createPlayer();
-                this.setSource(url);
-                this.player.prepareAsync();
+                this.prepare();
             } else if (this.prepared) {
-                this.player.start();
+                this.startEngine();
 
-                Set<AudioView> views;
-                synchronized (sLock) {
-                    views = new HashSet<>(audioViews.keySet());
-                }
-
-                if (!views.isEmpty()) {
-                    for (AudioView view : views) {
-                        if (null != view) {
-                            view.onStart(this);
-                        }
-                    }
-                    startPositionUpdates();
+                for (AudioView view : audioViews) {
+                    view.onStart(this);
                 }
+                this.publishAnchor();
+                progressScheduler.schedule(this);
+            } else {
+                // needed now, so it goes before the waiting preloads
+                PrepareScheduler.promote(sourcePrepare);
             }
+        } else if (this.sample != null && this.prepared) {
+            // low latency samples overlap, decoded ones restart
+            this.sample.start();
+            this.publishAnchor();
         }
     }
 
@@ -252,105 +1079,226 @@ public class WrappedMediaPlayer implements MediaPlayer.OnPreparedListener,
         if (this.released) {
             return;
         }
+        this.finishFade(false);
 
         if (releaseMode != ReleaseMode.RELEASE) {
             if (this.playing) {
                 this.playing = false;
-                this.player.pause();
-                this.player.seekTo(0);
+                if (this.sample != null) {
+                    this.sample.stop();
+                } else {
+                    if (!this.startAfterSeek) {
+                        this.player.pause();
+                    }
+                    this.startAfterSeek = false;
+                    this.player.seekTo(0);
+                }
             }
         } else {
             this.release();
         }
 
-        Set<AudioView> views;
-        synchronized (sLock) {
-            views = new HashSet<>(audioViews.keySet());
-        }
-
-        if (!views.isEmpty()) {
-            for (AudioView view : views) {
-                if (null != view) {
-                    view.onStop(this);
-                }
-            }
+        for (AudioView view : audioViews) {
+            view.onStop(this);
         }
+        this.publishAnchor();
     }
 
     public void release() {
         if (this.released) {
             return;
         }
+        this.finishFade(false);
 
         if (this.playing) {
-            this.player.stop();
-
-            Set<AudioView> views;
-            synchronized (sLock) {
-                views = new HashSet<>(audioViews.keySet());
+            if (this.sample != null) {
+                this.sample.stop();
+            } else {
+                this.player.stop();
             }
 
-            if (!views.isEmpty()) {
-                for (AudioView view : views) {
-                    if (null != view) {
-                        view.onStop(this);
-                    }
-                }
+            for (AudioView view : audioViews) {
+                view.onStop(this);
             }
         }
-        this.player.reset();
-        this.player.release();
-        this.player = null;
+        this.releaseNext();
+        if (this.sample != null) {
+            this.sample.release();
+            this.sample = null;
+        } else {
+            sPlayerPool.recycle(this.player);
+            this.player = null;
+        }
 
         this.prepared = false;
         this.released = true;
-        this.playing = false;
+        this.startAfterSeek = false;
+        this.resetScrub();
+        this.resetRetries();
+        this.setBuffering(false);
+        PrepareScheduler.done(sourcePrepare);
+        this.runPreparedCallbacks(false);
+        this.prepareStartedAt = 0;
+        this.seekStartedAt = 0;
+        if (this.playing) {
+            this.playing = false;
+            this.publishAnchor();
+        }
     }
 
     public void pause() {
+        this.finishFade(false);
         if (this.playing) {
             this.playing = false;
-            this.player.pause();
-
-            Set<AudioView> views;
-            synchronized (sLock) {
-                views = new HashSet<>(audioViews.keySet());
+            if (this.sample != null) {
+                this.sample.pause();
+            } else if (this.startAfterSeek) {
+                // not started yet, pausing would be an invalid state
+                this.startAfterSeek = false;
+            } else {
+                this.player.pause();
+                if (this.crossfading) {
+                    this.nextPlayer.pause();
+                }
             }
 
-            if (!views.isEmpty()) {
-                for (AudioView view : views) {
-                    if (null != view) {
-                        view.onPause(this);
-                    }
-                }
+            for (AudioView view : audioViews) {
+                view.onPause(this);
             }
+            this.publishAnchor();
         }
     }
 
-    private void setSource(String url) {
+    private static void setSource(MediaPlayer player, String url) {
+        final long start = System.nanoTime();
+        Metrics.beginSection("setDataSource");
         try {
-            this.player.setDataSource(url);
+            setDataSource(player, url);
         } catch (IOException ex) {
             throw new RuntimeException("Unable to access resource", ex);
+        } finally {
+            Metrics.endSection();
+            Metrics.SET_DATA_SOURCE.recordSince(start);
+        }
+    }
+
+    private static void setDataSource(MediaPlayer player, String url) throws IOException {
+        if (AssetSource.isAsset(url)) {
+            AssetSource.setDataSource(player, url);
+        } else if (BytesSource.isBytes(url)) {
+            BytesSource.setDataSource(player, url);
+        } else {
+            player.setDataSource(CacheProxy.dataSourceOf(url));
         }
     }
 
     // seek operations cannot be called until after
     // the player is ready.
     public void seek(double position) {
-        if (this.prepared) {
-            this.player.seekTo((int) (position * 1000));
+        if (this.scrubbing && this.prepared) {
+            // plain seeks sent during a scrub gesture are fast seeks too
+            this.scrubTo((int) (position * 1000));
+        } else if (this.prepared) {
+            seekEngine((int) (position * 1000));
+            this.publishAnchor();
         } else {
             this.shouldSeekTo = position;
+            if (this.reclaimed) {
+                this.prepare();
+            }
+        }
+    }
+
+    /**
+     * Starts a scrub gesture: until {@link #endScrub}, the positions given to {@link #scrubTo} (or {@link #seek}) are
+     * sought at most every {@link #SCRUB_SEEK_INTERVAL} milliseconds, one at a time, to the closest sync frame on
+     * API 26+, and their completions are not reported.
+     */
+    public void beginScrub() {
+        this.scrubbing = true;
+    }
+
+    /**
+     * @param position in milliseconds
+     */
+    public void scrubTo(int position) {
+        this.scrubbing = true;
+        this.scrubPosition = position;
+        if (!this.prepared) {
+            this.seek(position / 1000.0);
+            return;
+        }
+        this.scrubTarget = position;
+        this.seekScrubTarget();
+    }
+
+    /**
+     * Ends the scrub gesture with an exact seek, reported as usual.
+     *
+     * @param position in milliseconds, or -1 to end at the last position given to {@link #scrubTo}
+     */
+    public void endScrub(int position) {
+        final int target = position >= 0 ? position : this.scrubPosition;
+        final boolean seeking = this.scrubSeeking;
+        this.resetScrub();
+        if (target < 0) {
+            return;
+        }
+        if (!this.prepared) {
+            this.seek(target / 1000.0);
+        } else if (seeking) {
+            // seeking again before the fast seek completes would report its completion as the exact one
+            this.scrubSeeking = true;
+            this.exactSeekTarget = target;
+        } else {
+            this.seekEngine(target);
+            this.publishAnchor();
+        }
+    }
+
+    private void seekScrubTarget() {
+        if (this.scrubTarget < 0 || this.scrubSeeking || !this.prepared) {
+            // the seek in flight seeks the target once completed
+            return;
+        }
+        final long now = SystemClock.uptimeMillis();
+        final long wait = this.lastScrubSeekAt + SCRUB_SEEK_INTERVAL - now;
+        if (wait > 0) {
+            handler.removeCallbacks(scrubCallback);
+            handler.postDelayed(scrubCallback, wait);
+            return;
+        }
+        final int position = this.scrubTarget;
+        this.scrubTarget = -1;
+        this.lastScrubSeekAt = now;
+        if (this.sample != null) {
+            // samples seek synchronously
+            this.sample.seekTo(position);
+            return;
         }
+        this.scrubSeeking = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            this.player.seekTo((long) position, MediaPlayer.SEEK_CLOSEST_SYNC);
+        } else {
+            this.player.seekTo(position);
+        }
+    }
+
+    private void resetScrub() {
+        handler.removeCallbacks(scrubCallback);
+        this.scrubbing = false;
+        this.scrubPosition = -1;
+        this.scrubTarget = -1;
+        this.scrubSeeking = false;
+        this.exactSeekTarget = -1;
     }
 
     public int getDuration() {
-        return this.player.getDuration();
+        return this.sample != null ? this.sample.getDuration() : this.player.getDuration();
     }
 
     public int getCurrentPosition() {
-        return this.player.getCurrentPosition();
+        return this.sample != null ? this.sample.getCurrentPosition() : this.player.getCurrentPosition();
     }
 
     public String getPlayerId() {
@@ -361,7 +1309,11 @@ public class WrappedMediaPlayer implements MediaPlayer.OnPreparedListener,
         if (this.releaseMode != releaseMode) {
             this.releaseMode = releaseMode;
             if (!this.released) {
-                this.player.setLooping(releaseMode == ReleaseMode.LOOP);
+                if (this.sample != null) {
+                    this.sample.setLooping(releaseMode == ReleaseMode.LOOP);
+                } else {
+                    this.player.setLooping(releaseMode == ReleaseMode.LOOP);
+                }
             }
         }
     }
@@ -370,26 +1322,50 @@ public class WrappedMediaPlayer implements MediaPlayer.OnPreparedListener,
         return this.releaseMode;
     }
 
+    /**
+     * Sets how often, in milliseconds, the position is reported while playing; 0 disables the updates.
+     */
+    public void setProgressInterval(int progressInterval) {
+        this.progressInterval = progressInterval;
+        if (progressInterval > 0 && this.isActuallyPlaying()) {
+            progressScheduler.schedule(this);
+        }
+    }
+
+    public int getProgressInterval() {
+        return this.progressInterval;
+    }
+
+    /**
+     * Switches the playback engine. The current source is released and will be prepared again with the new engine
+     * on the next {@link #play()}.
+     */
+    public void setMode(PlayerMode mode) {
+        if (this.mode != mode) {
+            this.release();
+            this.mode = mode;
+        }
+    }
+
+    public PlayerMode getMode() {
+        return this.mode;
+    }
+
     @TargetApi(23)
     public void setSpeed(float speed) {
         currentSpeed = speed;
+        if (sample != null) {
+            sample.setRate(speed);
+            publishAnchor();
+            return;
+        }
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            if (prepared) {
-                if (!isActuallyPlaying()) {
-                    playing = true;
-                    Set<AudioView> views = new HashSet<>(audioViews.keySet());
-                    if (!views.isEmpty()) {
-                        for (AudioView view : views) {
-                            if (null != view) {
-                                view.onStart(this);
-                            }
-                            startPositionUpdates();
-                        }
-                    }
-                }
+            if (prepared && isActuallyPlaying()) {
                 player.setPlaybackParams(player.getPlaybackParams().setSpeed(speed));
                 this.speed = -1;
+                publishAnchor();
             } else {
+                // setting the speed would start the MediaPlayer, so it is applied when started
                 this.speed = speed;
             }
         }
@@ -397,65 +1373,276 @@ public class WrappedMediaPlayer implements MediaPlayer.OnPreparedListener,
 
     @Override
     public void onPrepared(final MediaPlayer mediaPlayer) {
+        if (!AudioThreads.isCurrent(handler)) {
+            // pooled or shared players may report on the thread that created them
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onPrepared(mediaPlayer);
+                }
+            });
+            return;
+        }
+        if (mediaPlayer == this.nextPlayer) {
+            this.handleNextPrepared();
+            return;
+        }
+        this.handlePrepared();
+    }
+
+    @Override
+    public void onSampleLoaded(final SamplePlayer sample, final boolean success) {
+        if (!AudioThreads.isCurrent(handler)) {
+            // pooled or shared players may report on the thread that created them
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onSampleLoaded(sample, success);
+                }
+            });
+            return;
+        }
+        if (success) {
+            sample.setVolume(outputVolume());
+            sample.setLooping(this.releaseMode == ReleaseMode.LOOP);
+            this.handlePrepared();
+        } else {
+            this.handleFailure("Unable to load the sample");
+        }
+    }
+
+    private void handlePrepared() {
         this.prepared = true;
+        Metrics.PREPARE.recordSince(this.prepareStartedAt);
+        this.prepareStartedAt = 0;
+        PrepareScheduler.done(sourcePrepare);
+        this.setBuffering(false);
+        for (AudioView view : audioViews) {
+            view.onPrepared(this, true);
+        }
 
-        if (this.speed > 0) {
+        // setting the speed starts a MediaPlayer, so it gets it in startEngine()
+        if (this.speed > 0 && this.sample != null) {
             setSpeed(this.speed);
         }
+        final boolean seeking = this.shouldSeekTo >= 0;
+        if (seeking) {
+            seekEngine((int) (this.shouldSeekTo * 1000));
+            this.shouldSeekTo = -1;
+        }
         if (this.playing) {
-            this.player.start();
+            if (seeking && this.sample == null) {
+                // the MediaPlayer seeks asynchronously, started now it would play from 0 first
+                this.startAfterSeek = true;
+            } else {
+                this.startPlayback();
+            }
+        }
+        if (this.nextPrepared) {
+            // the current item was prepared again (e.g. after a release), chain the next one again
+            this.onNextPrepared();
+        } else {
+            this.prepareNext();
+        }
+        this.runPreparedCallbacks(true);
+    }
 
-            Set<AudioView> views;
-            synchronized (sLock) {
-                views = new HashSet<>(audioViews.keySet());
+    @Override
+    public void onSeekComplete(final MediaPlayer mp) {
+        if (!AudioThreads.isCurrent(handler)) {
+            // pooled or shared players may report on the thread that created them
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onSeekComplete(mp);
+                }
+            });
+            return;
+        }
+        if (mp == this.nextPlayer) {
+            return;
+        }
+        Metrics.SEEK.recordSince(this.seekStartedAt);
+        this.seekStartedAt = 0;
+        if (this.startAfterSeek) {
+            this.startAfterSeek = false;
+            if (this.isActuallyPlaying()) {
+                this.startPlayback();
+            }
+        }
+        if (this.scrubSeeking) {
+            // a fast seek of a scrub, not reported
+            this.scrubSeeking = false;
+            if (this.exactSeekTarget >= 0) {
+                final int target = this.exactSeekTarget;
+                this.exactSeekTarget = -1;
+                this.seekEngine(target);
+                this.publishAnchor();
+            } else {
+                this.seekScrubTarget();
             }
+            return;
+        }
+        for (AudioView view : audioViews) {
+            view.onSeekComplete(this);
+        }
+        this.publishAnchor();
+    }
 
-            if (!views.isEmpty()) {
-                for (AudioView view : views) {
-                    if (null != view) {
-                        view.onStart(this);
-                    }
+    @Override
+    public boolean onError(final MediaPlayer mediaPlayer, final int what, final int extra) {
+        if (AudioThreads.isCurrent(handler)) {
+            handleError(mediaPlayer, what, extra);
+        } else {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    handleError(mediaPlayer, what, extra);
                 }
-                startPositionUpdates();
+            });
+        }
+        // handled here, so it is not reported as a completion as well
+        return true;
+    }
+
+    private void handleError(MediaPlayer mediaPlayer, int what, int extra) {
+        if (mediaPlayer == this.nextPlayer) {
+            // the next item is loaded again when the current one completes
+            Log.w(TAG, "Unable to prepare the next queue item (" + what + ", " + extra + ")");
+            if (this.nextAttached) {
+                this.player.setNextMediaPlayer(null);
             }
+            this.releaseNext();
+            this.applyVolume();
+            return;
         }
-        if (this.shouldSeekTo >= 0) {
-            this.player.seekTo((int) (this.shouldSeekTo * 1000));
-            this.shouldSeekTo = -1;
+        if (mediaPlayer == this.player && !this.released) {
+            this.handleFailure("MediaPlayer error (" + what + ", " + extra + ")");
         }
     }
 
     @Override
-    public void onSeekComplete(MediaPlayer mp) {
-        Set<AudioView> views;
-        synchronized (sLock) {
-            views = new HashSet<>(audioViews.keySet());
+    public boolean onInfo(final MediaPlayer mediaPlayer, final int what, int extra) {
+        if (what != MediaPlayer.MEDIA_INFO_BUFFERING_START && what != MediaPlayer.MEDIA_INFO_BUFFERING_END) {
+            return false;
         }
-        if (!views.isEmpty()) {
-            for (AudioView view : views) {
-                if (null != view) {
-                    view.onSeekComplete(this);
+        if (!AudioThreads.isCurrent(handler)) {
+            // pooled or shared players may report on the thread that created them
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onInfo(mediaPlayer, what, 0);
                 }
+            });
+            return true;
+        }
+        if (mediaPlayer == this.player) {
+            this.setBuffering(what == MediaPlayer.MEDIA_INFO_BUFFERING_START);
+        }
+        return true;
+    }
+
+    @Override
+    public void onBufferingUpdate(final MediaPlayer mediaPlayer, final int percent) {
+        if (!AudioThreads.isCurrent(handler)) {
+            // pooled or shared players may report on the thread that created them
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onBufferingUpdate(mediaPlayer, percent);
+                }
+            });
+            return;
+        }
+        // reported about every second, mostly unchanged
+        if (mediaPlayer == this.player && percent != this.bufferedPercent) {
+            this.bufferedPercent = percent;
+            for (AudioView view : audioViews) {
+                view.onBufferingUpdate(this, percent);
             }
         }
     }
 
     @Override
     public void onCompletion(final MediaPlayer mediaPlayer) {
+        if (!AudioThreads.isCurrent(handler)) {
+            // pooled or shared players may report on the thread that created them
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onCompletion(mediaPlayer);
+                }
+            });
+            return;
+        }
+        if (mediaPlayer != this.player) {
+            return;
+        }
+        if (this.nextPrepared && releaseMode != ReleaseMode.LOOP) {
+            // a chained next player has already started by itself
+            if (!this.nextAttached && !this.crossfading) {
+                this.nextPlayer.start();
+            }
+            this.advanceQueue(true);
+            return;
+        }
+        this.handleCompletion();
+    }
+
+    @Override
+    public void onSampleCompleted(final SamplePlayer sample) {
+        if (!AudioThreads.isCurrent(handler)) {
+            // pooled or shared players may report on the thread that created them
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onSampleCompleted(sample);
+                }
+            });
+            return;
+        }
+        this.handleCompletion();
+    }
+
+    private void handleCompletion() {
+        this.touch();
+        if (releaseMode != ReleaseMode.LOOP && this.queueIndex + 1 < this.queue.size()) {
+            // the next item was not ready in time, load it now and keep playing
+            this.notifyComplete();
+            this.queueIndex++;
+            this.changeUrl(queue.get(queueIndex));
+            return;
+        }
         if (releaseMode != ReleaseMode.LOOP) {
             this.stop();
         }
+        this.notifyComplete();
+    }
 
-        Set<AudioView> views;
-        synchronized (sLock) {
-            views = new HashSet<>(audioViews.keySet());
+    private void notifyComplete() {
+        for (AudioView view : audioViews) {
+            view.onComplete(this);
         }
-        if (!views.isEmpty()) {
-            for (AudioView view : views) {
-                if (null != view) {
-                    view.onComplete(this);
-                }
-            }
+    }
+
+    /**
+     * Tells the views where playback stands and how fast it moves; they extrapolate the position from there until the
+     * next anchor, the periodic progress updates only correcting the drift.
+     */
+    private void publishAnchor() {
+        final AudioView[] views = audioViews;
+        if (views.length == 0) {
+            return;
+        }
+        final int position = this.prepared ? getCurrentPosition() : 0;
+        if (this.prepared) {
+            this.lastPosition = position;
+        }
+        final long timestamp = SystemClock.uptimeMillis();
+        final float speed = this.isActuallyPlaying() && !this.buffering
+                ? (this.currentSpeed > 0 ? this.currentSpeed : 1.0f) : 0;
+        for (AudioView view : views) {
+            view.onAnchor(this, position, timestamp, speed);
         }
     }
 
@@ -463,8 +1650,8 @@ public class WrappedMediaPlayer implements MediaPlayer.OnPreparedListener,
     private void setAttributes(MediaPlayer player) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             player.setAudioAttributes(new AudioAttributes.Builder()
-                    .setUsage(AudioAttributes.USAGE_MEDIA)
-                    .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                    .setUsage(this.usage)
+                    .setContentType(this.contentType)
                     .build());
         } else {
             // This method is deprecated but must be used on older devices
@@ -473,16 +1660,66 @@ public class WrappedMediaPlayer implements MediaPlayer.OnPreparedListener,
     }
 
     private MediaPlayer createPlayer() {
-        MediaPlayer player = new MediaPlayer();
+        MediaPlayer player = sPlayerPool.acquire();
         player.setOnPreparedListener(this);
         player.setOnCompletionListener(this);
         player.setOnSeekCompleteListener(this);
+        player.setOnErrorListener(this);
+        player.setOnInfoListener(this);
+        player.setOnBufferingUpdateListener(this);
         setAttributes(player);
-        player.setVolume((float) volume, (float) volume);
+        player.setVolume(outputVolume(), outputVolume());
         player.setLooping(this.releaseMode == ReleaseMode.LOOP);
         return player;
     }
 
+    private SamplePlayer createSamplePlayer() {
+        if (this.mode == PlayerMode.PCM_CACHE) {
+            return new PcmPlayer(this, handler);
+        }
+        if (this.mode == PlayerMode.MIXER) {
+            return new MixerPlayer(this, handler);
+        }
+        if (this.mode == PlayerMode.TIME_STRETCH) {
+            return new StretchPlayer(this, handler);
+        }
+        return new SoundPoolPlayer(this, handler);
+    }
+
+    private void startPlayback() {
+        this.startEngine();
+        for (AudioView view : audioViews) {
+            view.onStart(this);
+        }
+        progressScheduler.schedule(this);
+        this.publishAnchor();
+    }
+
+    private void startEngine() {
+        if (this.speed > 0 && this.sample == null) {
+            setSpeed(this.speed);
+        }
+        if (this.sample != null) {
+            this.sample.start();
+        } else {
+            this.player.start();
+            if (this.crossfading) {
+                this.nextPlayer.start();
+            }
+        }
+        Metrics.START.recordSince(this.playRequestedAt);
+        this.playRequestedAt = 0;
+    }
+
+    private void seekEngine(int position) {
+        if (this.sample != null) {
+            this.sample.seekTo(position);
+        } else {
+            this.seekStartedAt = System.nanoTime();
+            this.player.seekTo(position);
+        }
+    }
+
     private static boolean objectEquals(Object o1, Object o2) {
         return o1 == null && o2 == null || o1 != null && o1.equals(o2);
     }
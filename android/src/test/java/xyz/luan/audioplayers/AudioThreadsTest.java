@@ -0,0 +1,151 @@
+package xyz.luan.audioplayers;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AudioThreadsTest {
+    private static final int STRIPES = 3;
+    private static final int PLAYERS = 12;
+    private static final int SENDERS = 4;
+    private static final int COMMANDS = 200;
+
+    private final List<ExecutorService> threads = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (ExecutorService thread : threads) {
+            thread.shutdownNow();
+        }
+    }
+
+    @Test
+    public void aPlayerAlwaysGetsTheSameThread() {
+        for (int i = 0; i < PLAYERS; i++) {
+            final String playerId = "player-" + i;
+            final int stripe = AudioThreads.stripeOf(playerId, STRIPES);
+            assertTrue(stripe >= 0 && stripe < STRIPES);
+            assertEquals(stripe, AudioThreads.stripeOf(new String(playerId), STRIPES));
+        }
+        assertEquals(0, AudioThreads.stripeOf(null, STRIPES));
+        assertEquals(0, AudioThreads.stripeOf("any", 1));
+    }
+
+    @Test
+    public void playersAreSpreadOverTheThreads() {
+        final int[] counts = new int[STRIPES];
+        for (int i = 0; i < 300; i++) {
+            counts[AudioThreads.stripeOf(UUID.randomUUID().toString(), STRIPES)]++;
+        }
+        for (int count : counts) {
+            assertTrue(count > 50);
+        }
+    }
+
+    /**
+     * Commands sent from several threads at once run one at a time, in the order each sender sent them, on the audio
+     * thread of their player only.
+     */
+    @Test
+    public void commandsAreConfinedToTheThreadOfTheirPlayer() throws InterruptedException {
+        final Thread[] audioThreads = new Thread[STRIPES];
+        final CountDownLatch started = new CountDownLatch(STRIPES);
+        final ExecutorService[] executors = new ExecutorService[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            final int index = i;
+            executors[i] = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    audioThreads[index] = new Thread(runnable, "audioplayers-" + index);
+                    started.countDown();
+                    return audioThreads[index];
+                }
+            });
+            threads.add(executors[i]);
+        }
+        final Map<String, CommandPipeline> pipelines = new HashMap<>();
+        final Map<String, List<String>> ran = new HashMap<>();
+        for (int i = 0; i < PLAYERS; i++) {
+            final String playerId = "player-" + i;
+            pipelines.put(playerId, new CommandPipeline(executors[AudioThreads.stripeOf(playerId, STRIPES)]));
+            ran.put(playerId, Collections.synchronizedList(new ArrayList<String>()));
+        }
+
+        final AtomicInteger misplaced = new AtomicInteger();
+        final AtomicInteger overlapping = new AtomicInteger();
+        final Map<String, AtomicInteger> running = new HashMap<>();
+        for (String playerId : pipelines.keySet()) {
+            running.put(playerId, new AtomicInteger());
+        }
+        final CountDownLatch done = new CountDownLatch(SENDERS * PLAYERS * COMMANDS);
+        final List<Thread> senders = new ArrayList<>();
+        for (int s = 0; s < SENDERS; s++) {
+            final int sender = s;
+            senders.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int c = 0; c < COMMANDS; c++) {
+                        for (final String playerId : pipelines.keySet()) {
+                            final String name = sender + ":" + c;
+                            pipelines.get(playerId).submit("setVolume", null, new CommandPipeline.Task() {
+                                @Override
+                                public void run() {
+                                    final Thread expected = audioThreads[AudioThreads.stripeOf(playerId, STRIPES)];
+                                    if (Thread.currentThread() != expected) {
+                                        misplaced.incrementAndGet();
+                                    }
+                                    if (running.get(playerId).incrementAndGet() != 1) {
+                                        overlapping.incrementAndGet();
+                                    }
+                                    ran.get(playerId).add(name);
+                                    running.get(playerId).decrementAndGet();
+                                    done.countDown();
+                                }
+
+                                @Override
+                                public void cancel() {
+                                    done.countDown();
+                                }
+                            });
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : senders) {
+            thread.start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        assertEquals(0, misplaced.get());
+        assertEquals(0, overlapping.get());
+        for (List<String> commands : ran.values()) {
+            assertEquals(SENDERS * COMMANDS, commands.size());
+            final int[] last = new int[SENDERS];
+            Arrays.fill(last, -1);
+            for (String name : commands) {
+                final int sender = Integer.parseInt(name.substring(0, name.indexOf(':')));
+                final int command = Integer.parseInt(name.substring(name.indexOf(':') + 1));
+                assertTrue(command > last[sender]);
+                last[sender] = command;
+            }
+        }
+    }
+}
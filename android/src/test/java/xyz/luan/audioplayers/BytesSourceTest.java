@@ -0,0 +1,145 @@
+package xyz.luan.audioplayers;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BytesSourceTest {
+    private final BytesSource.Buffer buffer = new BytesSource.Buffer("bytes://player/0");
+
+    private static byte[] bytes(int from, int count) {
+        final byte[] bytes = new byte[count];
+        for (int i = 0; i < count; i++) {
+            bytes[i] = (byte) (from + i);
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads on another thread, which is left running until the read returns.
+     */
+    private Thread readLater(final long position, final byte[] into, final AtomicInteger result) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    result.set(buffer.readAt(position, into, 0, into.length));
+                } catch (IOException e) {
+                    result.set(-2);
+                }
+            }
+        });
+        result.set(Integer.MIN_VALUE);
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        for (int i = 0; i < 500 && thread.getState() != Thread.State.WAITING; i++) {
+            Thread.sleep(2);
+        }
+        assertEquals(Thread.State.WAITING, thread.getState());
+    }
+
+    @Test
+    public void readsAcrossChunks() throws IOException {
+        buffer.append(bytes(0, 10), false);
+        buffer.append(bytes(10, 5), false);
+        buffer.append(bytes(15, 20), true);
+
+        final byte[] read = new byte[12];
+        assertEquals(12, buffer.readAt(8, read, 0, 12));
+        assertArrayEquals(bytes(8, 12), read);
+    }
+
+    @Test
+    public void readsAtTheChunkBoundaries() throws IOException {
+        for (int i = 0; i < 40; i++) {
+            buffer.append(bytes(i * 3, 3), i == 39);
+        }
+        final byte[] read = new byte[4];
+        for (int position = 0; position <= 116; position++) {
+            assertEquals(4, buffer.readAt(position, read, 0, 4));
+            assertArrayEquals("at " + position, bytes(position, 4), read);
+        }
+    }
+
+    @Test
+    public void readsIntoAnOffsetUpToTheEnd() throws IOException {
+        buffer.append(bytes(0, 6), false);
+        buffer.append(bytes(6, 4), true);
+
+        final byte[] read = new byte[10];
+        assertEquals(3, buffer.readAt(7, read, 5, 5));
+        assertEquals(7, read[5]);
+        assertEquals(9, read[7]);
+        assertEquals(0, read[8]);
+        assertEquals(-1, buffer.readAt(10, read, 0, 1));
+    }
+
+    @Test
+    public void theSizeIsOnlyKnownOnceComplete() {
+        buffer.append(bytes(0, 10), false);
+        assertEquals(-1, buffer.getSize());
+        buffer.append(new byte[0], true);
+        assertEquals(10, buffer.getSize());
+        assertFalse(buffer.append(bytes(10, 1), false));
+    }
+
+    @Test
+    public void readsPastTheEndWaitForMoreBytes() throws Exception {
+        buffer.append(bytes(0, 10), false);
+        final byte[] read = new byte[4];
+        final AtomicInteger result = new AtomicInteger();
+        final Thread reader = readLater(12, read, result);
+        awaitBlocked(reader);
+
+        buffer.append(bytes(10, 10), false);
+        reader.join(1000);
+        assertEquals(4, result.get());
+        assertArrayEquals(bytes(12, 4), read);
+    }
+
+    @Test
+    public void completingEndsTheWaitingReads() throws Exception {
+        buffer.append(bytes(0, 10), false);
+        final AtomicInteger result = new AtomicInteger();
+        final Thread reader = readLater(10, new byte[4], result);
+        awaitBlocked(reader);
+
+        assertTrue(buffer.append(new byte[0], true));
+        reader.join(1000);
+        assertEquals(-1, result.get());
+    }
+
+    @Test
+    public void closingEndsTheWaitingReadsAndTheLaterOnes() throws Exception {
+        buffer.append(bytes(0, 10), false);
+        final AtomicInteger result = new AtomicInteger();
+        final Thread reader = readLater(10, new byte[4], result);
+        awaitBlocked(reader);
+
+        buffer.close();
+        reader.join(1000);
+        assertEquals(-1, result.get());
+        assertEquals(-1, buffer.readAt(0, new byte[4], 0, 4));
+        assertFalse(buffer.append(bytes(10, 1), true));
+    }
+
+    @Test
+    public void anInterruptedReadFails() throws Exception {
+        final AtomicInteger result = new AtomicInteger();
+        final Thread reader = readLater(0, new byte[4], result);
+        awaitBlocked(reader);
+
+        reader.interrupt();
+        reader.join(1000);
+        assertEquals(-2, result.get());
+    }
+}
@@ -0,0 +1,249 @@
+package xyz.luan.audioplayers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Runs the proxy against an origin served in process.
+ */
+public class CacheProxyTest {
+    private static final byte[] CONTENT = new byte[100000];
+
+    static {
+        for (int i = 0; i < CONTENT.length; i++) {
+            CONTENT[i] = (byte) (i * 31);
+        }
+    }
+
+    private HttpServer origin;
+    private String base;
+    private File dir;
+    private final AtomicInteger originRequests = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        origin = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        origin.createContext("/audio", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                originRequests.incrementAndGet();
+                serveRange(exchange);
+            }
+        });
+        origin.createContext("/redirect", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("Location", "/audio");
+                exchange.sendResponseHeaders(302, -1);
+                exchange.close();
+            }
+        });
+        origin.createContext("/missing", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+            }
+        });
+        origin.createContext("/live", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                // no ranges and no length: chunked
+                exchange.sendResponseHeaders(200, 0);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(CONTENT);
+                }
+            }
+        });
+        origin.start();
+        base = "http://127.0.0.1:" + origin.getAddress().getPort();
+        dir = Files.createTempDirectory("cache-proxy").toFile();
+        CacheProxy.configure(dir, 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        CacheProxy.configure(dir, 0);
+        origin.stop(0);
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static void serveRange(HttpExchange exchange) throws IOException {
+        final String range = exchange.getRequestHeaders().getFirst("Range");
+        int start = 0;
+        int end = CONTENT.length - 1;
+        int code = 200;
+        if (range != null) {
+            final String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            start = Integer.parseInt(bounds[0]);
+            if (!bounds[1].isEmpty()) {
+                end = Math.min(end, Integer.parseInt(bounds[1]));
+            }
+            code = 206;
+            exchange.getResponseHeaders().set("Content-Range",
+                    "bytes " + start + "-" + end + "/" + CONTENT.length);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "audio/mpeg");
+        exchange.sendResponseHeaders(code, end - start + 1);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(CONTENT, start, end - start + 1);
+        }
+    }
+
+    private static HttpURLConnection open(String url, String range) throws IOException {
+        final HttpURLConnection connection =
+                (HttpURLConnection) new URL(CacheProxy.dataSourceOf(url)).openConnection();
+        if (range != null) {
+            connection.setRequestProperty("Range", range);
+        }
+        return connection;
+    }
+
+    private static byte[] read(HttpURLConnection connection) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = connection.getInputStream()) {
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                bytes.write(buffer, 0, n);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void servesTheSecondRequestFromTheCache() throws IOException {
+        final HttpURLConnection first = open(base + "/audio", null);
+        assertEquals(200, first.getResponseCode());
+        assertArrayEquals(CONTENT, read(first));
+
+        final HttpURLConnection second = open(base + "/audio", null);
+        assertEquals(200, second.getResponseCode());
+        assertArrayEquals(CONTENT, read(second));
+        assertEquals("audio/mpeg", second.getContentType());
+        assertEquals(1, originRequests.get());
+    }
+
+    @Test
+    public void servesRanges() throws IOException {
+        final HttpURLConnection connection = open(base + "/audio", "bytes=1000-1999");
+        assertEquals(206, connection.getResponseCode());
+        assertEquals("bytes 1000-1999/" + CONTENT.length, connection.getHeaderField("Content-Range"));
+        assertArrayEquals(Arrays.copyOfRange(CONTENT, 1000, 2000), read(connection));
+
+        // from the cache this time
+        read(open(base + "/audio", null));
+        final int requests = originRequests.get();
+        final HttpURLConnection cached = open(base + "/audio", "bytes=50000-");
+        assertEquals(206, cached.getResponseCode());
+        assertArrayEquals(Arrays.copyOfRange(CONTENT, 50000, CONTENT.length), read(cached));
+        assertEquals(requests, originRequests.get());
+    }
+
+    @Test
+    public void rejectsRangesPastTheEnd() throws IOException {
+        read(open(base + "/audio", null));
+        final HttpURLConnection connection = open(base + "/audio", "bytes=" + CONTENT.length + "-");
+        assertEquals(416, connection.getResponseCode());
+    }
+
+    @Test
+    public void servesSuffixRanges() throws IOException {
+        // the length is not known yet: the whole resource
+        final HttpURLConnection first = open(base + "/audio", "bytes=-500");
+        assertEquals(200, first.getResponseCode());
+        assertArrayEquals(CONTENT, read(first));
+
+        final HttpURLConnection connection = open(base + "/audio", "bytes=-500");
+        assertEquals(206, connection.getResponseCode());
+        assertEquals("bytes " + (CONTENT.length - 500) + "-" + (CONTENT.length - 1) + "/" + CONTENT.length,
+                connection.getHeaderField("Content-Range"));
+        assertArrayEquals(Arrays.copyOfRange(CONTENT, CONTENT.length - 500, CONTENT.length), read(connection));
+
+        // longer than the resource
+        final HttpURLConnection all = open(base + "/audio", "bytes=-" + (CONTENT.length * 2));
+        assertEquals(206, all.getResponseCode());
+        assertArrayEquals(CONTENT, read(all));
+    }
+
+    @Test
+    public void ignoresMultipleRanges() throws IOException {
+        final HttpURLConnection connection = open(base + "/audio", "bytes=0-99,1000-1099");
+        assertEquals(200, connection.getResponseCode());
+        assertArrayEquals(CONTENT, read(connection));
+    }
+
+    @Test
+    public void parsesSingleRangesOnly() {
+        assertArrayEquals(new long[]{10, 20}, CacheProxy.parseRange("bytes=10-20"));
+        assertArrayEquals(new long[]{10, -1}, CacheProxy.parseRange("bytes=10-"));
+        assertArrayEquals(new long[]{-300, -1}, CacheProxy.parseRange("bytes=-300"));
+        assertNull(CacheProxy.parseRange("bytes=0-1,5-6"));
+        assertNull(CacheProxy.parseRange("bytes=-0"));
+        assertNull(CacheProxy.parseRange("bytes=20-10"));
+        assertNull(CacheProxy.parseRange("bytes=5--3"));
+        assertNull(CacheProxy.parseRange("bytes=a-b"));
+        assertNull(CacheProxy.parseRange("items=0-10"));
+    }
+
+    @Test
+    public void followsRedirects() throws IOException {
+        final HttpURLConnection connection = open(base + "/redirect", null);
+        assertEquals(200, connection.getResponseCode());
+        assertArrayEquals(CONTENT, read(connection));
+    }
+
+    @Test
+    public void passesOriginErrorsOn() throws IOException {
+        assertEquals(404, open(base + "/missing", null).getResponseCode());
+    }
+
+    @Test
+    public void sendsTheWholeResourceForRangesOfUnknownEnd() throws IOException {
+        final HttpURLConnection connection = open(base + "/live", "bytes=1000-");
+        assertEquals(200, connection.getResponseCode());
+        assertArrayEquals(CONTENT, read(connection));
+    }
+
+    @Test
+    public void evictsOverTheCap() throws IOException {
+        CacheProxy.configure(dir, CONTENT.length + CONTENT.length / 2);
+        read(open(base + "/audio", null));
+        new File(dir, DiskCache.keyOf(base + "/audio") + ".data").setLastModified(1000000);
+        read(open(base + "/redirect", null));
+
+        long total = 0;
+        for (File file : dir.listFiles()) {
+            total += file.length();
+        }
+        assertEquals(true, total <= CONTENT.length + CONTENT.length / 2);
+        assertEquals(false, new File(dir, DiskCache.keyOf(base + "/audio") + ".data").exists());
+    }
+}
@@ -0,0 +1,143 @@
+package xyz.luan.audioplayers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+
+public class CommandPipelineTest {
+    // the audio thread, busy until drained
+    private final List<Runnable> posted = new ArrayList<>();
+    private final CommandPipeline pipeline = new CommandPipeline(new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            posted.add(command);
+        }
+    });
+    private final List<String> ran = new ArrayList<>();
+    private final List<String> cancelled = new ArrayList<>();
+
+    private void submit(String method, final String name) {
+        submit(method, null, name);
+    }
+
+    private void submit(String method, String url, final String name) {
+        pipeline.submit(method, url, new CommandPipeline.Task() {
+            @Override
+            public void run() {
+                ran.add(name);
+            }
+
+            @Override
+            public void cancel() {
+                cancelled.add(name);
+            }
+        });
+    }
+
+    private void drain() {
+        for (int i = 0; i < posted.size(); i++) {
+            posted.get(i).run();
+        }
+        posted.clear();
+    }
+
+    @Test
+    public void runsCommandsInOrder() {
+        submit("setVolume", "volume");
+        submit("resume", "resume");
+        submit("pause", "pause");
+        drain();
+
+        assertEquals(Arrays.asList("volume", "resume", "pause"), ran);
+        assertEquals(0, pipeline.getCancelledCount());
+    }
+
+    @Test
+    public void aNewSourceCancelsTheWaitingSourcesAndSeeks() {
+        submit("setUrl", "a.mp3", "a");
+        submit("seek", "seek");
+        submit("setVolume", "volume");
+        submit("setUrl", "b.mp3", "b");
+        submit("play", "c.mp3", "c");
+        drain();
+
+        assertEquals(Arrays.asList("volume", "c"), ran);
+        assertEquals(Arrays.asList("a", "seek", "b"), cancelled);
+        assertEquals(3, pipeline.getCancelledCount());
+    }
+
+    @Test
+    public void seeksForTheSameSourceAreKept() {
+        submit("setUrl", "a.mp3", "a");
+        drain();
+        submit("seek", "seek");
+        submit("play", "a.mp3", "play");
+        drain();
+
+        assertEquals(Arrays.asList("a", "seek", "play"), ran);
+        assertEquals(0, pipeline.getCancelledCount());
+    }
+
+    @Test
+    public void seeksForAnotherSourceAreCancelledEvenIfItComesBack() {
+        submit("setUrl", "a.mp3", "a");
+        drain();
+        submit("setUrl", "b.mp3", "b");
+        submit("seek", "seek");
+        submit("play", "a.mp3", "play");
+        drain();
+
+        assertEquals(Arrays.asList("a", "play"), ran);
+        assertEquals(Arrays.asList("b", "seek"), cancelled);
+    }
+
+    @Test
+    public void sourcesOfUnknownUrlCancelTheWaitingSeeks() {
+        submit("setBytes", "bytes1");
+        drain();
+        submit("seek", "seek");
+        submit("setBytes", "bytes2");
+        drain();
+
+        assertEquals(Arrays.asList("bytes1", "bytes2"), ran);
+        assertEquals(Arrays.asList("seek"), cancelled);
+    }
+
+    @Test
+    public void loadsAreNeverCancelled() {
+        submit("play", "a");
+        submit("setBytes", "b");
+        submit("setQueue", "c");
+        drain();
+
+        assertEquals(Arrays.asList("a", "b", "c"), ran);
+    }
+
+    @Test
+    public void seeksCollapseToTheLastOne() {
+        submit("seek", "seek1");
+        submit("scrubTo", "scrub1");
+        submit("seek", "seek2");
+        submit("scrubTo", "scrub2");
+        drain();
+
+        assertEquals(Arrays.asList("seek2", "scrub2"), ran);
+        assertEquals(Arrays.asList("seek1", "scrub1"), cancelled);
+    }
+
+    @Test
+    public void commandsThatAlreadyRanAreNotCancelled() {
+        submit("setUrl", "a.mp3", "a");
+        drain();
+        submit("setUrl", "b.mp3", "b");
+        drain();
+
+        assertEquals(Arrays.asList("a", "b"), ran);
+        assertEquals(0, pipeline.getCancelledCount());
+    }
+}
@@ -0,0 +1,99 @@
+package xyz.luan.audioplayers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiskCacheTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("disk-cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static void write(DiskCache cache, String key, int size, long lastModified) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(cache.dataFile(key))) {
+            out.write(new byte[size]);
+        }
+        cache.dataFile(key).setLastModified(lastModified);
+    }
+
+    @Test
+    public void keysAreStableAndDistinct() {
+        assertEquals(DiskCache.keyOf("https://example.com/a.mp3"), DiskCache.keyOf("https://example.com/a.mp3"));
+        assertFalse(DiskCache.keyOf("https://example.com/a.mp3").equals(DiskCache.keyOf("https://example.com/b.mp3")));
+    }
+
+    @Test
+    public void trimEvictsLeastRecentlyUsedFirst() throws IOException {
+        final DiskCache cache = new DiskCache(dir, 250);
+        write(cache, "old", 100, 1000000);
+        write(cache, "middle", 100, 2000000);
+        write(cache, "new", 100, 3000000);
+        cache.trim();
+
+        assertFalse(cache.dataFile("old").exists());
+        assertTrue(cache.dataFile("middle").exists());
+        assertTrue(cache.dataFile("new").exists());
+    }
+
+    @Test
+    public void trimSkipsEntriesBeingWritten() throws IOException {
+        final DiskCache cache = new DiskCache(dir, 150);
+        write(cache, "old", 100, 1000000);
+        write(cache, "new", 100, 2000000);
+        assertTrue(cache.lockWriter("old"));
+        cache.trim();
+
+        assertTrue(cache.dataFile("old").exists());
+        assertFalse(cache.dataFile("new").exists());
+        cache.unlockWriter("old");
+    }
+
+    @Test
+    public void onlyOneWriterPerEntry() {
+        final DiskCache cache = new DiskCache(dir, 1000);
+        assertTrue(cache.lockWriter("a"));
+        assertFalse(cache.lockWriter("a"));
+        cache.unlockWriter("a");
+        assertTrue(cache.lockWriter("a"));
+    }
+
+    @Test
+    public void metaIsReadBack() throws IOException {
+        final DiskCache cache = new DiskCache(dir, 1000);
+        assertNull(cache.readMeta("a"));
+        cache.writeMeta("a", 1234, "audio/mpeg");
+        cache.writeMeta("b", -1, null);
+
+        final DiskCache.Meta a = cache.readMeta("a");
+        assertNotNull(a);
+        assertEquals(1234, a.totalLength);
+        assertEquals("audio/mpeg", a.contentType);
+        assertEquals(-1, cache.readMeta("b").totalLength);
+        assertNull(cache.readMeta("b").contentType);
+    }
+}
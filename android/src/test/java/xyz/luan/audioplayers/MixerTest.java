@@ -0,0 +1,173 @@
+package xyz.luan.audioplayers;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MixerTest {
+    private final List<Mixer.Voice> finished = new ArrayList<>();
+    private final Mixer.Listener listener = new Mixer.Listener() {
+        @Override
+        public void onVoiceFinished(Mixer.Voice voice) {
+            finished.add(voice);
+        }
+    };
+    // the blocks are mixed by the test, not by a mixing thread
+    private final Mixer mixer = new Mixer(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread();
+        }
+    });
+
+    /**
+     * A mono voice at the mixer rate, playing the given samples.
+     */
+    private Mixer.Voice voice(int... samples) {
+        final ByteBuffer data = ByteBuffer.allocateDirect(samples.length * 2).order(ByteOrder.nativeOrder());
+        for (int sample : samples) {
+            data.putShort((short) sample);
+        }
+        data.flip();
+        return new Mixer.Voice(listener, new PcmBuffer(data, Mixer.SAMPLE_RATE, 1));
+    }
+
+    private static int[] constant(int frames, int value) {
+        final int[] samples = new int[frames];
+        Arrays.fill(samples, value);
+        return samples;
+    }
+
+    @Test
+    public void mixesTheVoicesWithTheirGains() {
+        final Mixer.Voice a = voice(constant(Mixer.BLOCK_FRAMES * 2, 1000));
+        final Mixer.Voice b = voice(constant(Mixer.BLOCK_FRAMES * 2, 3000));
+        mixer.setGain(b, 0.5f);
+        mixer.play(a);
+        mixer.play(b);
+
+        final short[] block = mixer.nextBlock();
+        assertEquals(Mixer.BLOCK_FRAMES * 2, block.length);
+        for (short sample : block) {
+            // both channels of the mono voices
+            assertEquals(2500, sample);
+        }
+        assertEquals(Mixer.BLOCK_FRAMES, mixer.getPosition(a));
+    }
+
+    @Test
+    public void clampsTheMix() {
+        mixer.play(voice(constant(Mixer.BLOCK_FRAMES, 30000)));
+        mixer.play(voice(constant(Mixer.BLOCK_FRAMES, 30000)));
+        assertEquals(Short.MAX_VALUE, mixer.nextBlock()[0]);
+
+        mixer.play(voice(constant(Mixer.BLOCK_FRAMES, -30000)));
+        mixer.play(voice(constant(Mixer.BLOCK_FRAMES, -30000)));
+        assertEquals(Short.MIN_VALUE, mixer.nextBlock()[0]);
+    }
+
+    @Test
+    public void aVoiceFinishesAtItsEnd() {
+        final Mixer.Voice voice = voice(constant(100, 1000));
+        mixer.play(voice);
+
+        final short[] block = mixer.nextBlock();
+        assertEquals(Collections.singletonList(voice), finished);
+        assertFalse(mixer.isPlaying(voice));
+        assertEquals(0, mixer.getPosition(voice));
+        // the end of the voice is not mixed
+        assertEquals(1000, block[0]);
+        assertEquals(0, block[Mixer.BLOCK_FRAMES * 2 - 1]);
+    }
+
+    @Test
+    public void loopingWrapsAround() {
+        final Mixer.Voice voice = voice(0, 10, 20, 30, 40, 50, 60, 70);
+        mixer.setLooping(voice, true);
+        mixer.play(voice);
+
+        final short[] block = mixer.nextBlock();
+        for (int i = 0; i < Mixer.BLOCK_FRAMES; i++) {
+            assertEquals(i % 8 * 10, block[2 * i]);
+        }
+        assertEquals(Mixer.BLOCK_FRAMES % 8, mixer.getPosition(voice));
+        assertTrue(finished.isEmpty());
+    }
+
+    @Test
+    public void loopingFasterThanTheVoiceStaysInIt() {
+        // each output frame skips more than the whole voice
+        final Mixer.Voice voice = voice(100, 200, 300);
+        mixer.setLooping(voice, true);
+        mixer.setRate(voice, 7.5f);
+        mixer.play(voice);
+
+        for (int i = 0; i < 10; i++) {
+            for (short sample : mixer.nextBlock()) {
+                assertTrue(sample >= 100 && sample <= 300);
+            }
+        }
+        assertTrue(mixer.isPlaying(voice));
+    }
+
+    @Test
+    public void interpolatesBetweenFramesAtOtherRates() {
+        final Mixer.Voice voice = voice(0, 100, 200, 300, 400, 500, 600, 700, 800, 900, 1000);
+        mixer.setRate(voice, 0.5f);
+        mixer.play(voice);
+
+        final short[] block = mixer.nextBlock();
+        assertEquals(0, block[0]);
+        assertEquals(50, block[2]);
+        assertEquals(100, block[4]);
+    }
+
+    @Test
+    public void stealsTheOldestVoicePreferringTheNonLoopingOnes() {
+        mixer.setMaxVoices(2);
+        final Mixer.Voice looping = voice(constant(1000, 1));
+        final Mixer.Voice a = voice(constant(1000, 1));
+        final Mixer.Voice b = voice(constant(1000, 1));
+        mixer.setLooping(looping, true);
+        mixer.play(looping);
+        mixer.play(a);
+        mixer.play(b);
+
+        assertEquals(Collections.singletonList(a), finished);
+        assertTrue(mixer.isPlaying(looping));
+        assertTrue(mixer.isPlaying(b));
+
+        // once only looping voices are left, the oldest of them goes
+        final Mixer.Voice c = voice(constant(1000, 1));
+        mixer.setLooping(b, true);
+        mixer.play(c);
+        assertEquals(Arrays.asList(a, looping), finished);
+        assertTrue(mixer.isPlaying(c));
+    }
+
+    @Test
+    public void loweringTheMaxVoicesStealsTheExtraOnes() {
+        final Mixer.Voice a = voice(constant(1000, 1));
+        final Mixer.Voice b = voice(constant(1000, 1));
+        final Mixer.Voice c = voice(constant(1000, 1));
+        mixer.play(a);
+        mixer.play(b);
+        mixer.play(c);
+        // resuming a voice makes it the newest
+        mixer.play(a);
+        mixer.setMaxVoices(1);
+
+        assertEquals(Arrays.asList(b, c), finished);
+        assertTrue(mixer.isPlaying(a));
+    }
+}
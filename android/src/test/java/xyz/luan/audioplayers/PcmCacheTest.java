@@ -0,0 +1,94 @@
+package xyz.luan.audioplayers;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class PcmCacheTest {
+    private static PcmBuffer buffer(int size) {
+        return new PcmBuffer(ByteBuffer.allocate(size), 44100, 2);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverBudget() {
+        final PcmCache cache = new PcmCache(300);
+        final PcmBuffer a = buffer(100);
+        final PcmBuffer b = buffer(100);
+        final PcmBuffer c = buffer(100);
+        cache.put("a", a);
+        cache.put("b", b);
+        cache.put("c", c);
+        // a becomes the most recently used, so b goes first
+        assertSame(a, cache.get("a"));
+        cache.put("d", buffer(100));
+
+        assertNull(cache.get("b"));
+        assertSame(a, cache.get("a"));
+        assertSame(c, cache.get("c"));
+        assertEquals(300, cache.sizeInBytes());
+    }
+
+    @Test
+    public void countsTheWholeBufferAgainstTheBudget() {
+        final PcmCache cache = new PcmCache(250);
+        final ByteBuffer data = ByteBuffer.allocate(200);
+        data.limit(100);
+        cache.put("a", new PcmBuffer(data, 44100, 2));
+        cache.put("b", buffer(100));
+
+        assertEquals(100, cache.sizeInBytes());
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void doesNotCacheBuffersOverTheBudget() {
+        final PcmCache cache = new PcmCache(100);
+        cache.put("a", buffer(50));
+        cache.put("b", buffer(101));
+
+        assertNull(cache.get("b"));
+        assertEquals(50, cache.sizeInBytes());
+    }
+
+    @Test
+    public void replacingAnEntryUpdatesTheSize() {
+        final PcmCache cache = new PcmCache(1000);
+        cache.put("a", buffer(100));
+        cache.put("a", buffer(300));
+
+        assertEquals(300, cache.sizeInBytes());
+    }
+
+    @Test
+    public void shrinkingTheBudgetEvicts() {
+        final PcmCache cache = new PcmCache(1000);
+        cache.put("a", buffer(100));
+        cache.put("b", buffer(100));
+        cache.put("c", buffer(100));
+        cache.setMaxBytes(150);
+
+        assertEquals(100, cache.sizeInBytes());
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.stats().get("entries"));
+    }
+
+    @Test
+    public void countsHitsMissesAndEvictions() {
+        final PcmCache cache = new PcmCache(100);
+        cache.put("a", buffer(100));
+        cache.get("a");
+        cache.get("b");
+        cache.put("b", buffer(100));
+
+        final Map<String, Object> stats = cache.stats();
+        assertEquals(1L, stats.get("hits"));
+        assertEquals(1L, stats.get("misses"));
+        assertEquals(1L, stats.get("evictions"));
+        assertEquals(100L, stats.get("bytes"));
+    }
+}
@@ -0,0 +1,38 @@
+package xyz.luan.audioplayers;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+
+public class PcmPlayerTest {
+    @Test
+    public void writesOnlyTheSamplesOfABufferWithRoomLeft() {
+        // decoded buffers are allocated with some room to spare, which the track must not expect
+        final ByteBuffer data = ByteBuffer.allocateDirect(1100).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < 1000; i++) {
+            data.put((byte) i);
+        }
+        data.flip();
+        final PcmBuffer buffer = new PcmBuffer(data, 44100, 2);
+
+        assertEquals(1000, buffer.sizeInBytes());
+        assertEquals(1100, buffer.retainedBytes());
+        final byte[] samples = PcmPlayer.copySamples(buffer);
+        assertEquals(1000, samples.length);
+        assertEquals((byte) 999, samples[999]);
+    }
+
+    @Test
+    public void sizeIsAWholeNumberOfFrames() {
+        final ByteBuffer data = ByteBuffer.allocate(64);
+        data.limit(10);
+        final PcmBuffer buffer = new PcmBuffer(data, 44100, 2);
+
+        assertEquals(2, buffer.frameCount());
+        assertEquals(8, buffer.sizeInBytes());
+        assertEquals(8, PcmPlayer.copySamples(buffer).length);
+    }
+}
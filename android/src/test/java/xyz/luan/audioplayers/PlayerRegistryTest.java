@@ -0,0 +1,296 @@
+package xyz.luan.audioplayers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PlayerRegistryTest {
+    private static final int THREADS = 8;
+
+    private final List<FakePlayer> evicted = new ArrayList<>();
+    private final PlayerRegistry<FakePlayer> registry = new PlayerRegistry<>(new FakePlayer[0],
+            new PlayerRegistry.Listener<FakePlayer>() {
+                @Override
+                public void onEvicted(FakePlayer player) {
+                    synchronized (evicted) {
+                        evicted.add(player);
+                    }
+                }
+            });
+    private final AtomicInteger created = new AtomicInteger();
+    private final PlayerRegistry.Factory<FakePlayer> factory = new PlayerRegistry.Factory<FakePlayer>() {
+        @Override
+        public FakePlayer create(String playerId) {
+            created.incrementAndGet();
+            return new FakePlayer(playerId);
+        }
+    };
+
+    static final class FakePlayer implements PlayerRegistry.Player {
+        final String playerId;
+        boolean playing = false;
+        boolean reclaimed = false;
+        long lastUsedAt = 0;
+
+        FakePlayer(String playerId) {
+            this.playerId = playerId;
+        }
+
+        @Override
+        public String getPlayerId() {
+            return playerId;
+        }
+
+        @Override
+        public boolean isPlaying() {
+            return playing;
+        }
+
+        @Override
+        public boolean isReclaimed() {
+            return reclaimed;
+        }
+
+        @Override
+        public long getLastUsedAt() {
+            return lastUsedAt;
+        }
+    }
+
+    /**
+     * Runs the task on several threads at once, rethrowing the first failure.
+     */
+    private static void runConcurrently(final Runnable task) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        task.run();
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.peek());
+        }
+    }
+
+    @Test
+    public void createsReusesAndRemovesPlayers() {
+        final FakePlayer a = registry.getOrCreate("a", factory);
+        assertSame(a, registry.getOrCreate("a", factory));
+        assertSame(a, registry.get("a"));
+        assertEquals(1, created.get());
+
+        assertSame(a, registry.remove("a"));
+        assertNull(registry.remove("a"));
+        assertNull(registry.get("a"));
+        assertEquals(0, registry.snapshot().length);
+
+        // a new player under the same id
+        assertNotSame(a, registry.getOrCreate("a", factory));
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    public void rejectsPlayersPastTheLimit() {
+        registry.configureLimit(2, AdmissionPolicy.REJECT);
+        registry.getOrCreate("a", factory);
+        registry.getOrCreate("b", factory);
+        assertTrue(registry.canAdmit());
+        try {
+            registry.getOrCreate("c", factory);
+            fail();
+        } catch (PlayerLimitException e) {
+            // expected
+        }
+        // existing players are still there
+        assertNotNull(registry.getOrCreate("a", factory));
+        assertEquals(2, created.get());
+
+        registry.remove("a");
+        assertNotNull(registry.getOrCreate("c", factory));
+    }
+
+    @Test
+    public void stealsTheLeastRecentlyUsedPlayerPreferringTheIdleOnes() {
+        registry.configureLimit(3, AdmissionPolicy.STEAL_LRU);
+        final FakePlayer a = registry.getOrCreate("a", factory);
+        final FakePlayer b = registry.getOrCreate("b", factory);
+        final FakePlayer c = registry.getOrCreate("c", factory);
+        a.lastUsedAt = 100;
+        a.playing = true;
+        b.lastUsedAt = 300;
+        c.lastUsedAt = 200;
+
+        final FakePlayer d = registry.getOrCreate("d", factory);
+        assertEquals(Collections.singletonList(c), evicted);
+        assertNull(registry.get("c"));
+
+        // the oldest player is stolen only once every player plays
+        b.playing = true;
+        d.lastUsedAt = 400;
+        registry.getOrCreate("e", factory);
+        assertEquals(Arrays.asList(c, d), evicted);
+        d.playing = true;
+        final FakePlayer e = registry.getOrCreate("e", factory);
+        e.playing = true;
+        e.lastUsedAt = 500;
+        registry.getOrCreate("f", factory);
+        assertEquals(Arrays.asList(c, d, a), evicted);
+    }
+
+    @Test
+    public void queuedPlayersTakeTheSlotOfAReclaimedOne() {
+        registry.configureLimit(2, AdmissionPolicy.QUEUE);
+        final FakePlayer a = registry.getOrCreate("a", factory);
+        final FakePlayer b = registry.getOrCreate("b", factory);
+        assertFalse(registry.canAdmit());
+        assertNull(registry.getOrCreate("c", factory));
+        assertEquals(2, created.get());
+
+        a.reclaimed = true;
+        a.lastUsedAt = 200;
+        b.reclaimed = true;
+        b.lastUsedAt = 100;
+        assertTrue(registry.canAdmit());
+        assertNotNull(registry.getOrCreate("c", factory));
+        assertEquals(Collections.singletonList(b), evicted);
+        assertSame(a, registry.get("a"));
+    }
+
+    @Test
+    public void loweringTheLimitKeepsTheExistingPlayers() {
+        registry.getOrCreate("a", factory);
+        registry.getOrCreate("b", factory);
+        registry.configureLimit(1, AdmissionPolicy.QUEUE);
+
+        assertEquals(2, registry.snapshot().length);
+        assertEquals(1, registry.getMaxPlayers());
+        assertEquals(AdmissionPolicy.QUEUE, registry.getAdmissionPolicy());
+        assertNull(registry.getOrCreate("c", factory));
+
+        registry.configureLimit(-5, AdmissionPolicy.QUEUE);
+        assertEquals(0, registry.getMaxPlayers());
+        assertNotNull(registry.getOrCreate("c", factory));
+    }
+
+    @Test
+    public void concurrentGetsCreateEachPlayerOnce() throws Exception {
+        final ConcurrentLinkedQueue<FakePlayer> seen = new ConcurrentLinkedQueue<>();
+        runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 1000; i++) {
+                    seen.add(registry.getOrCreate("player" + (i % 50), factory));
+                }
+            }
+        });
+
+        assertEquals(50, created.get());
+        assertEquals(50, registry.snapshot().length);
+        for (FakePlayer player : seen) {
+            assertSame(player, registry.get(player.playerId));
+        }
+    }
+
+    @Test
+    public void theSnapshotFollowsConcurrentCreationsAndRemovals() throws Exception {
+        final AtomicInteger next = new AtomicInteger();
+        runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 500; i++) {
+                    final String playerId = "player" + next.getAndIncrement();
+                    final FakePlayer player = registry.getOrCreate(playerId, factory);
+                    // readers iterate the snapshot without locking while it changes
+                    for (FakePlayer other : registry.snapshot()) {
+                        assertTrue(other.playerId.startsWith("player"));
+                    }
+                    if (i % 2 == 0) {
+                        assertSame(player, registry.remove(playerId));
+                    }
+                }
+            }
+        });
+
+        final FakePlayer[] snapshot = registry.snapshot();
+        assertEquals(THREADS * 250, snapshot.length);
+        assertEquals(snapshot.length, registry.asMap().size());
+        final Set<String> ids = new HashSet<>();
+        for (FakePlayer player : snapshot) {
+            assertSame(player, registry.get(player.playerId));
+            ids.add(player.playerId);
+        }
+        assertEquals(snapshot.length, ids.size());
+    }
+
+    @Test
+    public void theLimitHoldsUnderConcurrentCreations() throws Exception {
+        registry.configureLimit(10, AdmissionPolicy.STEAL_LRU);
+        final AtomicInteger next = new AtomicInteger();
+        runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 200; i++) {
+                    registry.getOrCreate("player" + next.getAndIncrement(), factory);
+                    assertTrue(registry.snapshot().length <= 10);
+                }
+            }
+        });
+
+        assertEquals(10, registry.snapshot().length);
+        assertEquals(THREADS * 200 - 10, evicted.size());
+    }
+
+    @Test
+    public void onlyTheRegisteredInstanceIsRemoved() throws Exception {
+        final AtomicBoolean removed = new AtomicBoolean();
+        final FakePlayer stale = new FakePlayer("a");
+        final FakePlayer current = registry.getOrCreate("a", factory);
+        runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                // a player already replaced under the same id must not remove its successor
+                assertFalse(registry.remove(stale));
+                if (registry.remove(current)) {
+                    assertFalse(removed.getAndSet(true));
+                }
+            }
+        });
+
+        assertTrue(removed.get());
+        assertEquals(0, registry.snapshot().length);
+    }
+}
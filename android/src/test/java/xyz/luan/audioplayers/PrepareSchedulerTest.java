@@ -0,0 +1,142 @@
+package xyz.luan.audioplayers;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PrepareSchedulerTest {
+    private final List<String> granted = new ArrayList<>();
+    private final List<RecordingClient> clients = new ArrayList<>();
+
+    private final class RecordingClient implements PrepareScheduler.Client {
+        final String name;
+        int generation = -1;
+
+        RecordingClient(String name) {
+            this.name = name;
+            clients.add(this);
+        }
+
+        @Override
+        public void onGranted(int generation) {
+            this.generation = generation;
+            granted.add(name);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (RecordingClient client : clients) {
+            PrepareScheduler.done(client);
+        }
+        PrepareScheduler.configure(PrepareScheduler.DEFAULT_MAX_CONCURRENT);
+    }
+
+    @Test
+    public void grantsUpToTheCap() {
+        PrepareScheduler.configure(2);
+        final RecordingClient a = new RecordingClient("a");
+        final RecordingClient b = new RecordingClient("b");
+        final RecordingClient c = new RecordingClient("c");
+        PrepareScheduler.request(a, PrepareScheduler.Priority.PREFETCH, 0);
+        PrepareScheduler.request(b, PrepareScheduler.Priority.PREFETCH, 0);
+        PrepareScheduler.request(c, PrepareScheduler.Priority.PREFETCH, 0);
+
+        assertEquals(Arrays.asList("a", "b"), granted);
+        assertEquals(2, PrepareScheduler.getRunningCount());
+        assertEquals(1, PrepareScheduler.getWaitingCount());
+
+        PrepareScheduler.done(a);
+        assertEquals(Arrays.asList("a", "b", "c"), granted);
+        assertEquals(0, PrepareScheduler.getWaitingCount());
+    }
+
+    @Test
+    public void grantsByPriorityThenInOrder() {
+        PrepareScheduler.configure(1);
+        final RecordingClient running = new RecordingClient("running");
+        PrepareScheduler.request(running, PrepareScheduler.Priority.BACKGROUND, 0);
+        final RecordingClient background = new RecordingClient("background");
+        final RecordingClient prefetch1 = new RecordingClient("prefetch1");
+        final RecordingClient prefetch2 = new RecordingClient("prefetch2");
+        final RecordingClient interactive = new RecordingClient("interactive");
+        PrepareScheduler.request(background, PrepareScheduler.Priority.BACKGROUND, 0);
+        PrepareScheduler.request(prefetch1, PrepareScheduler.Priority.PREFETCH, 0);
+        PrepareScheduler.request(prefetch2, PrepareScheduler.Priority.PREFETCH, 0);
+        PrepareScheduler.request(interactive, PrepareScheduler.Priority.INTERACTIVE, 0);
+
+        PrepareScheduler.done(running);
+        PrepareScheduler.done(interactive);
+        PrepareScheduler.done(prefetch1);
+        PrepareScheduler.done(prefetch2);
+
+        assertEquals(Arrays.asList("running", "interactive", "prefetch1", "prefetch2", "background"), granted);
+    }
+
+    @Test
+    public void promotedRequestsGoFirst() {
+        PrepareScheduler.configure(1);
+        final RecordingClient running = new RecordingClient("running");
+        final RecordingClient first = new RecordingClient("first");
+        final RecordingClient second = new RecordingClient("second");
+        PrepareScheduler.request(running, PrepareScheduler.Priority.PREFETCH, 0);
+        PrepareScheduler.request(first, PrepareScheduler.Priority.PREFETCH, 0);
+        PrepareScheduler.request(second, PrepareScheduler.Priority.BACKGROUND, 0);
+        PrepareScheduler.promote(second);
+
+        PrepareScheduler.done(running);
+        assertEquals(Arrays.asList("running", "second"), granted);
+    }
+
+    @Test
+    public void aNewRequestReplacesThePreviousOne() {
+        PrepareScheduler.configure(1);
+        final RecordingClient a = new RecordingClient("a");
+        final RecordingClient b = new RecordingClient("b");
+        PrepareScheduler.request(a, PrepareScheduler.Priority.PREFETCH, 0);
+        PrepareScheduler.request(b, PrepareScheduler.Priority.PREFETCH, 0);
+        // a gets another source while preparing: its slot goes to b, and its new request waits
+        PrepareScheduler.request(a, PrepareScheduler.Priority.PREFETCH, 1);
+
+        assertEquals(Arrays.asList("a", "b"), granted);
+        assertEquals(1, PrepareScheduler.getWaitingCount());
+
+        PrepareScheduler.done(b);
+        assertEquals(Arrays.asList("a", "b", "a"), granted);
+        assertEquals(1, a.generation);
+    }
+
+    @Test
+    public void droppingAWaitingRequestKeepsTheSlots() {
+        PrepareScheduler.configure(1);
+        final RecordingClient a = new RecordingClient("a");
+        final RecordingClient b = new RecordingClient("b");
+        PrepareScheduler.request(a, PrepareScheduler.Priority.PREFETCH, 0);
+        PrepareScheduler.request(b, PrepareScheduler.Priority.PREFETCH, 0);
+        PrepareScheduler.done(b);
+
+        assertEquals(1, PrepareScheduler.getRunningCount());
+        assertEquals(0, PrepareScheduler.getWaitingCount());
+        assertEquals(Arrays.asList("a"), granted);
+    }
+
+    @Test
+    public void raisingTheCapGrantsWaitingRequests() {
+        PrepareScheduler.configure(1);
+        final RecordingClient a = new RecordingClient("a");
+        final RecordingClient b = new RecordingClient("b");
+        final RecordingClient c = new RecordingClient("c");
+        PrepareScheduler.request(a, PrepareScheduler.Priority.PREFETCH, 0);
+        PrepareScheduler.request(b, PrepareScheduler.Priority.PREFETCH, 0);
+        PrepareScheduler.request(c, PrepareScheduler.Priority.PREFETCH, 0);
+        PrepareScheduler.configure(3);
+
+        assertEquals(Arrays.asList("a", "b", "c"), granted);
+        assertEquals(3, PrepareScheduler.getRunningCount());
+    }
+}
@@ -0,0 +1,85 @@
+package xyz.luan.audioplayers;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ProgressBatcherTest {
+    private final ProgressBatcher batcher = new ProgressBatcher();
+
+    @Test
+    public void batchesTheUpdatesOfATick() {
+        batcher.add("a", 5000, true, 100);
+        batcher.add("b", 7000, false, 200);
+        final ProgressBatcher.Batch batch = batcher.take();
+
+        assertEquals(Arrays.asList("a", "b"), batch.arguments.get("playerIds"));
+        assertArrayEquals(new int[]{100, 200}, (int[]) batch.arguments.get("positions"));
+        // an unchanged duration is sent as -1
+        assertArrayEquals(new int[]{5000, -1}, (int[]) batch.arguments.get("durations"));
+        // the tick is done
+        assertNull(batcher.take());
+    }
+
+    @Test
+    public void nothingIsSentWithoutUpdates() {
+        assertNull(batcher.take());
+    }
+
+    @Test
+    public void steadyTicksReuseTheSameBatch() {
+        batcher.add("a", 5000, true, 0);
+        batcher.add("b", 7000, true, 0);
+        final ProgressBatcher.Batch first = batcher.take();
+        final Object playerIds = first.arguments.get("playerIds");
+        final Object positions = first.arguments.get("positions");
+        final Object durations = first.arguments.get("durations");
+        batcher.recycle(first);
+
+        for (int tick = 1; tick <= 100; tick++) {
+            batcher.add("a", 5000, false, tick * 200);
+            batcher.add("b", 7000, false, tick * 100);
+            final ProgressBatcher.Batch batch = batcher.take();
+            assertSame(first, batch);
+            assertSame(playerIds, batch.arguments.get("playerIds"));
+            assertSame(positions, batch.arguments.get("positions"));
+            assertSame(durations, batch.arguments.get("durations"));
+            assertArrayEquals(new int[]{tick * 200, tick * 100}, batch.positions);
+            batcher.recycle(batch);
+        }
+    }
+
+    @Test
+    public void aBatchStillInFlightIsNotReused() {
+        batcher.add("a", 5000, true, 0);
+        final ProgressBatcher.Batch first = batcher.take();
+        batcher.add("a", 5000, false, 200);
+        final ProgressBatcher.Batch second = batcher.take();
+
+        assertNotSame(first, second);
+        assertArrayEquals(new int[]{0}, first.positions);
+        assertArrayEquals(new int[]{200}, second.positions);
+    }
+
+    @Test
+    public void theArraysFollowTheNumberOfPlayers() {
+        for (int i = 0; i < 20; i++) {
+            batcher.add("player" + i, 1000, true, i);
+        }
+        final ProgressBatcher.Batch batch = batcher.take();
+        assertEquals(20, batch.positions.length);
+        assertEquals(19, batch.positions[19]);
+        batcher.recycle(batch);
+
+        batcher.add("player0", 1000, false, 50);
+        assertSame(batch, batcher.take());
+        assertArrayEquals(new int[]{50}, batch.positions);
+        assertArrayEquals(new int[]{-1}, batch.durations);
+    }
+}
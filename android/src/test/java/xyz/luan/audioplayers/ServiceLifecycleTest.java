@@ -0,0 +1,126 @@
+package xyz.luan.audioplayers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ServiceLifecycleTest {
+    private final List<String> calls = new ArrayList<>();
+    private final ServiceLifecycle lifecycle = new ServiceLifecycle(new ServiceLifecycle.Host() {
+        @Override
+        public void setWakeLockHeld(boolean held) {
+            calls.add(held ? "acquire wake" : "release wake");
+        }
+
+        @Override
+        public void setWifiLockHeld(boolean held) {
+            calls.add(held ? "acquire wifi" : "release wifi");
+        }
+
+        @Override
+        public void startForeground() {
+            calls.add("start foreground");
+        }
+
+        @Override
+        public void stopForeground() {
+            calls.add("stop foreground");
+        }
+
+        @Override
+        public void stop() {
+            calls.add("stop");
+        }
+    });
+
+    @Test
+    public void startsInTheForegroundWithTheWakeLock() {
+        lifecycle.onStart(true, false);
+
+        assertEquals(Arrays.asList("start foreground", "acquire wake"), calls);
+        assertTrue(lifecycle.isForeground());
+    }
+
+    @Test
+    public void holdsTheWifiLockOnlyForRemoteSources() {
+        lifecycle.onStart(true, true);
+        assertEquals(Arrays.asList("start foreground", "acquire wake", "acquire wifi"), calls);
+
+        calls.clear();
+        // the remote player paused, a local one still plays
+        lifecycle.onPlaybackChanged(true, false);
+        assertEquals(Collections.singletonList("release wifi"), calls);
+    }
+
+    @Test
+    public void startingAgainWhilePlayingKeepsTheLocks() {
+        lifecycle.onStart(true, false);
+        calls.clear();
+        lifecycle.onStart(true, false);
+        lifecycle.onPlaybackChanged(true, false);
+
+        assertEquals(Collections.singletonList("start foreground"), calls);
+    }
+
+    @Test
+    public void leavesTheForegroundWhenPlaybackStops() {
+        lifecycle.onStart(true, true);
+        calls.clear();
+        lifecycle.onPlaybackChanged(false, false);
+
+        assertEquals(Arrays.asList("release wake", "release wifi", "stop foreground"), calls);
+        assertFalse(lifecycle.isForeground());
+
+        calls.clear();
+        // another update, say a second player stopping, keeps the service in background
+        lifecycle.onPlaybackChanged(false, false);
+        assertEquals(Collections.<String>emptyList(), calls);
+    }
+
+    @Test
+    public void aPlayerStartingAgainGoesBackToTheForeground() {
+        lifecycle.onStart(true, false);
+        lifecycle.onPlaybackChanged(false, false);
+        calls.clear();
+        lifecycle.onStart(true, false);
+
+        assertEquals(Arrays.asList("start foreground", "acquire wake"), calls);
+        assertTrue(lifecycle.isForeground());
+    }
+
+    @Test
+    public void startingWithNothingPlayingLeavesTheForegroundAtOnce() {
+        // the player already paused by the time the service starts
+        lifecycle.onStart(false, false);
+
+        assertEquals(Arrays.asList("start foreground", "stop foreground"), calls);
+        assertFalse(lifecycle.isForeground());
+    }
+
+    @Test
+    public void deletingTheNotificationStopsTheService() {
+        lifecycle.onStart(true, true);
+        calls.clear();
+        lifecycle.onDeleteNotification();
+
+        assertEquals(Arrays.asList("release wake", "release wifi", "stop"), calls);
+        assertFalse(lifecycle.isForeground());
+    }
+
+    @Test
+    public void destroyingReleasesTheLocks() {
+        lifecycle.onStart(true, false);
+        calls.clear();
+        lifecycle.onDestroy();
+        lifecycle.onDestroy();
+
+        assertEquals(Collections.singletonList("release wake"), calls);
+    }
+}
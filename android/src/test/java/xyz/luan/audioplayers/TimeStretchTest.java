@@ -0,0 +1,103 @@
+package xyz.luan.audioplayers;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimeStretchTest {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHANNELS = 2;
+
+    private static short[] tone(int frames) {
+        final short[] samples = new short[frames * CHANNELS];
+        for (int i = 0; i < frames; i++) {
+            final short value = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE));
+            samples[i * CHANNELS] = value;
+            samples[i * CHANNELS + 1] = value;
+        }
+        return samples;
+    }
+
+    /**
+     * Stretches the input fed in chunks of {@code chunk} frames, reading the output after each one.
+     */
+    private static short[] stretch(TimeStretch stretch, short[] input, int chunk) {
+        final int frames = input.length / CHANNELS;
+        short[] output = new short[0];
+        for (int frame = 0; frame < frames; frame += chunk) {
+            stretch.put(input, frame * CHANNELS, Math.min(chunk, frames - frame));
+            output = read(stretch, output);
+        }
+        stretch.flush();
+        return read(stretch, output);
+    }
+
+    private static short[] read(TimeStretch stretch, short[] output) {
+        final int available = stretch.available();
+        final short[] result = Arrays.copyOf(output, output.length + available * CHANNELS);
+        System.arraycopy(stretch.output(), stretch.outputOffset(), result, output.length, available * CHANNELS);
+        stretch.consume(available);
+        return result;
+    }
+
+    @Test
+    public void passesTheInputThroughAtSpeedOne() {
+        final short[] input = tone(SAMPLE_RATE);
+        final TimeStretch stretch = new TimeStretch(SAMPLE_RATE, CHANNELS);
+        assertArrayEquals(input, stretch(stretch, input, 4096));
+    }
+
+    @Test
+    public void outputLengthFollowsTheSpeed() {
+        final int frames = SAMPLE_RATE * 2;
+        final short[] input = tone(frames);
+        for (float speed : new float[]{0.5f, 0.75f, 1.5f, 2.0f, 3.0f}) {
+            final TimeStretch stretch = new TimeStretch(SAMPLE_RATE, CHANNELS);
+            stretch.setSpeed(speed);
+            final int output = stretch(stretch, input, 4096).length / CHANNELS;
+            final float expected = frames / speed;
+            // the input left at the end (a sequence and its seek window, or a hop at high speeds) is not stretched
+            final float tolerance = SAMPLE_RATE * Math.max(0.055f, 0.032f * speed);
+            assertTrue(speed + ": " + output + " frames, expected about " + expected,
+                    Math.abs(output - expected) <= tolerance);
+        }
+    }
+
+    @Test
+    public void outputLengthDoesNotDependOnTheChunkSize() {
+        final short[] input = tone(SAMPLE_RATE);
+        final TimeStretch small = new TimeStretch(SAMPLE_RATE, CHANNELS);
+        final TimeStretch large = new TimeStretch(SAMPLE_RATE, CHANNELS);
+        small.setSpeed(1.5f);
+        large.setSpeed(1.5f);
+        assertEquals(stretch(small, input, 1024).length, stretch(large, input, 16384).length);
+    }
+
+    @Test
+    public void tracksTheSourcePosition() {
+        final short[] input = tone(SAMPLE_RATE);
+        final TimeStretch stretch = new TimeStretch(SAMPLE_RATE, CHANNELS);
+        stretch.setSpeed(2.0f);
+        stretch(stretch, input, 4096);
+        assertEquals(SAMPLE_RATE, stretch.received());
+        assertEquals(SAMPLE_RATE, stretch.sourcePosition());
+
+        stretch.clear();
+        assertEquals(0, stretch.received());
+        assertEquals(0, stretch.sourcePosition());
+        assertEquals(0, stretch.available());
+    }
+
+    @Test
+    public void clampsTheSpeed() {
+        assertEquals(TimeStretch.MIN_SPEED, TimeStretch.clampSpeed(0.01f), 0);
+        assertEquals(TimeStretch.MAX_SPEED, TimeStretch.clampSpeed(100), 0);
+        assertEquals(TimeStretch.MAX_SPEED, TimeStretch.clampSpeed(Float.POSITIVE_INFINITY), 0);
+        assertEquals(1.0f, TimeStretch.clampSpeed(Float.NaN), 0);
+        assertEquals(1.25f, TimeStretch.clampSpeed(1.25f), 0);
+    }
+}
@@ -0,0 +1,76 @@
+package xyz.luan.audioplayers;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VolumeRampTest {
+    private static final float DELTA = 1e-5f;
+
+    @Test
+    public void everyCurveGoesFromStartToEnd() {
+        for (VolumeRamp.Curve curve : VolumeRamp.Curve.values()) {
+            final VolumeRamp up = new VolumeRamp(0.2f, 0.8f, 1000, 500, curve);
+            assertEquals(curve.name(), 0.2f, up.valueAt(1000), DELTA);
+            assertEquals(curve.name(), 0.8f, up.valueAt(1500), DELTA);
+
+            final VolumeRamp down = new VolumeRamp(1, 0, 1000, 500, curve);
+            assertEquals(curve.name(), 1, down.valueAt(1000), DELTA);
+            assertEquals(curve.name(), 0, down.valueAt(1500), DELTA);
+        }
+    }
+
+    @Test
+    public void holdsTheEndpointsOutsideOfTheRamp() {
+        final VolumeRamp ramp = new VolumeRamp(0, 1, 1000, 500, VolumeRamp.Curve.LINEAR);
+        assertEquals(0, ramp.valueAt(0), DELTA);
+        assertEquals(1, ramp.valueAt(5000), DELTA);
+        assertFalse(ramp.isDoneAt(1499));
+        assertTrue(ramp.isDoneAt(1500));
+    }
+
+    @Test
+    public void curvesHaveTheirShapeHalfway() {
+        assertEquals(0.5f, new VolumeRamp(0, 1, 0, 100, VolumeRamp.Curve.LINEAR).valueAt(50), DELTA);
+        assertEquals(0.25f, new VolumeRamp(0, 1, 0, 100, VolumeRamp.Curve.EASE_IN).valueAt(50), DELTA);
+        assertEquals(0.75f, new VolumeRamp(0, 1, 0, 100, VolumeRamp.Curve.EASE_OUT).valueAt(50), DELTA);
+        final float half = (float) Math.sin(Math.PI / 4);
+        assertEquals(half, new VolumeRamp(0, 1, 0, 100, VolumeRamp.Curve.EQUAL_POWER).valueAt(50), DELTA);
+    }
+
+    @Test
+    public void equalPowerCrossfadeKeepsThePower() {
+        final VolumeRamp out = new VolumeRamp(1, 0, 0, 1000, VolumeRamp.Curve.EQUAL_POWER);
+        final VolumeRamp in = new VolumeRamp(0, 1, 0, 1000, VolumeRamp.Curve.EQUAL_POWER);
+        for (int time = 0; time <= 1000; time += 100) {
+            final float a = out.valueAt(time);
+            final float b = in.valueAt(time);
+            assertEquals(1, a * a + b * b, 1e-4f);
+        }
+    }
+
+    @Test
+    public void anEmptyRampIsAtItsEnd() {
+        final VolumeRamp ramp = new VolumeRamp(0, 0.6f, 1000, -5, VolumeRamp.Curve.EASE_IN);
+        assertEquals(0, ramp.duration);
+        assertEquals(0.6f, ramp.valueAt(0), DELTA);
+        assertTrue(ramp.isDoneAt(1000));
+    }
+
+    @Test
+    public void samplesAreScaledAndClamped() {
+        final VolumeRamp ramp = new VolumeRamp(0, 0.5f, 0, 100, VolumeRamp.Curve.LINEAR);
+        final float[] times = new float[5];
+        final float[] volumes = new float[5];
+        ramp.sample(times, volumes, 0.25f);
+
+        assertEquals(0, times[0], DELTA);
+        assertEquals(1, times[4], DELTA);
+        assertEquals(0, volumes[0], DELTA);
+        assertEquals(0.5f, volumes[1], DELTA);
+        // 0.5 / 0.25 is past the full volume of a shaper
+        assertEquals(1, volumes[4], DELTA);
+    }
+}
@@ -78,7 +78,7 @@ FlutterMethodChannel *_channel_audioplayer;
     NSDictionary *methods = @{
                               @"fetchExistPlayer":
                                   ^{
-                                      result(PLAY_ID);
+                                      result(@[PLAY_ID]);
                                   },
                               @"deleteNotification":
                                   ^{
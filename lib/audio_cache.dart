@@ -11,6 +11,8 @@ import 'audioplayers.dart';
 ///
 /// Flutter can only play audios on device folders, so this first copies files to a temporary folder and the plays then.
 /// You can pre-cache your audio, or clear the cache, as desired.
+///
+/// On Android, [nativeAssets] skips the copies and plays the assets straight from the app package.
 class AudioCache {
   /// A reference to the loaded files.
   Map<String, File> loadedFiles = {};
@@ -27,7 +29,14 @@ class AudioCache {
   /// If this is set, every call will overwrite previous calls.
   AudioPlayer fixedPlayer;
 
-  AudioCache({this.prefix = "", this.fixedPlayer = null});
+  /// Whether to play the assets natively, without copying them to a temporary folder (Android only).
+  bool nativeAssets;
+
+  AudioCache(
+      {this.prefix = "", this.fixedPlayer = null, this.nativeAssets = false});
+
+  /// Whether assets are actually played natively: [nativeAssets] is ignored on other platforms than Android.
+  bool get useNativeAssets => nativeAssets && Platform.isAndroid;
 
   /// Clear the cache of the file [fileName].
   ///
@@ -76,6 +85,25 @@ class AudioCache {
     return loadedFiles[fileName];
   }
 
+  /// Prepares all the [fileNames] to be played.
+  ///
+  /// With [useNativeAssets], the assets are opened natively in parallel instead of being copied. Returns how many
+  /// files are ready.
+  Future<int> preload(List<String> fileNames) async {
+    if (useNativeAssets) {
+      return AudioPlayer.preloadAssets(
+          fileNames.map((fileName) => 'assets/$prefix$fileName').toList());
+    }
+    return (await loadAll(fileNames)).length;
+  }
+
+  Future<String> _url(String fileName) async {
+    if (useNativeAssets) {
+      return AudioPlayer.assetUrl('assets/$prefix$fileName');
+    }
+    return (await load(fileName)).path;
+  }
+
   AudioPlayer _player() {
     return fixedPlayer ?? new AudioPlayer();
   }
@@ -86,9 +114,9 @@ class AudioCache {
   /// It creates a new instance of [AudioPlayer], so it does not affect other audios playing (unless you specify a [fixedPlayer], in which case it always use the same).
   /// The instance is returned, to allow later access (either way), like pausing and resuming.
   Future<AudioPlayer> play(String fileName, {double volume = 1.0}) async {
-    File file = await load(fileName);
+    String url = await _url(fileName);
     AudioPlayer player = _player();
-    await player.play(file.path, isLocal: true, volume: volume);
+    await player.play(url, isLocal: true, volume: volume);
     return player;
   }
 
@@ -96,10 +124,10 @@ class AudioCache {
   ///
   /// The instance of [AudioPlayer] created is returned, so you can use it to stop the playback as desired.
   Future<AudioPlayer> loop(String fileName, {double volume = 1.0}) async {
-    File file = await load(fileName);
+    String url = await _url(fileName);
     AudioPlayer player = _player();
     player.setReleaseMode(ReleaseMode.LOOP);
-    player.play(file.path, isLocal: true, volume: volume);
+    player.play(url, isLocal: true, volume: volume);
     return player;
   }
 }
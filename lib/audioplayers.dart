@@ -1,10 +1,13 @@
 import 'dart:async';
 import 'dart:io';
+import 'dart:typed_data';
 
 import 'package:flutter/foundation.dart';
 import 'package:flutter/services.dart';
 import 'package:uuid/uuid.dart';
 
+import 'position_interpolator.dart';
+
 typedef void TimeChangeHandler(Duration duration);
 typedef void ErrorHandler(String message);
 typedef void AudioPlayerStateChangeHandler(AudioPlayerState state);
@@ -31,6 +34,99 @@ enum ReleaseMode {
   STOP
 }
 
+/// This enum selects the engine used to play the audio on Android (other platforms ignore it).
+///
+/// Pass it as a parameter to [AudioPlayer.play] or [AudioPlayer.setUrl].
+enum PlayerMode {
+  /// Uses a regular MediaPlayer, that can play anything (local or remote, short or long) and seek.
+  ///
+  /// This is the default option.
+  MEDIA_PLAYER,
+
+  /// Decodes the file once into memory and keeps it there, so it starts with minimal latency.
+  ///
+  /// Best for short sound effects. Only local files are supported, seeking is not supported, and calling [AudioPlayer.play] again while playing starts an overlapping copy of the sound instead of restarting it.
+  LOW_LATENCY,
+
+  /// Decodes the file once into a shared in-memory cache of raw audio and plays it from there (Android only).
+  ///
+  /// Best for short sounds replayed many times, like clicks and hits. Changing the speed also changes the pitch, and
+  /// calling [AudioPlayer.play] again while playing restarts the sound. See [AudioPlayer.configurePcmCache].
+  PCM_CACHE,
+
+  /// Like [PCM_CACHE], but all the players share a single output mixed in software (Android only).
+  ///
+  /// Avoids the system limit on concurrent players when many sounds overlap. See [AudioPlayer.configureMixer].
+  MIXER,
+
+  /// Decodes the source while playing and time-stretches it, so [AudioPlayer.setSpeed] keeps the pitch on every
+  /// Android version (Android only).
+  ///
+  /// Plays the same sources as [MEDIA_PLAYER], for a bit more CPU; use it where [AudioPlayer.isSupportChangeSpeed] is
+  /// false with the default engine.
+  TIME_STRETCH
+}
+
+/// What happens to a new player when the limit set with [AudioPlayer.configurePlayerLimit] is reached (Android only).
+enum AdmissionPolicy {
+  /// Its calls fail with a `Player limit reached` error.
+  REJECT,
+
+  /// The least recently used player (preferring the ones not playing) is released and forgotten to make room.
+  ///
+  /// That player gets an [AudioPlayer.onPlayerError] and goes to [AudioPlayerState.STOPPED].
+  STEAL_LRU,
+
+  /// Its calls wait until another player is disposed with [AudioPlayer.dispose], or has its resources released
+  /// after being idle (see [AudioPlayer.configureReclaim]); that one is then forgotten like with [STEAL_LRU].
+  QUEUE
+}
+
+/// How urgently the source of a player is needed, ordering the prepares waiting for a slot (Android only, see
+/// [AudioPlayer.configurePrepare] and [AudioPlayer.setPreparePriority]).
+enum PreparePriority {
+  /// Needed now. A player started while its source waits is always prepared with this priority.
+  INTERACTIVE,
+
+  /// Likely needed soon. This is the default.
+  PREFETCH,
+
+  /// Loaded ahead of time, whenever there is room.
+  BACKGROUND
+}
+
+/// What a player plays, used by the system to route it and apply its volume (Android only, see
+/// [AudioPlayer.setAudioAttributes]).
+enum AudioUsage {
+  MEDIA,
+
+  /// Game sounds and music.
+  GAME,
+  NOTIFICATION,
+  ALARM,
+
+  /// User interface sounds.
+  ASSISTANCE_SONIFICATION,
+  VOICE_COMMUNICATION
+}
+
+/// The kind of content a player plays (Android only, see [AudioPlayer.setAudioAttributes]).
+enum AudioContentType { MUSIC, SPEECH, SONIFICATION, MOVIE }
+
+/// The shape of a volume change made with [AudioPlayer.fadeTo].
+enum FadeCurve {
+  LINEAR,
+
+  /// Starts slowly and ends fast.
+  EASE_IN,
+
+  /// Starts fast and ends slowly.
+  EASE_OUT,
+
+  /// Sine shaped, so two players crossfading with it keep the same total loudness.
+  EQUAL_POWER
+}
+
 enum AudioPlayerState {
   STOPPED,
   PLAYING,
@@ -38,6 +134,21 @@ enum AudioPlayerState {
   COMPLETED,
 }
 
+/// A single command of an [AudioPlayer.batch] call, like `AudioPlayerCommand(player, 'setVolume', {'volume': 0.5})`.
+///
+/// [method] and [arguments] are the same used by the corresponding [AudioPlayer] method on the channel.
+class AudioPlayerCommand {
+  final AudioPlayer player;
+  final String method;
+  final Map<String, dynamic> arguments;
+
+  AudioPlayerCommand(this.player, this.method, [this.arguments = const {}]);
+
+  Map<String, dynamic> toMap() {
+    return {'playerId': player.playerId, 'method': method, 'args': arguments};
+  }
+}
+
 /// This represents a single AudioPlayer, that can play one audio at a time (per instance).
 ///
 /// It features methods to play, loop, pause, stop, seek the audio, and some useful hooks for handlers and callbacks.
@@ -49,6 +160,9 @@ class AudioPlayer {
   static final _uuid = new Uuid();
   static AudioPlayer _instance;
 
+  static const Duration _defaultProgressInterval =
+      const Duration(milliseconds: 200);
+
   final StreamController<AudioPlayerState> _playerStateController =
       new StreamController.broadcast();
 
@@ -67,6 +181,22 @@ class AudioPlayer {
   final StreamController<String> _errorController =
       new StreamController.broadcast();
 
+  final StreamController<bool> _preparedController =
+      new StreamController.broadcast();
+
+  final StreamController<bool> _bufferingController =
+      new StreamController.broadcast();
+
+  final StreamController<int> _bufferingUpdateController =
+      new StreamController.broadcast();
+
+  final PositionInterpolator _interpolator = new PositionInterpolator();
+  // the url last set, null if unknown (bytes, playlists)
+  String _url;
+  bool _smoothPositions = false;
+  Duration _frameInterval;
+  Timer _frameTimer;
+
   /// This is a reference map with all the players created by the application.
   ///
   /// This is used to route messages to and from the channel (there is only one channel).
@@ -92,10 +222,13 @@ class AudioPlayer {
       _playerStateController.stream;
 
   /// Stream for subscribing to audio position change events. Roughly fires
-  /// every 200 milliseconds. Will continously update the position of the
-  /// playback if the status is [AudioPlayerState.PLAYING].
+  /// every 200 milliseconds (see [setProgressInterval]), or on every frame with [setSmoothPositions]. Will
+  /// continously update the position of the playback if the status is [AudioPlayerState.PLAYING].
   Stream<Duration> get onAudioPositionChanged => _positionController.stream;
 
+  /// The current position, extrapolated from the last position sent by the native side, without querying it.
+  Duration get position => _interpolator.position;
+
   /// This handler returns the duration of the file, when it's available (it might take a while because it's being downloaded or buffered).
   Stream<Duration> get onDurationChanged => _durationController.stream;
 
@@ -120,6 +253,22 @@ class AudioPlayer {
   @deprecated
   VoidCallback completionHandler;
 
+  /// Fires when the source is ready to start (true), or could not be prepared (false) (Android only).
+  ///
+  /// A remote source is only reported as not prepared once its last retry failed; see [onPlayerBuffering].
+  ///
+  /// Useful to wait until the sounds of a screen are loaded; see [configurePrepare].
+  Stream<bool> get onPlayerPrepared => _preparedController.stream;
+
+  /// Fires true when playback stalls waiting for data, and false when it goes on (Android only).
+  ///
+  /// Positions are not updated while buffering. A failing remote source is also reported as buffering while it is
+  /// retried, before [onPlayerError] if it keeps failing.
+  Stream<bool> get onPlayerBuffering => _bufferingController.stream;
+
+  /// How much of a remote source is buffered, in percent, when it changes (Android only).
+  Stream<int> get onBufferingUpdate => _bufferingUpdateController.stream;
+
   /// This is called when an unexpected error is thrown in the native code.
   Stream<String> get onPlayerError => _errorController.stream;
   @deprecated
@@ -130,6 +279,9 @@ class AudioPlayer {
   /// It's used to route messages via the single channel properly.
   String playerId;
 
+  /// Returns the shared instance, attached to the first player that already exists natively if any.
+  ///
+  /// Use [AudioPlayer.withId] for several players playing at the same time.
   factory AudioPlayer() {
     if (_instance == null) {
       debugPrint(" current player size: ${players.length}");
@@ -145,9 +297,10 @@ class AudioPlayer {
       "fetchExistPlayer",
     )
         .then((result) {
-      if (result != null) {
-        playerId = result;
-        _log("preious player exsit: $result");
+      final List<dynamic> ids = result is String ? [result] : result;
+      if (ids != null && ids.isNotEmpty) {
+        playerId = ids.first;
+        _log("preious player exsit: $playerId");
       } else {
         playerId = _uuid.v4();
         _log("preious player not exsit newId => $playerId");
@@ -156,10 +309,50 @@ class AudioPlayer {
     });
   }
 
+  /// Creates an independent player, with the given [playerId] or a new random unique one.
+  AudioPlayer.withId([String playerId]) {
+    this.playerId = playerId ?? _uuid.v4();
+    players[this.playerId] = this;
+  }
+
+  /// Returns a player for every player that exists natively, for example after the Flutter UI was restarted while
+  /// the audio kept playing.
+  static Future<List<AudioPlayer>> fetchExistingPlayers() async {
+    final dynamic result = await _channel.invokeMethod('fetchExistPlayer');
+    final List<dynamic> ids = result is String ? [result] : (result ?? []);
+    return ids
+        .map((id) => players[id] ?? AudioPlayer.withId(id as String))
+        .toList();
+  }
+
+  /// Limits how many players can exist at once on Android (0 for no limit), and sets what happens to new players
+  /// past that limit.
+  static Future<int> configurePlayerLimit(
+      {int maxPlayers = 0, AdmissionPolicy policy = AdmissionPolicy.REJECT}) {
+    return _channel.invokeMethod('configurePlayerLimit', {
+      'maxPlayers': maxPlayers,
+      'policy': policy.toString(),
+    }).then((result) => (result as int));
+  }
+
+  /// Describes the native players (Android only): the limit (`maxPlayers`, `policy`), how many calls wait for a
+  /// free slot (`waitingCalls`), how many sources are being prepared (`preparing`) or wait for it (`waitingPrepares`),
+  /// and for each player in `players`, its `playerId`, `mode`, whether it is `released`
+  /// or `playing`, how many `nativePlayers` it holds, its `idleTime` in milliseconds, how many times it prepared a
+  /// source (`prepares`) and how many of its commands were dropped because newer ones superseded them
+  /// (`cancelledCommands`), and its `preparePriority`.
+  static Future<Map<dynamic, dynamic>> getPlayerResources() {
+    return _channel.invokeMethod('getPlayerResources');
+  }
+
   Future<int> _invokeMethod(String method,
       [Map<String, dynamic> arguments = const {}]) {
     Map<String, dynamic> withPlayerId = Map.of(arguments);
     withPlayerId['playerId'] = playerId;
+    if (playerId != null) {
+      // a disposed player used again gets a new native player
+      players.putIfAbsent(playerId, () => this);
+    }
     return _channel
         .invokeMethod(method, withPlayerId)
         .then((result) => (result as int));
@@ -167,14 +360,19 @@ class AudioPlayer {
 
   /// Play audio. Url can be a remote url (isLocal = false) or a local file system path (isLocal = true).
   Future<int> play(String url,
-      {bool isLocal: false, double volume: 1.0, Duration position}) async {
+      {bool isLocal: false,
+      double volume: 1.0,
+      Duration position,
+      PlayerMode mode: PlayerMode.MEDIA_PLAYER}) async {
     final double positionInSeconds =
         position == null ? null : position.inSeconds.toDouble();
+    _changeSource(url);
     int result = await _invokeMethod('play', {
       'url': url,
       'isLocal': isLocal,
       'volume': volume,
-      'position': positionInSeconds
+      'position': positionInSeconds,
+      'mode': mode.toString(),
     });
 
     if (result == 1) {
@@ -200,6 +398,7 @@ class AudioPlayer {
 
   /// Stop the currently playing audio (resumes from the beginning).
   Future<int> stop() async {
+    _forgetPosition();
     int result = await _invokeMethod('stop');
     if (result == 1) {
       state = AudioPlayerState.STOPPED;
@@ -216,6 +415,22 @@ class AudioPlayer {
     return result;
   }
 
+  /// Releases the player and forgets it, freeing its slot (see [configurePlayerLimit]).
+  ///
+  /// Using it again afterwards creates a new native player, without the previous source or settings.
+  Future<int> dispose() async {
+    int result = await _invokeMethod('dispose');
+    _smoothPositions = false;
+    _url = null;
+    _forgetPosition();
+    players.remove(playerId);
+    if (_instance == this) {
+      _instance = null;
+    }
+    state = AudioPlayerState.STOPPED;
+    return result;
+  }
+
   /// Release the resources associated with this media player.
   ///
   /// It will be prepared again if needed.
@@ -234,6 +449,69 @@ class AudioPlayer {
     return _invokeMethod('seek', {'position': positionInSeconds});
   }
 
+  /// Changes the volume progressively over [duration], natively (Android only).
+  ///
+  /// Completes once the fade is over, with 1, or with 0 if it was interrupted by another fade, a volume change, a
+  /// pause, a stop or a new source (the volume then jumps to the target).
+  Future<int> fadeTo(double volume, Duration duration,
+      {FadeCurve curve = FadeCurve.LINEAR}) {
+    return _invokeMethod('fadeTo', {
+      'volume': volume,
+      'duration': duration.inMilliseconds,
+      'curve': curve.toString(),
+    });
+  }
+
+  /// Fades [from] out and pauses it, while [to] resumes and fades in up to its current volume, over [duration]
+  /// (Android only).
+  ///
+  /// [from] gets its volume back once paused, or if its fade is interrupted. Completes once both fades are over, with 1,
+  /// or with 0 if one of them was interrupted.
+  static Future<int> crossfade(
+      AudioPlayer from, AudioPlayer to, Duration duration) {
+    return _channel.invokeMethod('crossfade', {
+      'fromPlayerId': from.playerId,
+      'toPlayerId': to.playerId,
+      'duration': duration.inMilliseconds,
+    }).then((result) => (result as int));
+  }
+
+  /// Sets what this player plays, for the system to route it and apply its volume (Android 5+ only).
+  ///
+  /// Only [PlayerMode.MEDIA_PLAYER] players use them, the other modes always play game sounds. The current source
+  /// is prepared again on the next [resume].
+  Future<int> setAudioAttributes(
+      {AudioUsage usage = AudioUsage.MEDIA,
+      AudioContentType contentType = AudioContentType.MUSIC}) {
+    return _invokeMethod('setAudioAttributes', {
+      'usage': usage.toString(),
+      'contentType': contentType.toString(),
+    });
+  }
+
+  /// Starts a scrub gesture (Android only): until [endScrub], the positions given to [scrubTo] or [seek] are sought
+  /// at most every 50 milliseconds, to the closest key frame when supported, and [onPlayerSeekCompletion] does not
+  /// fire for them.
+  Future<int> beginScrub() {
+    return _invokeMethod('beginScrub');
+  }
+
+  /// Moves the cursor during a scrub gesture, see [beginScrub].
+  Future<int> scrubTo(Duration position) {
+    return _invokeMethod('scrubTo', {
+      'position': position.inMicroseconds / Duration.microsecondsPerSecond
+    });
+  }
+
+  /// Ends a scrub gesture with an exact seek to [position], or to the last position given to [scrubTo].
+  Future<int> endScrub([Duration position]) {
+    return _invokeMethod('endScrub', {
+      'position': position == null
+          ? null
+          : position.inMicroseconds / Duration.microsecondsPerSecond
+    });
+  }
+
   /// Sets the volume (ampliutde). 0.0 is mute and 1.0 is max, the rest is linear interpolation.
   Future<int> setVolume(double volume) {
     return _invokeMethod('setVolume', {'volume': volume});
@@ -252,22 +530,351 @@ class AudioPlayer {
   /// Changes the url (source), without resuming playback (like play would do).
   ///
   /// This will keep the resource prepared (on Android) for when resume is called.
-  Future<int> setUrl(String url, {bool isLocal: false}) {
-    return _invokeMethod('setUrl', {'url': url, 'isLocal': isLocal});
+  Future<int> setUrl(String url,
+      {bool isLocal: false, PlayerMode mode: PlayerMode.MEDIA_PLAYER}) {
+    _changeSource(url);
+    return _invokeMethod(
+        'setUrl', {'url': url, 'isLocal': isLocal, 'mode': mode.toString()});
+  }
+
+  /// Sets audio held in memory as the source, without resuming playback (Android 6.0+ only).
+  ///
+  /// The bytes are played straight from memory, with no temporary file. If [complete] is false, more can be added with
+  /// [appendBytes], and playback can start before the last of them arrive, e.g. for speech being synthesized. Works with
+  /// every [PlayerMode] but [PlayerMode.LOW_LATENCY]; the bytes are dropped when the player is disposed or set again.
+  Future<int> setBytes(Uint8List bytes,
+      {bool complete = true, PlayerMode mode: PlayerMode.MEDIA_PLAYER}) {
+    _changeSource(null);
+    return _invokeMethod('setBytes',
+        {'bytes': bytes, 'complete': complete, 'mode': mode.toString()});
+  }
+
+  /// Appends to the bytes set with [setBytes] while not [complete] (Android only).
+  ///
+  /// Returns 0 if there are none, or they were already complete.
+  Future<int> appendBytes(Uint8List bytes, {bool complete = false}) {
+    return _invokeMethod(
+        'appendBytes', {'bytes': bytes, 'complete': complete});
+  }
+
+  /// Replaces the playlist of this player with [urls] and loads the one at [index], without resuming playback.
+  ///
+  /// On Android, the next item is prepared while the current one plays, so tracks change without a gap; on devices that cannot chain players, consecutive tracks are crossfaded over [crossfade] instead.
+  /// [onPlayerCompletion] still fires at the end of each track, and [onDurationChanged] reports the new one.
+  Future<int> setQueue(List<String> urls,
+      {int index = 0,
+      bool isLocal: false,
+      Duration crossfade = const Duration(seconds: 2)}) {
+    _changeSource(null);
+    return _invokeMethod('setQueue', {
+      'urls': urls,
+      'index': index,
+      'isLocal': isLocal,
+      'crossfade': crossfade.inMilliseconds,
+    });
+  }
+
+  /// Appends [url] to the end of the playlist set with [setQueue].
+  Future<int> enqueue(String url, {bool isLocal: false}) {
+    return _invokeMethod('enqueue', {'url': url, 'isLocal': isLocal});
+  }
+
+  /// Skips to the next item of the playlist, keeping the current playing state.
+  Future<int> next() {
+    _changeSource(null);
+    return _invokeMethod('next');
   }
 
+  /// Goes back to the previous item of the playlist, keeping the current playing state.
+  Future<int> previous() {
+    _changeSource(null);
+    return _invokeMethod('previous');
+  }
+
+  /// Sets how often [onAudioPositionChanged] fires while playing (Android only). The default is 200 milliseconds.
+  ///
+  /// Use [Duration.zero] to turn the position updates off for this player.
+  Future<int> setProgressInterval(Duration interval) {
+    return _invokeMethod(
+        'setProgressInterval', {'interval': interval.inMilliseconds});
+  }
+
+  /// Makes [onAudioPositionChanged] fire every [frameInterval] while playing, with positions extrapolated on the
+  /// Dart side (Android only).
+  ///
+  /// The native player then only sends its position when playback starts, pauses, seeks or changes speed, and every
+  /// [correctionInterval] to correct the drift, instead of every 200 milliseconds.
+  Future<int> setSmoothPositions(bool enabled,
+      {Duration correctionInterval = const Duration(seconds: 2),
+      Duration frameInterval = const Duration(microseconds: 16667)}) {
+    _smoothPositions = enabled;
+    _frameInterval = frameInterval;
+    _frameTimer?.cancel();
+    _frameTimer = null;
+    _updateFrameTimer();
+    return setProgressInterval(
+        enabled ? correctionInterval : _defaultProgressInterval);
+  }
+
+  /// Forgets the position of the previous source, unless [url] is the one already set (setting it again changes
+  /// nothing natively).
+  void _changeSource(String url) {
+    if (url == null || url != _url) {
+      _forgetPosition();
+    }
+    _url = url;
+  }
+
+  /// Drops the anchors and the duration, so the position does not move on from the previous source or playback.
+  void _forgetPosition() {
+    _interpolator.reset();
+    _updateFrameTimer();
+  }
+
+  void _updateFrameTimer() {
+    final bool run = _smoothPositions && _interpolator.isMoving;
+    if (run && _frameTimer == null) {
+      _frameTimer = new Timer.periodic(
+          _frameInterval, (_) => _emitPosition(_interpolator.position));
+    } else if (!run && _frameTimer != null) {
+      _frameTimer.cancel();
+      _frameTimer = null;
+    }
+  }
+
+  void _emitPosition(Duration position) {
+    _positionController.add(position);
+    if (positionHandler != null) {
+      positionHandler(position);
+    }
+  }
+
+  /// Sets the slowest rate of position updates while the app is in background (Android only). The default is 1 second.
+  ///
+  /// Use [Duration.zero] to stop the position updates altogether while in background.
+  static Future<int> setBackgroundProgressInterval(Duration interval) {
+    return _channel.invokeMethod('setBackgroundProgressInterval', {
+      'interval': interval.inMilliseconds
+    }).then((result) => (result as int));
+  }
+
+  /// Sets the playback speed, 1.0 being the normal speed. A paused player keeps its speed for when it resumes.
+  ///
+  /// On Android, the default engine needs Android 6.0 or later; [PlayerMode.TIME_STRETCH] works on every version, from
+  /// 0.25 to 4. The speed must be positive.
   Future<void> setSpeed(double speed) {
     return _invokeMethod('setSpeed', {
       'speed': speed,
     });
   }
 
+  /// Whether [setSpeed] works for this player, given its engine and the Android version.
   Future<bool> isSupportChangeSpeed() async {
     Map<String, dynamic> withPlayerId = Map();
     withPlayerId['playerId'] = playerId;
     return _channel.invokeMethod('isSupportChangeSpeed', withPlayerId);
   }
 
+  /// Runs several [commands], possibly on different players, in a single round trip to the native side (Android only).
+  ///
+  /// Returns one result per command, either `{'result': value}` or `{'error': code, 'message': message}`.
+  /// If [syncStart] is true, the `play` and `resume` commands only prepare their players, and all of them start together once they are all ready; useful to start layered loops in sync.
+  static Future<List<dynamic>> batch(List<AudioPlayerCommand> commands,
+      {bool syncStart = false}) async {
+    List<dynamic> results = await _channel.invokeMethod('batch', {
+      'commands': commands.map((command) => command.toMap()).toList(),
+      'syncStart': syncStart,
+    });
+    for (int i = 0; i < commands.length && results != null; i++) {
+      if ((results[i] as Map)['result'] == 1) {
+        commands[i].player._updateState(commands[i].method);
+      }
+    }
+    return results;
+  }
+
+  void _updateState(String method) {
+    switch (method) {
+      case 'play':
+      case 'resume':
+        state = AudioPlayerState.PLAYING;
+        break;
+      case 'pause':
+        state = AudioPlayerState.PAUSED;
+        break;
+      case 'stop':
+      case 'release':
+        state = AudioPlayerState.STOPPED;
+        break;
+    }
+  }
+
+  /// Creates up to [count] native players ahead of time, so the first sounds do not pay for it (Android only).
+  ///
+  /// The pre-warmed players are kept in a pool shared by all instances; see [configurePlayerPool].
+  static Future<int> prewarm(int count) {
+    return _channel
+        .invokeMethod('prewarm', {'count': count})
+        .then((result) => (result as int));
+  }
+
+  /// Configures the pool of idle native players (Android only).
+  ///
+  /// At most [maxSize] idle players are kept, and each one is disposed after being idle for [idleTimeout].
+  /// A zero [idleTimeout] keeps idle players until the pool is reconfigured.
+  static Future<int> configurePlayerPool(
+      {int maxSize = 4, Duration idleTimeout = const Duration(minutes: 1)}) {
+    return _channel.invokeMethod('configurePool', {
+      'maxSize': maxSize,
+      'idleTimeout': idleTimeout.inMilliseconds,
+    }).then((result) => (result as int));
+  }
+
+  /// Sets how long a player must stay idle (not playing, no calls) before its native resources are released
+  /// (Android only). A zero [idleTimeout] only releases them when the system runs low on memory.
+  ///
+  /// This is transparent: the next [play], [resume] or [seek] prepares the player again at the same position, with
+  /// the same volume, speed and release mode.
+  static Future<int> configureReclaim(
+      {Duration idleTimeout = const Duration(minutes: 5)}) {
+    return _channel.invokeMethod('configureReclaim', {
+      'idleTimeout': idleTimeout.inMilliseconds,
+    }).then((result) => (result as int));
+  }
+
+  /// Returns the timings and counters measured by the native players (Android only).
+  ///
+  /// `histograms` holds, for `dispatch` (from the channel to the audio thread), `setDataSource`, `prepare`, `start`
+  /// (from [resume] to the start of playback, prepare included) and `seek`, the `count` of operations and their
+  /// `mean`, `min`, `max`, `p50`, `p90` and `p99` durations in milliseconds. `counters` holds `playersCreated`,
+  /// `playersReleased` (players created and disposed, not counting their engines being released and prepared again),
+  /// `errors` and `underruns`. With [reset], the metrics start over after being read.
+  static Future<Map<dynamic, dynamic>> getMetrics({bool reset = false}) {
+    return _channel.invokeMethod('getMetrics', {'reset': reset});
+  }
+
+  /// Emits the native player operations as `android.os.Trace` sections when [trace] is true, to see them in systrace
+  /// (Android only).
+  static Future<int> configureMetrics({bool trace = false}) {
+    return _channel.invokeMethod('configureMetrics', {
+      'trace': trace,
+    }).then((result) => (result as int));
+  }
+
+  /// Configures how the players share the audio focus with other apps (Android only).
+  ///
+  /// When [enabled] (the default), the focus is requested once for all the players when one starts. The players are
+  /// paused together when another app takes the focus, and resumed when it comes back if the loss was transient;
+  /// when the other app allows it, their volume is smoothly lowered to [duckVolume] instead.
+  static Future<int> configureAudioFocus(
+      {bool enabled = true, double duckVolume = 0.2}) {
+    return _channel.invokeMethod('configureAudioFocus', {
+      'enabled': enabled,
+      'duckVolume': duckVolume,
+    }).then((result) => (result as int));
+  }
+
+  /// Pauses every playing player (Android only), and returns how many were paused.
+  ///
+  /// They can be resumed together with [resumeAll].
+  static Future<int> pauseAll() {
+    return _channel
+        .invokeMethod('pauseAll')
+        .then((result) => (result as int));
+  }
+
+  /// Resumes the players paused by [pauseAll] (Android only), and returns how many were resumed.
+  static Future<int> resumeAll() {
+    return _channel
+        .invokeMethod('resumeAll')
+        .then((result) => (result as int));
+  }
+
+  /// Sets how many threads the native players run on (Android only). The default is 1.
+  ///
+  /// Players are spread over the threads by their [playerId], so a player always runs on the same one; more threads
+  /// keep a slow player (e.g. one loading a remote source) from holding up the others. Only effective before the first
+  /// player is created, so call it first: returns 0 if it came too late.
+  static Future<int> configureAudioThreads({int threads = 1}) {
+    return _channel.invokeMethod('configureAudioThreads', {
+      'threads': threads,
+    }).then((result) => (result as int));
+  }
+
+  /// Sets how many sources can be prepared at once across all the players (Android only). The default is 4.
+  ///
+  /// The other ones wait, and are prepared by [PreparePriority] then in order. A waiting player is skipped if it is
+  /// released or given another source in the meantime. Readiness is reported by [onPlayerPrepared].
+  static Future<int> configurePrepare({int maxConcurrent = 4}) {
+    return _channel.invokeMethod('configurePrepare', {
+      'maxConcurrent': maxConcurrent,
+    }).then((result) => (result as int));
+  }
+
+  /// Sets the [PreparePriority] of the next sources of this player, when set without playing them (Android only).
+  Future<int> setPreparePriority(PreparePriority priority) {
+    return _invokeMethod(
+        'setPreparePriority', {'priority': priority.toString()});
+  }
+
+  /// Sets how many [PlayerMode.MIXER] players can sound at once (Android only).
+  ///
+  /// Starting one more stops the one that started first, preferring the ones that are not looping; it completes as if
+  /// it reached its end.
+  static Future<int> configureMixer({int maxVoices = 32}) {
+    return _channel.invokeMethod('configureMixer', {
+      'maxVoices': maxVoices,
+    }).then((result) => (result as int));
+  }
+
+  /// Sets how many bytes of decoded audio the [PlayerMode.PCM_CACHE] players keep in memory (Android only).
+  static Future<int> configurePcmCache({int maxBytes = 16 * 1024 * 1024}) {
+    return _channel.invokeMethod('configurePcmCache', {
+      'maxBytes': maxBytes,
+    }).then((result) => (result as int));
+  }
+
+  /// Returns the counters of the [PlayerMode.PCM_CACHE] cache (Android only): `hits`, `misses`, `evictions`,
+  /// `entries`, `bytes` and `maxBytes`.
+  static Future<Map<String, int>> getPcmCacheStats() async {
+    final Map<dynamic, dynamic> stats =
+        await _channel.invokeMethod('getPcmCacheStats');
+    return stats == null ? {} : Map<String, int>.from(stats);
+  }
+
+  /// Opens the given Flutter [assets] (paths as declared in the pubspec) in parallel, so playing them later starts
+  /// faster (Android only). Returns how many could be opened.
+  ///
+  /// Assets are played without being copied by passing [assetUrl] of their path as the url.
+  static Future<int> preloadAssets(List<String> assets) {
+    return _channel.invokeMethod('preloadAssets', {
+      'urls': assets.map(assetUrl).toList(),
+    }).then((result) => (result as int));
+  }
+
+  /// The url that plays the Flutter asset at [path] straight from the app package (Android only).
+  static String assetUrl(String path) => 'asset:///$path';
+
+  /// Enables the on-disk cache for remote sources (Android only), capped at [maxBytes].
+  ///
+  /// Cached bytes are replayed and seeked into without downloading them again; the least recently used files are
+  /// evicted first. A zero [maxBytes] disables the cache.
+  static Future<int> configureCache({int maxBytes = 64 * 1024 * 1024}) {
+    return _channel.invokeMethod('configureCache', {
+      'maxBytes': maxBytes,
+    }).then((result) => (result as int));
+  }
+
+  /// Downloads the first [bytes] bytes of [url] (the whole file if null) into the cache in background (Android only).
+  ///
+  /// Requires the cache to be enabled with [configureCache].
+  static Future<int> preCache(String url, {int bytes}) {
+    return _channel.invokeMethod('preCache', {
+      'url': url,
+      'bytes': bytes,
+    }).then((result) => (result as int));
+  }
+
   static void _log(String param) {
     if (logEnabled) {
       print(param);
@@ -276,8 +883,16 @@ class AudioPlayer {
 
   static Future<void> platformCallHandler(MethodCall call) async {
     debugPrint('_platformCallHandler call ${call.method} ${call.arguments}');
+    if (call.method == 'audio.onPositions') {
+      _handlePositions(call.arguments as Map);
+      return;
+    }
     String playerId = (call.arguments as Map)['playerId'];
     AudioPlayer player = players[playerId];
+    if (player == null) {
+      // late events of a disposed player
+      return;
+    }
     dynamic value = (call.arguments as Map)['value'];
     switch (call.method) {
       case 'audio.onDuration':
@@ -301,6 +916,7 @@ class AudioPlayer {
           }
         } else {
           Duration newDuration = new Duration(milliseconds: value);
+          player._interpolator.duration = newDuration;
           player._durationController.add(newDuration);
           if (player.durationHandler != null) {
             player.durationHandler(newDuration);
@@ -309,14 +925,32 @@ class AudioPlayer {
         break;
       case 'audio.onCurrentPosition':
         Duration newDuration = new Duration(milliseconds: value);
-        player._positionController.add(newDuration);
-        if (player.positionHandler != null) {
-          player.positionHandler(newDuration);
+        player._interpolator.correct(newDuration);
+        player._emitPosition(newDuration);
+        break;
+      case 'audio.onAnchor':
+        // the anchor was taken 'age' milliseconds before being sent, at the given speed
+        Map arguments = call.arguments as Map;
+        player._interpolator.anchor(new Duration(milliseconds: value),
+            (arguments['speed'] as num).toDouble(),
+            age: new Duration(milliseconds: arguments['age']));
+        if (player._smoothPositions) {
+          player._emitPosition(player._interpolator.position);
         }
+        player._updateFrameTimer();
         break;
       case 'audio.onSeekComplete':
         player._seekCompletionController.add(Duration(milliseconds: value));
         break;
+      case 'audio.onPrepared':
+        player._preparedController.add(value);
+        break;
+      case 'audio.onBuffering':
+        player._bufferingController.add(value);
+        break;
+      case 'audio.onBufferingUpdate':
+        player._bufferingUpdateController.add(value);
+        break;
       case 'audio.onComplete':
         player.state = AudioPlayerState.COMPLETED;
         player._completionController.add(null);
@@ -335,4 +969,33 @@ class AudioPlayer {
         debugPrint('Unknowm method ${call.method} ');
     }
   }
+
+  /// Handles the position updates of several players, sent together by the native side.
+  ///
+  /// A duration of -1 means it did not change since the previous update.
+  static void _handlePositions(Map arguments) {
+    List playerIds = arguments['playerIds'];
+    List positions = arguments['positions'];
+    List durations = arguments['durations'];
+    for (int i = 0; i < playerIds.length; i++) {
+      AudioPlayer player = players[playerIds[i]];
+      if (player == null) {
+        continue;
+      }
+      if (durations[i] != -1) {
+        Duration newDuration = new Duration(milliseconds: durations[i]);
+        player._interpolator.duration = newDuration;
+        player._durationController.add(newDuration);
+        if (player.durationHandler != null) {
+          player.durationHandler(newDuration);
+        }
+      }
+      Duration newPosition = new Duration(milliseconds: positions[i]);
+      player._interpolator.correct(newPosition);
+      if (!player._smoothPositions || !player._interpolator.hasAnchor) {
+        // without anchors (e.g. on iOS) the reported positions are all there is
+        player._emitPosition(newPosition);
+      }
+    }
+  }
 }
@@ -0,0 +1,84 @@
+/// Returns the time elapsed on a monotonic clock, from an arbitrary origin.
+typedef Duration MonotonicClock();
+
+/// Extrapolates the position of a player between the anchors sent by the native side.
+///
+/// An anchor tells where playback stood at a given time and how fast it moves. Anchors only come when the playback
+/// clock changes (start, pause, seek, speed change, completion), plus the periodic position reports which act as
+/// drift corrections, so the position can be read as often as needed (e.g. on every frame) without querying the
+/// native player.
+class PositionInterpolator {
+  static final Stopwatch _stopwatch = new Stopwatch()..start();
+
+  final MonotonicClock _clock;
+
+  Duration _position = Duration.zero;
+  Duration _anchoredAt;
+  bool _anchored = false;
+  double _speed = 0.0;
+  Duration _lastDrift = Duration.zero;
+
+  /// The duration of the source, used to keep the extrapolated position in bounds; null if unknown.
+  Duration duration;
+
+  /// Creates an interpolator reading the time from [clock], a [Stopwatch] started once by default.
+  PositionInterpolator({MonotonicClock clock})
+      : _clock = clock ?? (() => _stopwatch.elapsed);
+
+  /// Whether an anchor was received yet; corrections alone do not make the position move.
+  bool get hasAnchor => _anchored;
+
+  /// Whether the position is moving, that is whether playback is running at a positive speed.
+  bool get isMoving => _anchored && _speed > 0;
+
+  /// The speed of the last anchor, 0 while paused or stopped.
+  double get speed => _speed;
+
+  /// How far the extrapolated position was from the position reported by the last correction.
+  ///
+  /// Positive when the extrapolation ran ahead of the native player.
+  Duration get lastDrift => _lastDrift;
+
+  /// The extrapolated position, now.
+  Duration get position {
+    if (_anchoredAt == null) {
+      return _position;
+    }
+    Duration position = _position;
+    if (_speed > 0) {
+      position += (_clock() - _anchoredAt) * _speed;
+    }
+    if (duration != null && duration > Duration.zero && position > duration) {
+      return duration;
+    }
+    return position;
+  }
+
+  /// Sets a new anchor: playback was at [position] [age] ago, moving at [speed] (0 if not playing).
+  void anchor(Duration position, double speed, {Duration age = Duration.zero}) {
+    _position = position + age * speed;
+    _anchoredAt = _clock();
+    _anchored = true;
+    _speed = speed;
+  }
+
+  /// Corrects the drift with a position reported by the native player while playing, keeping the current speed.
+  void correct(Duration position, {Duration age = Duration.zero}) {
+    final Duration actual = position + age * _speed;
+    if (isMoving) {
+      _lastDrift = this.position - actual;
+    }
+    _position = actual;
+    _anchoredAt = _clock();
+  }
+
+  /// Forgets the anchors, e.g. when the source changes.
+  void reset() {
+    _position = Duration.zero;
+    _anchoredAt = null;
+    _anchored = false;
+    _speed = 0.0;
+    _lastDrift = Duration.zero;
+    duration = null;
+  }
+}
@@ -9,8 +9,17 @@ import 'package:test/test.dart';
 class MyAudioCache extends AudioCache {
   List<String> called = [];
 
-  MyAudioCache({String prefix = "", AudioPlayer fixedPlayer = null})
-      : super(prefix: prefix, fixedPlayer: fixedPlayer);
+  MyAudioCache(
+      {String prefix = "",
+      AudioPlayer fixedPlayer = null,
+      bool nativeAssets = false})
+      : super(
+            prefix: prefix,
+            fixedPlayer: fixedPlayer,
+            nativeAssets: nativeAssets);
+
+  @override
+  bool get useNativeAssets => nativeAssets;
 
   @override
   Future<File> fetchToMemory(String fileName) async {
@@ -25,7 +34,11 @@ void main() {
   _channel.setMockMethodCallHandler((c) async => '/tmp');
 
   const channel = const MethodChannel('xyz.luan/audioplayers');
-  channel.setMockMethodCallHandler((MethodCall call) async => 1);
+  final List<MethodCall> calls = <MethodCall>[];
+  channel.setMockMethodCallHandler((MethodCall call) async {
+    calls.add(call);
+    return 1;
+  });
 
   group('AudioCache', () {
     test('sets cache', () async {
@@ -52,5 +65,19 @@ void main() {
       AudioPlayer a3 = await regular.play('audio.mp3');
       expect(a3.playerId, isNot(fixedId));
     });
+
+    test('native assets are not copied', () async {
+      MyAudioCache player =
+          new MyAudioCache(prefix: 'audio/', nativeAssets: true);
+      calls.clear();
+      await player.preload(['audio.mp3']);
+      await player.play('audio.mp3');
+      expect(player.called, hasLength(0));
+      expect(calls.first.method, 'preloadAssets');
+      expect(calls.first.arguments['urls'],
+          ['asset:///assets/audio/audio.mp3']);
+      expect(calls.last.method, 'play');
+      expect(calls.last.arguments['url'], 'asset:///assets/audio/audio.mp3');
+    });
   });
 }
@@ -1,6 +1,9 @@
+import 'dart:typed_data';
+
 import 'package:flutter/services.dart';
 import 'package:test/test.dart';
 import 'package:audioplayers/audioplayers.dart';
+import 'package:audioplayers/position_interpolator.dart';
 
 void main() {
   List<MethodCall> calls = [];
@@ -21,8 +24,8 @@ void main() {
 
     test('multiple players', () async {
       calls.clear();
-      AudioPlayer player1 = new AudioPlayer();
-      AudioPlayer player2 = new AudioPlayer();
+      AudioPlayer player1 = new AudioPlayer.withId();
+      AudioPlayer player2 = new AudioPlayer.withId();
 
       await player1.play('internet.com/file.mp3');
       String player1Id = calls[0].arguments['playerId'];
@@ -44,5 +47,343 @@ void main() {
       expect(calls[0].arguments['playerId'], player1Id);
       calls.clear();
     });
+
+    test('#play with mode', () async {
+      calls.clear();
+      AudioPlayer player = new AudioPlayer();
+      await player.play('/tmp/click.mp3',
+          isLocal: true, mode: PlayerMode.LOW_LATENCY);
+      expect(calls, hasLength(1));
+      expect(calls[0].arguments['mode'], 'PlayerMode.LOW_LATENCY');
+    });
+
+    test('#setQueue', () async {
+      calls.clear();
+      AudioPlayer player = new AudioPlayer();
+      await player.setQueue(['internet.com/1.mp3', 'internet.com/2.mp3']);
+      await player.next();
+      expect(calls, hasLength(2));
+      expect(calls[0].method, 'setQueue');
+      expect(calls[0].arguments['urls'], hasLength(2));
+      expect(calls[0].arguments['index'], 0);
+      expect(calls[1].method, 'next');
+    });
+
+    test('#batch', () async {
+      calls.clear();
+      AudioPlayer player = new AudioPlayer();
+      await AudioPlayer.batch([
+        new AudioPlayerCommand(player, 'setVolume', {'volume': 0.5}),
+        new AudioPlayerCommand(player, 'resume'),
+      ], syncStart: true);
+      expect(calls, hasLength(1));
+      expect(calls[0].method, 'batch');
+      expect(calls[0].arguments['syncStart'], true);
+      List commands = calls[0].arguments['commands'];
+      expect(commands, hasLength(2));
+      expect(commands[0]['playerId'], player.playerId);
+      expect(commands[0]['method'], 'setVolume');
+      expect(commands[1]['method'], 'resume');
+    });
+
+    test('#prewarm', () async {
+      calls.clear();
+      await AudioPlayer.prewarm(3);
+      expect(calls, hasLength(1));
+      expect(calls[0].method, 'prewarm');
+      expect(calls[0].arguments['count'], 3);
+    });
+
+    test('create and dispose many players', () async {
+      calls.clear();
+      Set<String> ids = new Set();
+      for (int i = 0; i < 300; i++) {
+        AudioPlayer player = new AudioPlayer.withId();
+        ids.add(player.playerId);
+        expect(AudioPlayer.players[player.playerId], player);
+        await player.play('internet.com/$i.mp3');
+        await player.dispose();
+        expect(AudioPlayer.players.containsKey(player.playerId), isFalse);
+      }
+      expect(ids, hasLength(300));
+      expect(calls, hasLength(600));
+      expect(calls.where((c) => c.method == 'dispose'), hasLength(300));
+    });
+
+    test('#configurePlayerLimit', () async {
+      calls.clear();
+      await AudioPlayer.configurePlayerLimit(
+          maxPlayers: 4, policy: AdmissionPolicy.STEAL_LRU);
+      expect(calls, hasLength(1));
+      expect(calls[0].method, 'configurePlayerLimit');
+      expect(calls[0].arguments['maxPlayers'], 4);
+      expect(calls[0].arguments['policy'], 'AdmissionPolicy.STEAL_LRU');
+    });
+
+    test('#configureReclaim', () async {
+      calls.clear();
+      await AudioPlayer.configureReclaim(idleTimeout: Duration(seconds: 30));
+      expect(calls, hasLength(1));
+      expect(calls[0].method, 'configureReclaim');
+      expect(calls[0].arguments['idleTimeout'], 30000);
+    });
+
+    test('#configureMixer', () async {
+      calls.clear();
+      await AudioPlayer.configureMixer(maxVoices: 8);
+      expect(calls, hasLength(1));
+      expect(calls[0].method, 'configureMixer');
+      expect(calls[0].arguments['maxVoices'], 8);
+    });
+
+    test('#configurePcmCache', () async {
+      calls.clear();
+      await AudioPlayer.configurePcmCache(maxBytes: 2048);
+      expect(calls, hasLength(1));
+      expect(calls[0].method, 'configurePcmCache');
+      expect(calls[0].arguments['maxBytes'], 2048);
+    });
+
+    test('#preCache', () async {
+      calls.clear();
+      await AudioPlayer.configureCache(maxBytes: 1024);
+      await AudioPlayer.preCache('https://example.com/a.mp3', bytes: 512);
+      expect(calls, hasLength(2));
+      expect(calls[0].method, 'configureCache');
+      expect(calls[0].arguments['maxBytes'], 1024);
+      expect(calls[1].method, 'preCache');
+      expect(calls[1].arguments['url'], 'https://example.com/a.mp3');
+      expect(calls[1].arguments['bytes'], 512);
+    });
+
+    test('#setSmoothPositions', () async {
+      calls.clear();
+      AudioPlayer player = new AudioPlayer.withId();
+      await player.setSmoothPositions(true,
+          correctionInterval: const Duration(seconds: 3));
+      await player.setSmoothPositions(false);
+      expect(calls, hasLength(2));
+      expect(calls[0].method, 'setProgressInterval');
+      expect(calls[0].arguments['interval'], 3000);
+      expect(calls[1].arguments['interval'], 200);
+    });
+
+    test('#scrub', () async {
+      calls.clear();
+      AudioPlayer player = new AudioPlayer.withId();
+      await player.beginScrub();
+      await player.scrubTo(const Duration(milliseconds: 1500));
+      await player.endScrub();
+      expect(calls.map((call) => call.method),
+          ['beginScrub', 'scrubTo', 'endScrub']);
+      expect(calls[1].arguments['position'], 1.5);
+      expect(calls[2].arguments['position'], null);
+    });
+
+    test('#configureAudioFocus', () async {
+      calls.clear();
+      await AudioPlayer.configureAudioFocus(duckVolume: 0.5);
+      await AudioPlayer.pauseAll();
+      await AudioPlayer.resumeAll();
+      expect(calls.map((call) => call.method),
+          ['configureAudioFocus', 'pauseAll', 'resumeAll']);
+      expect(calls[0].arguments['enabled'], true);
+      expect(calls[0].arguments['duckVolume'], 0.5);
+    });
+
+    test('#setAudioAttributes', () async {
+      calls.clear();
+      AudioPlayer player = new AudioPlayer.withId();
+      await player.setAudioAttributes(
+          usage: AudioUsage.GAME, contentType: AudioContentType.SONIFICATION);
+      expect(calls[0].arguments['usage'], 'AudioUsage.GAME');
+      expect(calls[0].arguments['contentType'],
+          'AudioContentType.SONIFICATION');
+    });
+
+    test('#fadeTo and #crossfade', () async {
+      calls.clear();
+      AudioPlayer player1 = new AudioPlayer.withId();
+      AudioPlayer player2 = new AudioPlayer.withId();
+      await player1.fadeTo(0.5, const Duration(seconds: 2),
+          curve: FadeCurve.EASE_OUT);
+      await AudioPlayer.crossfade(
+          player1, player2, const Duration(milliseconds: 800));
+      expect(calls, hasLength(2));
+      expect(calls[0].method, 'fadeTo');
+      expect(calls[0].arguments['volume'], 0.5);
+      expect(calls[0].arguments['duration'], 2000);
+      expect(calls[0].arguments['curve'], 'FadeCurve.EASE_OUT');
+      expect(calls[1].method, 'crossfade');
+      expect(calls[1].arguments['fromPlayerId'], player1.playerId);
+      expect(calls[1].arguments['toPlayerId'], player2.playerId);
+      expect(calls[1].arguments['duration'], 800);
+    });
+
+    test('#getMetrics', () async {
+      calls.clear();
+      await AudioPlayer.configureMetrics(trace: true);
+      await AudioPlayer.getMetrics(reset: true);
+      expect(calls[0].method, 'configureMetrics');
+      expect(calls[0].arguments['trace'], true);
+      expect(calls[1].method, 'getMetrics');
+      expect(calls[1].arguments['reset'], true);
+    });
+  });
+
+  group('TimeStretch', () {
+    test('#setSpeed with the time-stretch engine', () async {
+      calls.clear();
+      AudioPlayer player = new AudioPlayer();
+      await player.play('https://example.com/podcast.mp3',
+          mode: PlayerMode.TIME_STRETCH);
+      await player.setSpeed(1.5);
+      await player.isSupportChangeSpeed();
+      expect(calls[0].arguments['mode'], 'PlayerMode.TIME_STRETCH');
+      expect(calls[1].method, 'setSpeed');
+      expect(calls[1].arguments['speed'], 1.5);
+      expect(calls[2].method, 'isSupportChangeSpeed');
+      expect(calls[2].arguments['playerId'], player.playerId);
+    });
+  });
+
+  group('Bytes', () {
+    test('#setBytes and #appendBytes', () async {
+      calls.clear();
+      AudioPlayer player = new AudioPlayer();
+      final Uint8List first = Uint8List.fromList([0x49, 0x44, 0x33]);
+      await player.setBytes(first, complete: false);
+      await player.appendBytes(Uint8List(4), complete: true);
+      expect(calls[0].method, 'setBytes');
+      expect(calls[0].arguments['bytes'], first);
+      expect(calls[0].arguments['complete'], false);
+      expect(calls[0].arguments['mode'], 'PlayerMode.MEDIA_PLAYER');
+      expect(calls[1].method, 'appendBytes');
+      expect(calls[1].arguments['bytes'], hasLength(4));
+      expect(calls[1].arguments['complete'], true);
+    });
+  });
+
+  group('Prepare', () {
+    test('#configurePrepare and #setPreparePriority', () async {
+      calls.clear();
+      AudioPlayer player = new AudioPlayer();
+      await AudioPlayer.configurePrepare(maxConcurrent: 2);
+      await player.setPreparePriority(PreparePriority.BACKGROUND);
+      expect(calls[0].method, 'configurePrepare');
+      expect(calls[0].arguments['maxConcurrent'], 2);
+      expect(calls[1].method, 'setPreparePriority');
+      expect(calls[1].arguments['priority'], 'PreparePriority.BACKGROUND');
+      expect(calls[1].arguments['playerId'], player.playerId);
+    });
+
+    test('#onPlayerPrepared', () async {
+      AudioPlayer player = new AudioPlayer();
+      await player.setPreparePriority(PreparePriority.INTERACTIVE);
+      final Future<bool> prepared = player.onPlayerPrepared.first;
+      await AudioPlayer.platformCallHandler(new MethodCall('audio.onPrepared',
+          {'playerId': player.playerId, 'value': true}));
+      expect(await prepared, true);
+    });
+  });
+
+  group('Buffering', () {
+    test('#onPlayerBuffering and #onBufferingUpdate', () async {
+      AudioPlayer player = new AudioPlayer();
+      await player.setPreparePriority(PreparePriority.INTERACTIVE);
+      final Future<bool> buffering = player.onPlayerBuffering.first;
+      final Future<int> buffered = player.onBufferingUpdate.first;
+      await AudioPlayer.platformCallHandler(new MethodCall('audio.onBuffering',
+          {'playerId': player.playerId, 'value': true}));
+      await AudioPlayer.platformCallHandler(new MethodCall(
+          'audio.onBufferingUpdate',
+          {'playerId': player.playerId, 'value': 42}));
+      expect(await buffering, true);
+      expect(await buffered, 42);
+    });
+  });
+
+  group('Positions', () {
+    Future<void> anchor(AudioPlayer player, int position) {
+      return AudioPlayer.platformCallHandler(new MethodCall('audio.onAnchor', {
+        'playerId': player.playerId,
+        'value': position,
+        'speed': 0.0,
+        'age': 0,
+      }));
+    }
+
+    test('are forgotten when the source changes', () async {
+      AudioPlayer player = new AudioPlayer.withId();
+      await player.play('internet.com/file.mp3');
+      await anchor(player, 5000);
+      expect(player.position, const Duration(seconds: 5));
+
+      // the same source is kept as is
+      await player.play('internet.com/file.mp3');
+      expect(player.position, const Duration(seconds: 5));
+
+      await player.setUrl('internet.com/other.mp3');
+      expect(player.position, Duration.zero);
+
+      await anchor(player, 5000);
+      await player.next();
+      expect(player.position, Duration.zero);
+    });
+
+    test('are forgotten on stop and dispose', () async {
+      AudioPlayer player = new AudioPlayer.withId();
+      await player.play('internet.com/file.mp3');
+      await anchor(player, 5000);
+      await player.stop();
+      expect(player.position, Duration.zero);
+
+      await anchor(player, 5000);
+      await player.dispose();
+      expect(player.position, Duration.zero);
+    });
+  });
+
+  group('PositionInterpolator', () {
+    Duration now;
+    PositionInterpolator interpolator;
+
+    setUp(() {
+      now = Duration.zero;
+      interpolator = new PositionInterpolator(clock: () => now);
+    });
+
+    test('extrapolates from the anchor at its speed', () {
+      interpolator.anchor(const Duration(seconds: 10), 1.5,
+          age: const Duration(milliseconds: 20));
+      expect(interpolator.position, const Duration(milliseconds: 10030));
+      now += const Duration(milliseconds: 16);
+      expect(interpolator.position, const Duration(milliseconds: 10054));
+
+      interpolator.anchor(const Duration(seconds: 12), 0.0);
+      now += const Duration(seconds: 5);
+      expect(interpolator.position, const Duration(seconds: 12));
+      expect(interpolator.isMoving, false);
+    });
+
+    test('measures the drift of the corrections', () {
+      interpolator.anchor(Duration.zero, 1.0);
+      now += const Duration(seconds: 2);
+      // the native player fell 40 ms behind the clock
+      interpolator.correct(const Duration(milliseconds: 1960));
+      expect(interpolator.lastDrift, const Duration(milliseconds: 40));
+      expect(interpolator.position, const Duration(milliseconds: 1960));
+
+      now += const Duration(seconds: 2);
+      interpolator.correct(const Duration(milliseconds: 3970));
+      expect(interpolator.lastDrift, const Duration(milliseconds: -10));
+    });
+
+    test('stays within the duration', () {
+      interpolator.duration = const Duration(seconds: 1);
+      interpolator.anchor(const Duration(milliseconds: 900), 1.0);
+      now += const Duration(seconds: 1);
+      expect(interpolator.position, const Duration(seconds: 1));
+    });
   });
 }